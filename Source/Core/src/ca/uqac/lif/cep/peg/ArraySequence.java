@@ -0,0 +1,138 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A sequence of events of any type, stored in an array. Compared to a
+ * {@link Sequence}, this avoids creating a list node for each event.
+ * @author Sylvain Hallé
+ *
+ * @param <S> The type of the events in the sequence
+ */
+public class ArraySequence<S> extends CompactSequence<S>
+{
+	/**
+	 * Dummy UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The events
+	 */
+	protected Object[] m_events;
+
+	/**
+	 * The number of events in the sequence
+	 */
+	protected int m_size;
+
+	/**
+	 * Creates a new empty sequence
+	 */
+	public ArraySequence()
+	{
+		this(s_defaultCapacity);
+	}
+
+	/**
+	 * Creates a new empty sequence
+	 * @param capacity The number of events the sequence can hold before
+	 * its array needs to grow
+	 */
+	public ArraySequence(int capacity)
+	{
+		super();
+		m_events = new Object[capacity];
+		m_size = 0;
+	}
+
+	/**
+	 * Creates a new sequence containing the elements of a collection
+	 * @param c The collection
+	 */
+	public ArraySequence(Collection<? extends S> c)
+	{
+		super();
+		m_events = c.toArray();
+		if (m_events.getClass() != Object[].class)
+		{
+			m_events = Arrays.copyOf(m_events, m_events.length, Object[].class);
+		}
+		m_size = m_events.length;
+	}
+
+	/**
+	 * Reduces the capacity of the sequence to its number of events
+	 */
+	public void trimToSize()
+	{
+		if (m_events.length > m_size)
+		{
+			m_events = Arrays.copyOf(m_events, m_size);
+		}
+	}
+
+	@Override
+	protected void append(S e)
+	{
+		if (m_size == m_events.length)
+		{
+			m_events = Arrays.copyOf(m_events, grow(m_events.length, m_size + 1));
+		}
+		m_events[m_size++] = e;
+	}
+
+	@Override
+	public int size()
+	{
+		return m_size;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public S get(int index)
+	{
+		checkIndex(index);
+		return (S) m_events[index];
+	}
+
+	@Override
+	public S set(int index, S e)
+	{
+		S old = get(index);
+		m_events[index] = e;
+		return old;
+	}
+
+	@Override
+	public void clear()
+	{
+		// Release the references to the events
+		Arrays.fill(m_events, 0, m_size, null);
+		m_size = 0;
+	}
+
+	@Override
+	public ArraySequence<S> clone()
+	{
+		return new ArraySequence<S>(this);
+	}
+}
@@ -0,0 +1,57 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Interface implemented by processors whose state can be saved and
+ * restored later, for example to resume a computation after a restart
+ * without processing again all the events received so far.
+ * <p>
+ * A checkpoint only contains the state of a processor, and not its
+ * configuration. It must therefore be restored into a processor created
+ * with the same parameters as the one it was taken from; the state
+ * previously held by that processor is replaced. Restoring a checkpoint
+ * takes a time proportional to the size of the state, and never replays
+ * the whole history of events. Events and other objects held by the state
+ * are written with {@link ObjectOutput#writeObject(Object)}, and must be
+ * serializable.
+ * <p>
+ * Checkpoints are usually written to files through the methods of
+ * {@link ca.uqac.lif.cep.peg.io.Checkpoint Checkpoint}.
+ */
+public interface Checkpointable
+{
+  /**
+   * Writes the current state of this object
+   * @param out The output to write to
+   * @throws IOException If the state cannot be written
+   */
+  public void checkpoint(/*@ non_null @*/ ObjectOutput out) throws IOException;
+
+  /**
+   * Replaces the state of this object by a state written by
+   * {@link #checkpoint(ObjectOutput)}
+   * @param in The input to read from
+   * @throws IOException If the state cannot be read
+   */
+  public void restore(/*@ non_null @*/ ObjectInput in) throws IOException;
+}
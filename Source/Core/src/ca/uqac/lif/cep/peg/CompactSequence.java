@@ -0,0 +1,533 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link Sequence} whose events are stored in arrays instead of the nodes
+ * of a linked list. Such a sequence can be given to the functions and
+ * processors of this palette that expect a {@link Sequence}, but uses much
+ * less memory: a linked list creates a node object for each event, in
+ * addition to the event itself.
+ * <p>
+ * It is not a full replacement for a linked list, though. On Java 8 and
+ * later, {@code spliterator()}, and hence {@code stream()}, are inherited
+ * from {@link java.util.LinkedList LinkedList} and walk its nodes, which
+ * this class never creates: they always see an empty sequence. These
+ * methods cannot be overridden while the library is compiled against the
+ * Java 6 class library. Code outside of this palette that may use them
+ * should be given a copy made with {@link #toSequence()}.
+ * <p>
+ * Events can only be appended to the end of the sequence, or replaced;
+ * methods that remove events or insert them elsewhere throw an
+ * {@link UnsupportedOperationException}. Descendants decide how events
+ * are stored, by implementing {@link #size()}, {@link #get(int)},
+ * {@link #set(int, Object)}, {@link #append(Object)} and
+ * {@link #clear()}.
+ * @author Sylvain Hallé
+ *
+ * @param <S> The type of the events in the sequence
+ */
+public abstract class CompactSequence<S> extends Sequence<S>
+{
+	/**
+	 * Dummy UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The initial capacity of the arrays storing the events
+	 */
+	protected static final int s_defaultCapacity = 16;
+
+	/**
+	 * Appends an event at the end of the sequence
+	 * @param e The event
+	 */
+	protected abstract void append(S e);
+
+	@Override
+	public abstract int size();
+
+	@Override
+	public abstract S get(int index);
+
+	@Override
+	public abstract S set(int index, S e);
+
+	@Override
+	public abstract void clear();
+
+	/**
+	 * Copies the events of this sequence into a plain linked
+	 * {@link Sequence}, which supports all the methods of a list,
+	 * including streams
+	 * @return The copy
+	 */
+	/*@ non_null @*/ public Sequence<S> toSequence()
+	{
+		Sequence<S> seq = new Sequence<S>();
+		int size = size();
+		for (int i = 0; i < size; i++)
+		{
+			seq.add(get(i));
+		}
+		return seq;
+	}
+
+	/**
+	 * Computes the new capacity of an array that must hold a given number
+	 * of elements
+	 * @param capacity The current capacity
+	 * @param needed The number of elements
+	 * @return The new capacity
+	 */
+	protected static int grow(int capacity, int needed)
+	{
+		int c = Math.max(capacity + (capacity >> 1), s_defaultCapacity);
+		return Math.max(c, needed);
+	}
+
+	/**
+	 * Checks that an index designates an event of the sequence
+	 * @param index The index
+	 */
+	protected void checkIndex(int index)
+	{
+		if (index < 0 || index >= size())
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+	}
+
+	/**
+	 * Creates the exception thrown by methods that remove or insert events
+	 * @return The exception
+	 */
+	protected static UnsupportedOperationException appendOnly()
+	{
+		return new UnsupportedOperationException("Events can only be appended to this sequence");
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	@Override
+	public boolean add(S e)
+	{
+		append(e);
+		return true;
+	}
+
+	@Override
+	public void add(int index, S e)
+	{
+		if (index != size())
+		{
+			throw appendOnly();
+		}
+		append(e);
+	}
+
+	@Override
+	public void addLast(S e)
+	{
+		append(e);
+	}
+
+	@Override
+	public boolean offer(S e)
+	{
+		append(e);
+		return true;
+	}
+
+	@Override
+	public boolean offerLast(S e)
+	{
+		append(e);
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends S> c)
+	{
+		for (S e : c)
+		{
+			append(e);
+		}
+		return !c.isEmpty();
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends S> c)
+	{
+		if (index != size())
+		{
+			throw appendOnly();
+		}
+		return addAll(c);
+	}
+
+	@Override
+	public S getFirst()
+	{
+		if (size() == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		return get(0);
+	}
+
+	@Override
+	public S getLast()
+	{
+		if (size() == 0)
+		{
+			throw new NoSuchElementException();
+		}
+		return get(size() - 1);
+	}
+
+	@Override
+	public S element()
+	{
+		return getFirst();
+	}
+
+	@Override
+	public S peek()
+	{
+		return size() == 0 ? null : get(0);
+	}
+
+	@Override
+	public S peekFirst()
+	{
+		return peek();
+	}
+
+	@Override
+	public S peekLast()
+	{
+		return size() == 0 ? null : get(size() - 1);
+	}
+
+	@Override
+	public int indexOf(Object o)
+	{
+		for (int i = 0; i < size(); i++)
+		{
+			if (o == null ? get(i) == null : o.equals(get(i)))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o)
+	{
+		for (int i = size() - 1; i >= 0; i--)
+		{
+			if (o == null ? get(i) == null : o.equals(get(i)))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	public Object[] toArray()
+	{
+		Object[] a = new Object[size()];
+		for (int i = 0; i < a.length; i++)
+		{
+			a[i] = get(i);
+		}
+		return a;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <A> A[] toArray(A[] a)
+	{
+		int size = size();
+		if (a.length < size)
+		{
+			a = (A[]) Array.newInstance(a.getClass().getComponentType(), size);
+		}
+		for (int i = 0; i < size; i++)
+		{
+			a[i] = (A) get(i);
+		}
+		if (a.length > size)
+		{
+			a[size] = null;
+		}
+		return a;
+	}
+
+	@Override
+	public Iterator<S> iterator()
+	{
+		return new SequenceIterator(0);
+	}
+
+	@Override
+	public ListIterator<S> listIterator(int index)
+	{
+		if (index < 0 || index > size())
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		return new SequenceIterator(index);
+	}
+
+	@Override
+	public Iterator<S> descendingIterator()
+	{
+		return new Iterator<S>()
+		{
+			protected int m_position = size();
+
+			@Override
+			public boolean hasNext()
+			{
+				return m_position > 0;
+			}
+
+			@Override
+			public S next()
+			{
+				if (m_position <= 0)
+				{
+					throw new NoSuchElementException();
+				}
+				return get(--m_position);
+			}
+
+			@Override
+			public void remove()
+			{
+				throw appendOnly();
+			}
+		};
+	}
+
+	@Override
+	public void addFirst(S e)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public boolean offerFirst(S e)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public void push(S e)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S pop()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S poll()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S pollFirst()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S pollLast()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S remove()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S remove(int index)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S removeFirst()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public S removeLast()
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public boolean removeFirstOccurrence(Object o)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public boolean removeLastOccurrence(Object o)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	protected void removeRange(int from, int to)
+	{
+		throw appendOnly();
+	}
+
+	@Override
+	public abstract CompactSequence<S> clone();
+
+	/**
+	 * Iterates over the events of the sequence by their index
+	 */
+	protected class SequenceIterator implements ListIterator<S>
+	{
+		/**
+		 * The index of the next event
+		 */
+		protected int m_position;
+
+		/**
+		 * The index of the last event returned, or -1
+		 */
+		protected int m_last = -1;
+
+		public SequenceIterator(int position)
+		{
+			super();
+			m_position = position;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return m_position < size();
+		}
+
+		@Override
+		public S next()
+		{
+			if (m_position >= size())
+			{
+				throw new NoSuchElementException();
+			}
+			m_last = m_position++;
+			return get(m_last);
+		}
+
+		@Override
+		public boolean hasPrevious()
+		{
+			return m_position > 0;
+		}
+
+		@Override
+		public S previous()
+		{
+			if (m_position <= 0)
+			{
+				throw new NoSuchElementException();
+			}
+			m_last = --m_position;
+			return get(m_last);
+		}
+
+		@Override
+		public int nextIndex()
+		{
+			return m_position;
+		}
+
+		@Override
+		public int previousIndex()
+		{
+			return m_position - 1;
+		}
+
+		@Override
+		public void set(S e)
+		{
+			if (m_last < 0)
+			{
+				throw new IllegalStateException();
+			}
+			CompactSequence.this.set(m_last, e);
+		}
+
+		@Override
+		public void add(S e)
+		{
+			CompactSequence.this.add(m_position, e);
+			m_position++;
+			m_last = -1;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw appendOnly();
+		}
+	}
+}
@@ -140,18 +140,14 @@ public class ContextRef<Q, R> extends GroupProcessor
     Connector.connect(distance, too_far);
     associateInput(INPUT, fork, INPUT);
     associateOutput(OUTPUT, too_far, OUTPUT);
-    addProcessors(window, contextWindow, distance, too_far, choice);
+    addProcessors(fork, window, contextWindow, distance, too_far, choice);
   }
   
   @Override
   public ContextRef duplicate(boolean with_state)
   {
-    if (with_state)
-    {
-      throw new UnsupportedOperationException("This processor cannot be duplicated with its state");
-    }
     ContextRef ref = new ContextRef();
-    ref.duplicateInto(this);
+    cloneInto(ref, with_state);
     return ref;
   }
 }
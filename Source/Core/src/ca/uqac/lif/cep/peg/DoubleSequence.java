@@ -0,0 +1,175 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import java.util.Arrays;
+
+/**
+ * A sequence of numbers, stored in an array of primitive <tt>double</tt>s.
+ * Each event takes 8 bytes, instead of a list node and a boxed number.
+ * Numbers added to the sequence are converted with
+ * {@link Number#doubleValue()}; numbers read through the methods of
+ * {@link java.util.List List} are boxed into a new {@link Double}, and
+ * can be obtained without boxing with {@link #getDouble(int)} or
+ * {@link #toDoubleArray()}.
+ * @author Sylvain Hallé
+ */
+public class DoubleSequence extends CompactSequence<Number> implements NumericSequence
+{
+	/**
+	 * Dummy UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The values of the events
+	 */
+	protected double[] m_values;
+
+	/**
+	 * The number of events in the sequence
+	 */
+	protected int m_size;
+
+	/**
+	 * Creates a new empty sequence
+	 */
+	public DoubleSequence()
+	{
+		this(new double[s_defaultCapacity], 0);
+	}
+
+	/**
+	 * Creates a new sequence containing values
+	 * @param values The values. The array is copied.
+	 */
+	public DoubleSequence(double ... values)
+	{
+		this(values.clone(), values.length);
+	}
+
+	/**
+	 * Creates a new sequence on an array of values
+	 * @param values The array. It is not copied.
+	 * @param size The number of values of the array that are in the
+	 * sequence
+	 */
+	protected DoubleSequence(double[] values, int size)
+	{
+		super();
+		m_values = values;
+		m_size = size;
+	}
+
+	/**
+	 * Creates a new empty sequence. A constructor taking the capacity would
+	 * be too easily confused with the one creating a sequence of values.
+	 * @param capacity The number of events the sequence can hold before
+	 * its array needs to grow
+	 * @return The sequence
+	 */
+	public static DoubleSequence withCapacity(int capacity)
+	{
+		return new DoubleSequence(new double[capacity], 0);
+	}
+
+	/**
+	 * Appends a value at the end of the sequence
+	 * @param x The value
+	 */
+	public void addDouble(double x)
+	{
+		if (m_size == m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, grow(m_values.length, m_size + 1));
+		}
+		m_values[m_size++] = x;
+	}
+
+	/**
+	 * Gets a value of the sequence without boxing it
+	 * @param index The index of the value
+	 * @return The value
+	 */
+	@Override
+	public double getDouble(int index)
+	{
+		checkIndex(index);
+		return m_values[index];
+	}
+
+	/**
+	 * Copies the values of the sequence into a new array
+	 * @return The array
+	 */
+	public double[] toDoubleArray()
+	{
+		return Arrays.copyOf(m_values, m_size);
+	}
+
+	/**
+	 * Reduces the capacity of the sequence to its number of events
+	 */
+	public void trimToSize()
+	{
+		if (m_values.length > m_size)
+		{
+			m_values = Arrays.copyOf(m_values, m_size);
+		}
+	}
+
+	@Override
+	protected void append(Number e)
+	{
+		addDouble(e.doubleValue());
+	}
+
+	@Override
+	public int size()
+	{
+		return m_size;
+	}
+
+	@Override
+	public Double get(int index)
+	{
+		checkIndex(index);
+		return m_values[index];
+	}
+
+	@Override
+	public Double set(int index, Number e)
+	{
+		checkIndex(index);
+		double old = m_values[index];
+		m_values[index] = e.doubleValue();
+		return old;
+	}
+
+	@Override
+	public void clear()
+	{
+		m_size = 0;
+	}
+
+	@Override
+	public DoubleSequence clone()
+	{
+		return new DoubleSequence(toDoubleArray());
+	}
+}
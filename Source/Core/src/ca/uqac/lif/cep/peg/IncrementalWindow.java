@@ -0,0 +1,178 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.peg.metrics.StateSize;
+
+/**
+ * Computes an {@link InvertibleTrend} over a sliding window of events.
+ * This processor produces the same output as a
+ * {@link ca.uqac.lif.cep.tmf.Window Window} whose inner processor computes
+ * the same trend; however, instead of recomputing the trend on each window,
+ * it adds the incoming event to the trend and retracts the event that
+ * leaves the window. The cost of each update is therefore independent
+ * of the width of the window.
+ * <p>
+ * To avoid the accumulation of rounding errors on trends computed over
+ * floating-point numbers, the trend is recomputed from the contents of the
+ * window once every <i>n</i> events, which keeps the amortized cost of an
+ * update constant.
+ * 
+ * @author Sylvain Hallé
+ */
+public class IncrementalWindow extends UniformProcessor implements StateSize
+{
+  /**
+   * The trend computed on the window
+   */
+  protected InvertibleTrend m_trend;
+
+  /**
+   * The width of the window
+   */
+  protected int m_width;
+
+  /**
+   * The events of the current window, stored as a circular buffer
+   */
+  protected Object[] m_window;
+
+  /**
+   * The position in the buffer of the oldest event of the window
+   */
+  protected int m_head;
+
+  /**
+   * The number of events currently in the window
+   */
+  protected int m_size;
+
+  /**
+   * The number of events retracted since the trend was last recomputed
+   * from scratch
+   */
+  protected int m_retracted;
+
+  /**
+   * Creates a new incremental window
+   * @param trend The trend to compute on each window
+   * @param width The width of the window. Must be greater than 0.
+   */
+  public IncrementalWindow(/*@ non_null @*/ InvertibleTrend trend, int width)
+  {
+    super(1, 1);
+    m_trend = trend;
+    m_width = width;
+    m_window = new Object[width];
+    m_head = 0;
+    m_size = 0;
+    m_retracted = 0;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Object[] outputs)
+      throws ProcessorException
+  {
+    Object e = inputs[0];
+    if (m_size < m_width)
+    {
+      m_window[(m_head + m_size) % m_width] = e;
+      m_size++;
+      m_trend.add(e);
+      if (m_size < m_width)
+      {
+        return false;
+      }
+    }
+    else
+    {
+      m_trend.remove(m_window[m_head]);
+      m_window[m_head] = e;
+      m_head = (m_head + 1) % m_width;
+      m_retracted++;
+      if (m_retracted >= m_width)
+      {
+        recompute();
+      }
+      else
+      {
+        m_trend.add(e);
+      }
+    }
+    outputs[0] = m_trend.getValue();
+    return true;
+  }
+
+  /**
+   * Recomputes the trend from scratch on the events of the current window
+   */
+  protected void recompute()
+  {
+    m_trend.reset();
+    for (int i = 0; i < m_size; i++)
+    {
+      m_trend.add(m_window[(m_head + i) % m_width]);
+    }
+    m_retracted = 0;
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_trend.reset();
+    for (int i = 0; i < m_width; i++)
+    {
+      m_window[i] = null;
+    }
+    m_head = 0;
+    m_size = 0;
+    m_retracted = 0;
+  }
+
+  /**
+   * Gets the width of the window
+   * @return The width
+   */
+  /*@ pure @*/ public int getWidth()
+  {
+    return m_width;
+  }
+
+  @Override
+  public int getStateSize()
+  {
+    return m_size;
+  }
+
+  @Override
+  public IncrementalWindow duplicate(boolean with_state)
+  {
+    IncrementalWindow iw = new IncrementalWindow(m_trend.duplicate(with_state), m_width);
+    if (with_state)
+    {
+      System.arraycopy(m_window, 0, iw.m_window, 0, m_width);
+      iw.m_head = m_head;
+      iw.m_size = m_size;
+      iw.m_retracted = m_retracted;
+    }
+    return iw;
+  }
+}
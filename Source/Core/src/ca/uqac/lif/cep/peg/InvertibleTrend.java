@@ -0,0 +1,281 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trend whose value can be updated both by adding an event to the
+ * set of events it is computed on, and by <em>retracting</em> an event from
+ * this set. Such a trend can be maintained on a sliding window in constant
+ * time per event, by the {@link IncrementalWindow} processor, instead of
+ * being recomputed from scratch on every window.
+ * 
+ * @author Sylvain Hallé
+ */
+public abstract class InvertibleTrend
+{
+  /**
+   * Adds an event to the events the trend is computed on
+   * @param e The event
+   */
+  public abstract void add(Object e);
+
+  /**
+   * Retracts an event from the events the trend is computed on. This event
+   * is expected to have been previously passed to {@link #add(Object)}.
+   * @param e The event
+   */
+  public abstract void remove(Object e);
+
+  /**
+   * Gets the value of the trend on the events added so far (and not
+   * retracted)
+   * @return The value of the trend
+   */
+  public abstract Object getValue();
+
+  /**
+   * Resets the trend to its state where no event has been added
+   */
+  public abstract void reset();
+
+  /**
+   * Creates a copy of this trend
+   * @param with_state Whether to copy the events added so far to the
+   * new trend
+   * @return The copy
+   */
+  public abstract InvertibleTrend duplicate(boolean with_state);
+
+  /**
+   * Computes the sum of a set of numbers.
+   */
+  public static class Sum extends InvertibleTrend
+  {
+    /**
+     * The current sum
+     */
+    protected double m_sum = 0;
+
+    @Override
+    public void add(Object e)
+    {
+      m_sum += ((Number) e).doubleValue();
+    }
+
+    @Override
+    public void remove(Object e)
+    {
+      m_sum -= ((Number) e).doubleValue();
+    }
+
+    @Override
+    public Double getValue()
+    {
+      return m_sum;
+    }
+
+    @Override
+    public void reset()
+    {
+      m_sum = 0;
+    }
+
+    @Override
+    public Sum duplicate(boolean with_state)
+    {
+      Sum s = new Sum();
+      if (with_state)
+      {
+        s.m_sum = m_sum;
+      }
+      return s;
+    }
+  }
+
+  /**
+   * Computes the statistical moment of order <i>n</i> of a set of numbers,
+   * i.e. the average value of <i>x</i><sup><i>n</i></sup>. The moment of
+   * order 1 is the average.
+   */
+  public static class Moment extends InvertibleTrend
+  {
+    /**
+     * The order of the moment
+     */
+    protected int m_order;
+
+    /**
+     * The sum of the <i>n</i>-th power of each number
+     */
+    protected double m_sum = 0;
+
+    /**
+     * The number of numbers in the set
+     */
+    protected int m_numEvents = 0;
+
+    /**
+     * Creates a new moment trend
+     * @param order The order of the moment. Must be greater than 0.
+     */
+    public Moment(int order)
+    {
+      super();
+      m_order = order;
+    }
+
+    @Override
+    public void add(Object e)
+    {
+      m_sum += power(((Number) e).doubleValue());
+      m_numEvents++;
+    }
+
+    @Override
+    public void remove(Object e)
+    {
+      m_sum -= power(((Number) e).doubleValue());
+      m_numEvents--;
+    }
+
+    @Override
+    public Double getValue()
+    {
+      if (m_numEvents == 0)
+      {
+        return 0d;
+      }
+      return m_sum / m_numEvents;
+    }
+
+    @Override
+    public void reset()
+    {
+      m_sum = 0;
+      m_numEvents = 0;
+    }
+
+    @Override
+    public Moment duplicate(boolean with_state)
+    {
+      Moment m = new Moment(m_order);
+      if (with_state)
+      {
+        m.m_sum = m_sum;
+        m.m_numEvents = m_numEvents;
+      }
+      return m;
+    }
+
+    /**
+     * Raises a number to the order of this moment
+     * @param x The number
+     * @return The number raised to the power <i>n</i>
+     */
+    protected double power(double x)
+    {
+      double p = x;
+      for (int i = 1; i < m_order; i++)
+      {
+        p *= x;
+      }
+      return p;
+    }
+  }
+
+  /**
+   * Computes the number of occurrences of each distinct event in a set.
+   * The value of this trend is a map from events to their number of
+   * occurrences, and can hence be compared to a reference using the
+   * {@link MapDistance} function. Events that no longer occur are removed
+   * from the map.
+   * <p>
+   * <strong>Note:</strong> to keep updates in constant time, the value
+   * returned by {@link #getValue()} is the map maintained internally by the
+   * trend, and not a copy. A processor receiving this map must not modify
+   * it, and should copy it if it needs to keep it after the next event.
+   */
+  public static class Histogram extends InvertibleTrend
+  {
+    /**
+     * The number of occurrences of each event
+     */
+    protected HashMap<Object,Integer> m_counts = new HashMap<Object,Integer>();
+
+    @Override
+    public void add(Object e)
+    {
+      Integer n = m_counts.get(e);
+      if (n == null)
+      {
+        m_counts.put(e, 1);
+      }
+      else
+      {
+        m_counts.put(e, n + 1);
+      }
+    }
+
+    @Override
+    public void remove(Object e)
+    {
+      Integer n = m_counts.get(e);
+      if (n == null)
+      {
+        return;
+      }
+      if (n <= 1)
+      {
+        m_counts.remove(e);
+      }
+      else
+      {
+        m_counts.put(e, n - 1);
+      }
+    }
+
+    @Override
+    public HashMap<Object,Integer> getValue()
+    {
+      return m_counts;
+    }
+
+    @Override
+    public void reset()
+    {
+      m_counts.clear();
+    }
+
+    @Override
+    public Histogram duplicate(boolean with_state)
+    {
+      Histogram h = new Histogram();
+      if (with_state)
+      {
+        for (Map.Entry<Object,Integer> e : m_counts.entrySet())
+        {
+          h.m_counts.put(e.getKey(), e.getValue());
+        }
+      }
+      return h;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+/**
+ * Interface implemented by the sequences of numbers whose events can be
+ * read as primitive <tt>double</tt>s, without boxing them. Functions that
+ * process numbers can check for this interface once, instead of testing
+ * for each of the compact sequence types.
+ * @author Sylvain Hallé
+ */
+public interface NumericSequence
+{
+	/**
+	 * Gets the number of events in the sequence
+	 * @return The number of events
+	 */
+	public int size();
+
+	/**
+	 * Gets an event of the sequence as a <tt>double</tt>, without boxing it
+	 * @param index The index of the event
+	 * @return The event
+	 */
+	public double getDouble(int index);
+}
@@ -48,6 +48,18 @@ public class PointDistance extends BinaryFunction<DoublePoint,DoublePoint,Number
   @Override
   public /*@ non_null @*/ Number getValue(/*@ non_null @*/ DoublePoint dp1, /*@ non_null @*/ DoublePoint dp2)
   {
-    return m_distance.compute(dp1.getPoint(), dp2.getPoint());
+    return getDistance(dp1.getPoint(), dp2.getPoint());
+  }
+
+  /**
+   * Computes the distance between two points given as arrays of
+   * coordinates, without creating any object
+   * @param p1 The coordinates of the first point
+   * @param p2 The coordinates of the second point
+   * @return The distance
+   */
+  /*@ pure @*/ public double getDistance(/*@ non_null @*/ double[] p1, /*@ non_null @*/ double[] p2)
+  {
+    return m_distance.compute(p1, p2);
   }
 }
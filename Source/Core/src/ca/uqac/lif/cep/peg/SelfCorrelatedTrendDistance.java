@@ -23,7 +23,6 @@ import static ca.uqac.lif.cep.Connector.OUTPUT;
 import static ca.uqac.lif.cep.Connector.TOP;
 
 import ca.uqac.lif.cep.Connector;
-import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.BinaryFunction;
@@ -31,6 +30,7 @@ import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.peg.metrics.MeteredGroupProcessor;
 import ca.uqac.lif.cep.tmf.Fork;
 import ca.uqac.lif.cep.tmf.Trim;
 import ca.uqac.lif.cep.tmf.Window;
@@ -131,7 +131,7 @@ import ca.uqac.lif.cep.tmf.Window;
  * @param <Q> The type returned by the beta processor
  * @param <R> The type returned by the distance function
  */
-public class SelfCorrelatedTrendDistance<P,Q,R> extends GroupProcessor
+public class SelfCorrelatedTrendDistance<P,Q,R> extends MeteredGroupProcessor
 {
   /*@ require m > 0
    *@ require n > 0
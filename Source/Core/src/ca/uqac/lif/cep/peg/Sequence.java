@@ -21,6 +21,11 @@ import java.util.LinkedList;
 
 /**
  * Representation of a finite stream of events of a specific type.
+ * <p>
+ * Events are stored in a linked list. For long sequences, descendants of
+ * {@link CompactSequence} store events in arrays, and use much less
+ * memory: see {@link DoubleSequence}, {@link LongSequence} and
+ * {@link ArraySequence}.
  * @author Sylvain Hallé
  *
  * @param <S> The type of the events in the sequence
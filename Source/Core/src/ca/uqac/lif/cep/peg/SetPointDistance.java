@@ -19,7 +19,6 @@ package ca.uqac.lif.cep.peg;
 
 import ca.uqac.lif.cep.functions.BinaryFunction;
 import java.util.Collection;
-import java.util.HashSet;
 import org.apache.commons.math3.ml.clustering.DoublePoint;
 
 /**
@@ -47,12 +46,33 @@ import org.apache.commons.math3.ml.clustering.DoublePoint;
  * pairs of points do not change, but the total distance becomes
  * 2 + 2 + 3 + 4 = 11.
  * <p>
- * The implementation of this function is a naïve nested loop that runs in
- * O(|P|<sup>3</sup>).
+ * The distances between all pairs of points are computed once, and stored
+ * in a matrix. The greedy process described above is then carried out by
+ * sorting all the pairs by increasing distance, in O(|P|<sup>2</sup> log |P|).
+ * Since the greedy process does not always produce the pairing with the
+ * smallest total distance, the function can also be asked to find this
+ * optimal pairing with {@link #setAssignment(Assignment)}; this is done
+ * with the Hungarian algorithm, in O(|P|<sup>3</sup>).
  */
 @SuppressWarnings("rawtypes")
 public class SetPointDistance extends BinaryFunction<Collection,Collection,Number>
 {
+  /**
+   * The methods that can be used to pair the points of both sets
+   */
+  public static enum Assignment
+  {
+    /**
+     * Repeatedly pair the two closest points that are not yet paired
+     */
+    GREEDY,
+
+    /**
+     * Find the pairing whose total distance is the smallest
+     */
+    OPTIMAL
+  }
+
   /**
    * The point distance used to measure the distance between points
    */
@@ -63,6 +83,11 @@ public class SetPointDistance extends BinaryFunction<Collection,Collection,Numbe
    */
   protected double m_infinity = Double.MAX_VALUE;
 
+  /**
+   * The method used to pair the points of both sets
+   */
+  /*@ not_null @*/ protected Assignment m_assignment = Assignment.GREEDY;
+
   /**
    * Creates a new point set distance function.
    * @param distance The point distance used to measure the distance between
@@ -74,7 +99,26 @@ public class SetPointDistance extends BinaryFunction<Collection,Collection,Numbe
     m_distanceMetric = distance;
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Sets the method used to pair the points of both sets
+   * @param a The method. The default is {@link Assignment#GREEDY}.
+   * @return This function
+   */
+  /*@ non_null @*/ public SetPointDistance setAssignment(/*@ not_null @*/ Assignment a)
+  {
+    m_assignment = a;
+    return this;
+  }
+
+  /**
+   * Gets the method used to pair the points of both sets
+   * @return The method
+   */
+  /*@ pure non_null @*/ public Assignment getAssignment()
+  {
+    return m_assignment;
+  }
+
   @Override
   public Number getValue(Collection x, Collection y)
   {
@@ -83,36 +127,219 @@ public class SetPointDistance extends BinaryFunction<Collection,Collection,Numbe
       return m_infinity;
     }
     int size = x.size();
+    if (size == 0)
+    {
+      return 0d;
+    }
+    double[] matrix = getDistanceMatrix(x, y);
+    if (m_assignment == Assignment.OPTIMAL)
+    {
+      return getOptimalDistance(matrix, size);
+    }
+    return getGreedyDistance(matrix, size);
+  }
+
+  /**
+   * Computes the distance between every pair of points
+   * @param x The first set of points
+   * @param y The second set of points, of the same size
+   * @return An array where the distance between the <i>i</i>-th point
+   * of <tt>x</tt> and the <i>j</i>-th point of <tt>y</tt> is at index
+   * <i>i</i>&times;|<tt>x</tt>|+<i>j</i>
+   */
+  protected double[] getDistanceMatrix(/*@ non_null @*/ Collection x, /*@ non_null @*/ Collection y)
+  {
+    int size = x.size();
+    double[][] points = new double[size][];
+    int j = 0;
+    for (Object o : y)
+    {
+      points[j++] = ((DoublePoint) o).getPoint();
+    }
+    double[] matrix = new double[size * size];
+    int pos = 0;
+    for (Object o : x)
+    {
+      double[] p1 = ((DoublePoint) o).getPoint();
+      for (j = 0; j < size; j++)
+      {
+        matrix[pos++] = m_distanceMetric.getDistance(p1, points[j]);
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * Pairs points greedily, by examining all pairs in increasing order of
+   * distance
+   * @param matrix The distance matrix
+   * @param size The number of points in each set
+   * @return The sum of the distances between paired points
+   */
+  protected static double getGreedyDistance(/*@ non_null @*/ double[] matrix, int size)
+  {
+    int[] edges = new int[matrix.length];
+    for (int i = 0; i < edges.length; i++)
+    {
+      edges[i] = i;
+    }
+    sortEdges(edges, matrix, 0, edges.length - 1);
+    boolean[] used_x = new boolean[size];
+    boolean[] used_y = new boolean[size];
     double distance = 0;
-    // We copy x and y to new collections, since we will remove elements from them
-    Collection<DoublePoint> c1 = new HashSet<DoublePoint>();
-    c1.addAll((Collection<DoublePoint>) x);
-    Collection<DoublePoint> c2 = new HashSet<DoublePoint>();
-    c2.addAll((Collection<DoublePoint>) y);
-    for (int i = 0; i < size; i++)
+    int paired = 0;
+    for (int k = 0; k < edges.length && paired < size; k++)
+    {
+      int e = edges[k];
+      int i = e / size, j = e % size;
+      if (!used_x[i] && !used_y[j])
+      {
+        used_x[i] = true;
+        used_y[j] = true;
+        distance += matrix[e];
+        paired++;
+      }
+    }
+    return distance;
+  }
+
+  /**
+   * Pairs points so that the sum of the distances is minimal, using the
+   * Hungarian algorithm
+   * @param matrix The distance matrix
+   * @param size The number of points in each set
+   * @return The sum of the distances between paired points
+   */
+  protected static double getOptimalDistance(/*@ non_null @*/ double[] matrix, int size)
+  {
+    // Potentials of rows and columns; index 0 is a sentinel
+    double[] u = new double[size + 1];
+    double[] v = new double[size + 1];
+    // Row assigned to each column
+    int[] row_of = new int[size + 1];
+    int[] way = new int[size + 1];
+    double[] min_v = new double[size + 1];
+    boolean[] used = new boolean[size + 1];
+    for (int i = 1; i <= size; i++)
     {
-      DoublePoint p1 = null, p2 = null;
-      double d = m_infinity;
-      for (DoublePoint dp1 : c1)
+      row_of[0] = i;
+      int j0 = 0;
+      for (int j = 0; j <= size; j++)
       {
-        for (DoublePoint dp2 : c2)
+        min_v[j] = Double.POSITIVE_INFINITY;
+        used[j] = false;
+      }
+      do
+      {
+        used[j0] = true;
+        int i0 = row_of[j0], j1 = 0;
+        double delta = Double.POSITIVE_INFINITY;
+        for (int j = 1; j <= size; j++)
         {
-          double dist = evaluateDistance(dp1, dp2, m_distanceMetric);
-          if (dist <= d)
+          if (!used[j])
           {
-            d = dist;
-            p1 = dp1;
-            p2 = dp2;
+            double cur = matrix[(i0 - 1) * size + j - 1] - u[i0] - v[j];
+            if (cur < min_v[j])
+            {
+              min_v[j] = cur;
+              way[j] = j0;
+            }
+            if (min_v[j] < delta)
+            {
+              delta = min_v[j];
+              j1 = j;
+            }
           }
         }
-      }
-      distance += d;
-      c1.remove(p1);
-      c2.remove(p2);
+        for (int j = 0; j <= size; j++)
+        {
+          if (used[j])
+          {
+            u[row_of[j]] += delta;
+            v[j] -= delta;
+          }
+          else
+          {
+            min_v[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while (row_of[j0] != 0);
+      // Follow the augmenting path back to the sentinel
+      do
+      {
+        int j1 = way[j0];
+        row_of[j0] = row_of[j1];
+        j0 = j1;
+      } while (j0 != 0);
+    }
+    double distance = 0;
+    for (int j = 1; j <= size; j++)
+    {
+      distance += matrix[(row_of[j] - 1) * size + j - 1];
     }
     return distance;
   }
 
+  /**
+   * Sorts an array of indices by increasing value of the key they point
+   * to, without boxing them
+   * @param edges The indices to sort
+   * @param keys The keys
+   * @param lo The first position of the range to sort
+   * @param hi The last position of the range to sort
+   */
+  protected static void sortEdges(int[] edges, double[] keys, int lo, int hi)
+  {
+    while (hi - lo > 16)
+    {
+      double pivot = keys[edges[(lo + hi) >>> 1]];
+      int i = lo, j = hi;
+      while (i <= j)
+      {
+        while (keys[edges[i]] < pivot)
+        {
+          i++;
+        }
+        while (keys[edges[j]] > pivot)
+        {
+          j--;
+        }
+        if (i <= j)
+        {
+          int t = edges[i];
+          edges[i] = edges[j];
+          edges[j] = t;
+          i++;
+          j--;
+        }
+      }
+      // Recurse on the smaller part to bound the depth of the stack
+      if (j - lo < hi - i)
+      {
+        sortEdges(edges, keys, lo, j);
+        lo = i;
+      }
+      else
+      {
+        sortEdges(edges, keys, i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; i++)
+    {
+      int e = edges[i];
+      double k = keys[e];
+      int j = i - 1;
+      while (j >= lo && keys[edges[j]] > k)
+      {
+        edges[j + 1] = edges[j];
+        j--;
+      }
+      edges[j + 1] = e;
+    }
+  }
+
   /**
    * Evaluates the distance between two points
    * @param p1 The first point
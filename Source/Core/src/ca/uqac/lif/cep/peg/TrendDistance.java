@@ -21,7 +21,6 @@ import static ca.uqac.lif.cep.Connector.INPUT;
 import static ca.uqac.lif.cep.Connector.OUTPUT;
 
 import ca.uqac.lif.cep.Connector;
-import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.BinaryFunction;
@@ -29,6 +28,7 @@ import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.peg.metrics.MeteredGroupProcessor;
 import ca.uqac.lif.cep.tmf.Window;
 
 /**
@@ -97,7 +97,7 @@ import ca.uqac.lif.cep.tmf.Window;
  * @param <Q> The type returned by the beta processor
  * @param <R> The type returned by the distance function
  */
-public class TrendDistance<P,Q,R> extends GroupProcessor
+public class TrendDistance<P,Q,R> extends MeteredGroupProcessor
 {
   /**
    * Instantiates a new trend distance processor.
@@ -115,7 +115,26 @@ public class TrendDistance<P,Q,R> extends GroupProcessor
     Window wp = new Window(beta, n);
     build(wp, pattern, delta, d, comp);
   }
-  
+
+  /**
+   * Instantiates a new trend distance processor, where the trend is
+   * updated incrementally on each window instead of being recomputed.
+   * @param pattern The reference pattern
+   * @param n The width of the window
+   * @param beta The invertible trend to compute on each window
+   * @param delta The distance metric
+   * @param d The maximum distance threshold
+   * @param comp The comparison function between the computed distance
+   *   and the maximum distance threshold
+   * @see IncrementalWindow
+   */
+  public TrendDistance(P pattern, int n, InvertibleTrend beta, Function delta, R d, BinaryFunction<R,R,Boolean> comp)
+  {
+    super(1, 1);
+    IncrementalWindow wp = new IncrementalWindow(beta, n);
+    build(wp, pattern, delta, d, comp);
+  }
+
   protected TrendDistance()
   {
     super(1, 1);
@@ -0,0 +1,267 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.forecast;
+
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.peg.io.Checkpoint;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+
+/**
+ * Remembers, for each slice, the last feature value given to a predictive
+ * function and the prediction it returned. This makes it possible to
+ * evaluate the function only when the feature of a slice changes, and to
+ * output a prediction only when it differs from the previous one.
+ * <p>
+ * The cache assumes that the predictive function always returns the same
+ * prediction for the same feature value. When the function changes (for
+ * example, when a new classifier is learned), the cache must be told so by
+ * calling {@link #invalidate()}.
+ * <p>
+ * Some feature processors output the same object on every event and update
+ * it in place, such as an {@link ca.uqac.lif.cep.peg.IncrementalWindow
+ * IncrementalWindow} on a {@link ca.uqac.lif.cep.peg.InvertibleTrend.Histogram
+ * Histogram}, or a {@link ca.uqac.lif.cep.peg.ml.FusedRunningMoments
+ * FusedRunningMoments} that reuses its output. Comparing such an object with
+ * itself would always succeed, so the cache keeps a copy of the feature
+ * instead (see {@link #snapshot(Object)}). Maps, sets, lists and
+ * {@code DoublePoint}s are copied; any other feature value is kept as is,
+ * and must therefore not be modified after it has been output.
+ */
+public class PredictionCache
+{
+  /**
+   * The cache entry of each slice
+   */
+  /*@ non_null @*/ protected HashMap<Object,Entry> m_entries;
+
+  /**
+   * A number incremented every time the cache is invalidated
+   */
+  protected long m_generation;
+
+  /**
+   * Creates a new empty prediction cache
+   */
+  public PredictionCache()
+  {
+    super();
+    m_entries = new HashMap<Object,Entry>();
+    m_generation = 0;
+  }
+
+  /**
+   * Updates the feature value of a slice
+   * @param key The slice identifier
+   * @param feature The new feature value of the slice
+   * @param pi The predictive function
+   * @return An array [<i>s</i>, <i>p</i>] containing the slice identifier
+   * and its new prediction, or {@code null} if the prediction for this
+   * slice has not changed
+   */
+  /*@ null @*/ public Object[] update(Object key, Object feature, /*@ non_null @*/ Function pi)
+  {
+    Entry e = m_entries.get(key);
+    if (e != null && e.m_generation == m_generation && isEqual(e.m_feature, feature))
+    {
+      return null;
+    }
+    Object[] out = new Object[1];
+    pi.evaluate(new Object[] {feature}, out);
+    if (e == null)
+    {
+      e = new Entry();
+      m_entries.put(key, e);
+    }
+    else if (isEqual(e.m_prediction, out[0]))
+    {
+      e.m_feature = snapshot(feature);
+      e.m_generation = m_generation;
+      return null;
+    }
+    e.m_feature = snapshot(feature);
+    e.m_prediction = out[0];
+    e.m_generation = m_generation;
+    return new Object[] {key, out[0]};
+  }
+
+  /**
+   * Signals that the predictive function has changed. The next update of
+   * each slice will evaluate the function, even if its feature is unchanged.
+   */
+  public void invalidate()
+  {
+    m_generation++;
+  }
+
+  /**
+   * Removes all the entries of the cache
+   */
+  public void clear()
+  {
+    m_entries.clear();
+    m_generation = 0;
+  }
+
+  /**
+   * Gets the number of slices in the cache
+   * @return The number of slices
+   */
+  /*@ pure @*/ public int size()
+  {
+    return m_entries.size();
+  }
+
+  /**
+   * Creates a copy of this cache. The feature values and predictions of
+   * the entries are not copied.
+   * @return The copy
+   */
+  /*@ non_null @*/ public PredictionCache duplicate()
+  {
+    PredictionCache pc = new PredictionCache();
+    pc.m_generation = m_generation;
+    for (Map.Entry<Object,Entry> me : m_entries.entrySet())
+    {
+      Entry e = me.getValue();
+      Entry copy = new Entry();
+      copy.m_feature = e.m_feature;
+      copy.m_prediction = e.m_prediction;
+      copy.m_generation = e.m_generation;
+      pc.m_entries.put(me.getKey(), copy);
+    }
+    return pc;
+  }
+
+  /**
+   * Writes the cache entry of a slice. An entry made invalid by
+   * {@link #invalidate()} is written as invalid, so that the function is
+   * evaluated again on the next update of the slice.
+   * @param out The output to write to
+   * @param key The slice identifier
+   * @throws IOException If the entry cannot be written
+   */
+  public void writeEntry(/*@ non_null @*/ ObjectOutput out, Object key) throws IOException
+  {
+    Entry e = m_entries.get(key);
+    out.writeBoolean(e != null);
+    if (e == null)
+    {
+      return;
+    }
+    out.writeBoolean(e.m_generation == m_generation);
+    out.writeObject(e.m_feature);
+    out.writeObject(e.m_prediction);
+  }
+
+  /**
+   * Reads the cache entry of a slice written by
+   * {@link #writeEntry(ObjectOutput, Object)}, and puts it in this cache
+   * @param in The input to read from
+   * @param key The slice identifier
+   * @throws IOException If the entry cannot be read
+   */
+  public void readEntry(/*@ non_null @*/ ObjectInput in, Object key) throws IOException
+  {
+    if (!in.readBoolean())
+    {
+      m_entries.remove(key);
+      return;
+    }
+    Entry e = new Entry();
+    e.m_generation = in.readBoolean() ? m_generation : m_generation - 1;
+    e.m_feature = Checkpoint.readObject(in);
+    e.m_prediction = Checkpoint.readObject(in);
+    m_entries.put(key, e);
+  }
+
+  /**
+   * Makes a copy of a feature value that is not affected by later changes
+   * to the original. Containers are copied shallowly: their elements are
+   * expected to be immutable.
+   * @param feature The feature value
+   * @return The copy, or the feature value itself if it is not of a
+   * type that can be updated in place
+   */
+  protected static Object snapshot(Object feature)
+  {
+    if (feature instanceof Map)
+    {
+      return new HashMap<Object,Object>((Map<?,?>) feature);
+    }
+    if (feature instanceof Set)
+    {
+      return new HashSet<Object>((Set<?>) feature);
+    }
+    if (feature instanceof List)
+    {
+      return new ArrayList<Object>((Collection<?>) feature);
+    }
+    if (feature instanceof DoublePoint)
+    {
+      return new DoublePoint(((DoublePoint) feature).getPoint().clone());
+    }
+    return feature;
+  }
+
+  /**
+   * Checks if two objects are equal, taking into account
+   * {@code null} values
+   * @param x The first object
+   * @param y The second object
+   * @return {@code true} if the objects are equal
+   */
+  protected static boolean isEqual(Object x, Object y)
+  {
+    if (x == null)
+    {
+      return y == null;
+    }
+    return x.equals(y);
+  }
+
+  /**
+   * The cache entry of a slice
+   */
+  protected static class Entry
+  {
+    /**
+     * The last feature value of the slice
+     */
+    protected Object m_feature;
+
+    /**
+     * The prediction computed for this feature value
+     */
+    protected Object m_prediction;
+
+    /**
+     * The generation of the cache when the prediction was computed
+     */
+    protected long m_generation;
+  }
+}
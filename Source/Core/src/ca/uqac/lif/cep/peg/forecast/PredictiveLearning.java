@@ -27,12 +27,17 @@ import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.metrics.MeteredGroupProcessor;
 import ca.uqac.lif.cep.peg.weka.WekaUtils;
 import ca.uqac.lif.cep.tmf.Fork;
 import ca.uqac.lif.cep.tmf.SliceLast;
 import ca.uqac.lif.cep.tmf.Trim;
 import ca.uqac.lif.cep.tmf.Window;
 import ca.uqac.lif.cep.util.Lists;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * Processor chain that trains a classifier by associating a collection of
@@ -41,30 +46,152 @@ import ca.uqac.lif.cep.util.Lists;
  * corresponds to the following diagram:
  * <p>
  * <img src="{@docRoot}/doc-files/Learning.png" alt="Processor chain">
+ * <p>
+ * The state of the chain can be saved with {@link #checkpoint(ObjectOutput)}
+ * if the processor training the classifier is {@link Checkpointable}, and
+ * once checkpoints are enabled with {@link #setCheckpointable(boolean)}.
+ * The windows of each slice only depend on its last <i>t</i> +
+ * max(<i>m</i>, <i>n</i>) events, which are then kept by the chain and
+ * pushed again into the windows on a restore; the classifier is restored
+ * from its own state, without being trained on these events again.
  */
-public class PredictiveLearning extends GroupProcessor
+public class PredictiveLearning extends MeteredGroupProcessor implements Checkpointable
 {
+  /**
+   * The last events of each slice, or {@code null} if checkpoints are
+   * disabled
+   */
+  /*@ null @*/ protected SliceHistory m_history = null;
+
+  /**
+   * The slicing function, or {@code null} if the chain has a single slice
+   */
+  /*@ null @*/ protected Function m_slicing;
+
+  /**
+   * The number of events the windows of a slice depend on
+   */
+  protected int m_width;
+
+  /**
+   * The processor computing the instances given to the classifier
+   */
+  /*@ non_null @*/ protected Processor m_learning;
+
+  /**
+   * The processor training the classifier
+   */
+  /*@ non_null @*/ protected Processor m_classifier;
+
   public PredictiveLearning(Function slice, Processor phi, int m, int t, Processor kappa, int n, Processor uc)
   {
     super(1, 1);
-    SliceLast slicer = new SliceLast(slice, new LearningSlice(phi, m, t, kappa, n));
+    m_slicing = slice;
+    m_width = t + Math.max(m, n);
+    m_learning = new SliceLast(slice, new LearningSlice(phi, m, t, kappa, n));
+    m_classifier = uc;
     Lists.Unpack unpack = new Lists.Unpack();
-    Connector.connect(slicer, unpack);
+    Connector.connect(m_learning, unpack);
     Connector.connect(unpack, uc);
-    addProcessors(slicer, unpack, uc);
-    associateInput(0, slicer, 0);
+    addProcessors(m_learning, unpack, uc);
+    associateInput(0, m_learning, 0);
     associateOutput(0, uc, 0);
   }
   
   public PredictiveLearning(Processor phi, int m, int t, Processor kappa, int n, Processor uc)
   {
     super(1, 1);
-    LearningSlice ls = new LearningSlice(phi, m, t, kappa, n);
-    Connector.connect(ls, uc);
-    addProcessors(ls, uc);
-    associateInput(0, ls, 0);
+    m_slicing = null;
+    m_width = t + Math.max(m, n);
+    m_learning = new LearningSlice(phi, m, t, kappa, n);
+    m_classifier = uc;
+    Connector.connect(m_learning, uc);
+    addProcessors(m_learning, uc);
+    associateInput(0, m_learning, 0);
     associateOutput(0, uc, 0);
   }
+
+  /**
+   * Enables checkpoints on this chain. The last events of each slice are
+   * then kept, so that the state of the chain can be saved. This method
+   * must be called before the chain is connected to other processors and
+   * receives events.
+   * @param b Set to {@code true} to enable checkpoints
+   * @return This chain
+   * @throws IllegalStateException If checkpoints are disabled after
+   * having been enabled
+   */
+  public PredictiveLearning setCheckpointable(boolean b)
+  {
+    if (b == (m_history != null))
+    {
+      return this;
+    }
+    if (!b)
+    {
+      throw new IllegalStateException("Checkpoints cannot be disabled once enabled");
+    }
+    m_history = new SliceHistory(m_slicing == null ? null : m_slicing.duplicate(), m_width);
+    Connector.connect(m_history, m_learning);
+    addProcessors(m_history);
+    associateInput(0, m_history, 0);
+    return this;
+  }
+
+  /**
+   * Writes the state of this chain
+   * @param out The output to write to
+   * @throws IOException If the state cannot be written
+   * @throws IllegalStateException If checkpoints are disabled
+   * @throws UnsupportedOperationException If the processor training the
+   * classifier is not {@link Checkpointable}
+   */
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    getHistory().checkpoint(out);
+    getCheckpointableClassifier().checkpoint(out);
+  }
+
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    SliceHistory history = getHistory();
+    Checkpointable classifier = getCheckpointableClassifier();
+    history.restore(in);
+    m_learning.reset();
+    history.replayInto(m_learning);
+    classifier.restore(in);
+  }
+
+  /**
+   * Gets the last events of each slice
+   * @return The events
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  /*@ non_null @*/ protected SliceHistory getHistory()
+  {
+    if (m_history == null)
+    {
+      throw new IllegalStateException("Checkpoints are disabled; call setCheckpointable(true) before pushing events");
+    }
+    return m_history;
+  }
+
+  /**
+   * Gets the processor training the classifier, if its state can be saved
+   * @return The processor
+   * @throws UnsupportedOperationException If the state of the processor
+   * cannot be saved
+   */
+  /*@ non_null @*/ protected Checkpointable getCheckpointableClassifier()
+  {
+    if (!(m_classifier instanceof Checkpointable))
+    {
+      throw new UnsupportedOperationException("The state of " + m_classifier.getClass().getSimpleName() + " cannot be saved");
+    }
+    return (Checkpointable) m_classifier;
+  }
   
   public static class LearningSlice extends GroupProcessor
   {
@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.peg.forecast;
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.SynchronousProcessor;
 import ca.uqac.lif.cep.UniformProcessor;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.Constant;
@@ -28,6 +29,8 @@ import ca.uqac.lif.cep.functions.CumulativeFunction;
 import ca.uqac.lif.cep.functions.Function;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.TurnInto;
+import ca.uqac.lif.cep.peg.metrics.MeteredGroupProcessor;
+import ca.uqac.lif.cep.peg.weka.WekaUtils.ClassifierFunction;
 import ca.uqac.lif.cep.tmf.Filter;
 import ca.uqac.lif.cep.tmf.Fork;
 import ca.uqac.lif.cep.tmf.Slice;
@@ -39,11 +42,24 @@ import ca.uqac.lif.cep.util.Maps;
 import ca.uqac.lif.cep.util.Numbers;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 
-public class SelfLearningPrediction extends GroupProcessor
+public class SelfLearningPrediction extends MeteredGroupProcessor
 {
   public SelfLearningPrediction(Function slice, Processor phi, int m, int t, Processor kappa, int n, Processor classifier)
+  {
+    this(slice, phi, m, t, kappa, n, classifier, false);
+  }
+
+  /**
+   * Creates a new self-learning prediction workflow.
+   * @param deltas Set to {@code true} to output only the predictions
+   * that change, in the form of arrays [<i>s</i>, <i>p</i>], instead of
+   * the map of the predictions for all slices. See
+   * {@link ApplyToChangedValues}.
+   */
+  public SelfLearningPrediction(Function slice, Processor phi, int m, int t, Processor kappa, int n, Processor classifier, boolean deltas)
   {
     super(1, 1);
     Fork main_fork = new Fork(3);
@@ -75,7 +91,7 @@ public class SelfLearningPrediction extends GroupProcessor
         new Constant(t + m - n)));
     Connector.connect(s_count, count);
     Connector.connect(count, 0, filter, 1);
-    ApplyToValues av = new ApplyToValues();
+    Processor av = deltas ? new ApplyToChangedValues() : new ApplyToValues();
     Connector.connect(classifier, 0, av, 0);
     Connector.connect(filter, 0, av, 1);
     addProcessors(main_fork, s_last, classifier, s_pred, filter, s_count, count, av);
@@ -106,6 +122,28 @@ public class SelfLearningPrediction extends GroupProcessor
       Function f = (Function) inputs[0];
       Map<Object,Object> map = (Map<Object,Object>) inputs[1];
       Map<Object,Object> out_map = new HashMap<Object,Object>();
+      if (f instanceof ClassifierFunction)
+      {
+        // Classifiers can evaluate all the values in a single call
+        int size = map.size();
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        String[] classes = new String[size];
+        int i = 0;
+        for (Map.Entry<Object,Object> e : map.entrySet())
+        {
+          keys[i] = e.getKey();
+          values[i] = e.getValue();
+          i++;
+        }
+        ((ClassifierFunction) f).classifyAll(values, size, classes);
+        for (i = 0; i < size; i++)
+        {
+          out_map.put(keys[i], classes[i]);
+        }
+        outputs[0] = out_map;
+        return true;
+      }
       for (Map.Entry<Object,Object> e : map.entrySet())
       {
         Object[] in_args = new Object[] {e.getValue()};
@@ -146,4 +184,101 @@ public class SelfLearningPrediction extends GroupProcessor
       return Map.class;
     }
   }
+
+  /**
+   * Processor that receives two streams. The first is a stream of functions,
+   * and the second is a stream of maps. Upon receiving a function and a map,
+   * the processor applies the function to the values of the map, and outputs
+   * an array [<i>k</i>, <i>v</i>] for each key <i>k</i> whose result
+   * <i>v</i> differs from the last one output for this key.
+   * <p>
+   * The result for a key is computed again only if its value in the map
+   * has changed, or if the function received is not the same object as the
+   * previous one. A processor producing the functions should therefore
+   * output the same object for as long as its underlying model does not
+   * change, and a new object when it does; this is the case of an
+   * {@link ca.uqac.lif.cep.peg.weka.UpdateClassifierFunction
+   * UpdateClassifierFunction} told to make copies of its classifier.
+   */
+  public static class ApplyToChangedValues extends SynchronousProcessor
+  {
+    /**
+     * The last result output for each key
+     */
+    /*@ non_null @*/ protected PredictionCache m_cache;
+
+    /**
+     * The last function received
+     */
+    protected Function m_lastFunction;
+
+    /**
+     * Creates a new instance of the processor
+     */
+    public ApplyToChangedValues()
+    {
+      super(2, 1);
+      m_cache = new PredictionCache();
+      m_lastFunction = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+    {
+      Function f = (Function) inputs[0];
+      if (f != m_lastFunction)
+      {
+        m_cache.invalidate();
+        m_lastFunction = f;
+      }
+      Map<Object,Object> map = (Map<Object,Object>) inputs[1];
+      for (Map.Entry<Object,Object> e : map.entrySet())
+      {
+        Object[] delta = m_cache.update(e.getKey(), e.getValue(), f);
+        if (delta != null)
+        {
+          outputs.add(new Object[] {delta});
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void reset()
+    {
+      super.reset();
+      m_cache.clear();
+      m_lastFunction = null;
+    }
+
+    @Override
+    public Processor duplicate(boolean with_state)
+    {
+      if (with_state)
+      {
+        throw new UnsupportedOperationException("This processor does not support stateful duplication");
+      }
+      return new ApplyToChangedValues();
+    }
+
+    @Override
+    public void getInputTypesFor(Set<Class<?>> classes, int index)
+    {
+      if (index == 0)
+      {
+        classes.add(Function.class);
+      }
+      if (index == 1)
+      {
+        classes.add(Map.class);
+      }
+    }
+
+    @Override
+    public Class<?> getOutputType(int index)
+    {
+      return Object[].class;
+    }
+  }
 }
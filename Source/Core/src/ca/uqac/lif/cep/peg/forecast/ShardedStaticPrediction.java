@@ -0,0 +1,736 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.forecast;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.Checkpoint;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.Window;
+import ca.uqac.lif.cep.tmf.WindowFunction;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A version of the {@link StaticPrediction} workflow that partitions the
+ * slices among a number of shards, whose computations can run in parallel
+ * on a pool of threads.
+ * <p>
+ * Each incoming event is associated to a slice identifier <i>s</i> by the
+ * slicing function, as in {@link StaticPrediction}; the slice is then
+ * assigned to one of the shards based on the hash code of <i>s</i>. Each
+ * shard keeps the feature processors of its own slices, and processes its
+ * events in the order in which they are received. Events belonging to
+ * different shards are processed concurrently.
+ * <p>
+ * Instead of outputting a map of the predictions for all slices, this
+ * processor outputs only the prediction of the slice that has just been
+ * updated, in the form of an array [<i>s</i>, <i>p</i>], and only if this
+ * prediction differs from the last one output for the same slice. The
+ * predictive function is not evaluated again when the feature of a slice
+ * does not change (see {@link PredictionCache}). The map returned
+ * by {@link StaticPrediction} can be rebuilt from these deltas by putting
+ * each pair into a map. The deltas are output in the same order as the
+ * input events that produced them.
+ * <p>
+ * When no executor service is given, all shards are processed in the
+ * calling thread. Otherwise, the outputs corresponding to an input event
+ * may be produced on a subsequent call, and all remaining outputs are
+ * produced when the end of the trace is notified. Since the predictive
+ * function is evaluated from multiple threads, it must be safe to evaluate
+ * concurrently, or produce independent copies when duplicated.
+ * <p>
+ * When checkpoints are enabled with {@link #setCheckpointable(boolean)},
+ * the processor keeps the last events of each slice, so that its state can
+ * be saved with {@link #checkpoint(ObjectOutput)}: on a restore, the
+ * feature processor of each slice is rebuilt by pushing these events into
+ * a new copy. Checkpoints are disabled by default.
+ */
+public class ShardedStaticPrediction extends SynchronousProcessor implements Checkpointable
+{
+  /**
+   * The slicing function
+   */
+  /*@ non_null @*/ protected Function m_slicing;
+
+  /**
+   * The processor computing the feature on each slice, which is
+   * duplicated for each new slice
+   */
+  /*@ non_null @*/ protected Processor m_feature;
+
+  /**
+   * The number of events the state of the feature processor depends on
+   */
+  protected int m_width;
+
+  /**
+   * Whether the last events of each slice are kept
+   */
+  protected boolean m_checkpointable = false;
+
+  /**
+   * The predictive function
+   */
+  /*@ non_null @*/ protected Function m_pi;
+
+  /**
+   * The shards
+   */
+  /*@ non_null @*/ protected Shard[] m_shards;
+
+  /**
+   * The executor service on which shards are processed, or {@code null}
+   * to process them in the calling thread
+   */
+  protected ExecutorService m_service;
+
+  /**
+   * The computations that have been submitted and whose output has not been
+   * produced yet, in the order of the input events
+   */
+  /*@ non_null @*/ protected Queue<FutureTask<List<Object[]>>> m_pending;
+
+  /**
+   * The maximum number of pending computations. When this number is
+   * reached, the processor waits for the oldest one to complete before
+   * accepting a new event.
+   */
+  protected int m_maxPending = 1024;
+
+  /**
+   * Creates a new instance of the sharded static prediction workflow.
+   * @param slicing A slicing function, which
+   * associates each incoming event to a slice identifier <i>s</i> ∈ <i>S</i>
+   * @param phi A feature extraction <strong>processor</strong>
+   * φ : Σ<sup>m</sup> → <i>V</i>, which takes a
+   * window of m successive events and computes a feature value <i>v</i> ∈ <i>V</i>
+   * @param m A window width
+   * @param pi A predictive processor π : <i>V</i> → <i>P</i>, which associates a
+   * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
+   * @param num_shards The number of shards
+   */
+  public ShardedStaticPrediction(Function slicing, Processor phi, int m, Function pi, int num_shards)
+  {
+    this(slicing, new Window(phi, m), pi, num_shards, m);
+  }
+
+  /**
+   * Creates a new instance of the sharded static prediction workflow.
+   * @param slicing A slicing function, which
+   * associates each incoming event to a slice identifier <i>s</i> ∈ <i>S</i>
+   * @param phi A feature extraction <strong>function</strong> φ : Σ<sup>m</sup> → <i>V</i>, which takes a
+   * window of m successive events and computes a feature value <i>v</i> ∈ <i>V</i>
+   * @param pi A predictive processor π : <i>V</i> → <i>P</i>, which associates a
+   * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
+   * @param num_shards The number of shards
+   */
+  public ShardedStaticPrediction(Function slicing, Function phi, Function pi, int num_shards)
+  {
+    this(slicing, new WindowFunction(phi), pi, num_shards, phi.getInputArity());
+  }
+
+  protected ShardedStaticPrediction(Function slicing, Processor feature, Function pi, int num_shards, int width)
+  {
+    super(1, 1);
+    m_slicing = slicing;
+    m_feature = feature;
+    m_width = width;
+    m_pi = pi;
+    m_shards = new Shard[num_shards];
+    for (int i = 0; i < num_shards; i++)
+    {
+      m_shards[i] = new Shard(pi.duplicate());
+    }
+    m_service = null;
+    m_pending = new ArrayDeque<FutureTask<List<Object[]>>>();
+  }
+
+  /**
+   * Sets the executor service on which the shards are processed
+   * @param service The executor service, or {@code null} to process
+   * the shards in the calling thread
+   */
+  public void setThreadManager(ExecutorService service)
+  {
+    m_service = service;
+  }
+
+  /**
+   * Sets the maximum number of input events whose computation can be
+   * pending at any moment
+   * @param max_pending The number of events. Must be greater than 0.
+   */
+  public void setMaxPending(int max_pending)
+  {
+    m_maxPending = max_pending;
+  }
+
+  /**
+   * Enables or disables checkpoints on this processor. When enabled, the
+   * last events of each slice are kept, so that the state of the processor
+   * can be saved. This method must be called before the processor receives
+   * events.
+   * @param b Set to {@code true} to enable checkpoints
+   * @return This processor
+   * @throws IllegalStateException If the processor already has slices
+   */
+  public ShardedStaticPrediction setCheckpointable(boolean b)
+  {
+    for (Shard shard : m_shards)
+    {
+      if (!shard.m_slices.isEmpty())
+      {
+        throw new IllegalStateException("Checkpoints must be enabled before pushing events");
+      }
+    }
+    m_checkpointable = b;
+    return this;
+  }
+
+  /**
+   * Gets the number of shards of this processor
+   * @return The number of shards
+   */
+  /*@ pure @*/ public int getNumShards()
+  {
+    return m_shards.length;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    Object[] slice_id = new Object[1];
+    m_slicing.evaluate(inputs, slice_id);
+    Object key = slice_id[0];
+    if (key == null)
+    {
+      // This event belongs to no slice
+      return true;
+    }
+    Shard shard = m_shards[getShardIndex(key)];
+    if (m_service == null)
+    {
+      // Deltas still pending, such as those of a restored state, come first
+      while (!m_pending.isEmpty())
+      {
+        addDeltas(waitFor(m_pending.remove()), outputs);
+      }
+      addDeltas(shard.process(key, inputs[0]), outputs);
+      return true;
+    }
+    FutureTask<List<Object[]>> task = new FutureTask<List<Object[]>>(new ShardCallable(shard, key, inputs[0]));
+    shard.submit(task);
+    m_pending.add(task);
+    while (!m_pending.isEmpty() && (m_pending.peek().isDone() || m_pending.size() > m_maxPending))
+    {
+      addDeltas(waitFor(m_pending.remove()), outputs);
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean onEnd(Queue<Object[]> outputs)
+  {
+    while (!m_pending.isEmpty())
+    {
+      addDeltas(waitFor(m_pending.remove()), outputs);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the index of the shard responsible for a slice
+   * @param key The slice identifier
+   * @return The index of the shard
+   */
+  protected int getShardIndex(/*@ non_null @*/ Object key)
+  {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return (h & 0x7fffffff) % m_shards.length;
+  }
+
+  /**
+   * Waits for a pending computation to complete
+   * @param task The computation
+   * @return The deltas produced by the computation
+   */
+  protected static List<Object[]> waitFor(FutureTask<List<Object[]>> task)
+  {
+    try
+    {
+      return task.get();
+    }
+    catch (InterruptedException e)
+    {
+      throw new ProcessorException(e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Adds deltas to the output queue of the processor
+   * @param deltas The deltas
+   * @param outputs The output queue
+   */
+  protected static void addDeltas(List<Object[]> deltas, Queue<Object[]> outputs)
+  {
+    for (Object[] delta : deltas)
+    {
+      outputs.add(new Object[] {delta});
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    while (!m_pending.isEmpty())
+    {
+      waitFor(m_pending.remove());
+    }
+    for (Shard shard : m_shards)
+    {
+      shard.clear();
+    }
+  }
+
+  /**
+   * Creates a copy of this processor. When the state is copied, the
+   * computations still pending are completed first, and the deltas they
+   * produced are output by both processors.
+   * @param with_state Set to {@code true} to copy the state of the
+   * processor
+   * @return The copy
+   */
+  @Override
+  public ShardedStaticPrediction duplicate(boolean with_state)
+  {
+    ShardedStaticPrediction ssp = new ShardedStaticPrediction(m_slicing.duplicate(), m_feature, m_pi, m_shards.length, m_width);
+    ssp.m_service = m_service;
+    ssp.m_maxPending = m_maxPending;
+    ssp.m_checkpointable = m_checkpointable;
+    if (!with_state)
+    {
+      return ssp;
+    }
+    for (FutureTask<List<Object[]>> task : m_pending)
+    {
+      // A completed task only returns its deltas, and can be shared
+      waitFor(task);
+      ssp.m_pending.add(task);
+    }
+    for (int i = 0; i < m_shards.length; i++)
+    {
+      m_shards[i].copyInto(ssp.m_shards[i]);
+    }
+    return ssp;
+  }
+
+  /**
+   * Writes the state of this processor. The computations still pending
+   * are completed first; the deltas they produced and that have not been
+   * output yet are part of the state.
+   * @param out The output to write to
+   * @throws IOException If the state cannot be written
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    checkCheckpointable();
+    out.writeInt(m_pending.size());
+    for (FutureTask<List<Object[]>> task : m_pending)
+    {
+      List<Object[]> deltas = waitFor(task);
+      out.writeInt(deltas.size());
+      for (Object[] delta : deltas)
+      {
+        out.writeObject(delta[0]);
+        out.writeObject(delta[1]);
+      }
+    }
+    int num_slices = 0;
+    for (Shard shard : m_shards)
+    {
+      num_slices += shard.m_slices.size();
+    }
+    out.writeInt(num_slices);
+    for (Shard shard : m_shards)
+    {
+      for (Map.Entry<Object,SliceState> e : shard.m_slices.entrySet())
+      {
+        out.writeObject(e.getKey());
+        ArrayDeque<Object> events = e.getValue().m_events;
+        out.writeInt(events.size());
+        for (Object o : events)
+        {
+          out.writeObject(o);
+        }
+        shard.m_predictions.writeEntry(out, e.getKey());
+      }
+    }
+  }
+
+  /**
+   * Restores the state of this processor. The slices are distributed
+   * again among the shards, which may differ from their distribution when
+   * the state was saved if the hash codes of their identifiers differ.
+   * @param in The input to read from
+   * @throws IOException If the state cannot be read
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    checkCheckpointable();
+    reset();
+    int num_pending = in.readInt();
+    for (int i = 0; i < num_pending; i++)
+    {
+      int num_deltas = in.readInt();
+      final List<Object[]> deltas = new ArrayList<Object[]>(num_deltas);
+      for (int j = 0; j < num_deltas; j++)
+      {
+        deltas.add(new Object[] {Checkpoint.readObject(in), Checkpoint.readObject(in)});
+      }
+      FutureTask<List<Object[]>> task = new FutureTask<List<Object[]>>(new Callable<List<Object[]>>()
+      {
+        @Override
+        public List<Object[]> call()
+        {
+          return deltas;
+        }
+      });
+      task.run();
+      m_pending.add(task);
+    }
+    int num_slices = in.readInt();
+    for (int i = 0; i < num_slices; i++)
+    {
+      Object key = Checkpoint.readObject(in);
+      Shard shard = m_shards[getShardIndex(key)];
+      SliceState slice = new SliceState(m_feature.duplicate(), m_width);
+      shard.m_slices.put(key, slice);
+      int num_events = in.readInt();
+      for (int j = 0; j < num_events; j++)
+      {
+        slice.push(Checkpoint.readObject(in));
+      }
+      // The features computed on these events have already been evaluated
+      slice.m_features.clear();
+      shard.m_predictions.readEntry(in, key);
+    }
+  }
+
+  /**
+   * Checks that checkpoints are enabled on this processor
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  protected void checkCheckpointable()
+  {
+    if (!m_checkpointable)
+    {
+      throw new IllegalStateException("Checkpoints are disabled; call setCheckpointable(true) before pushing events");
+    }
+  }
+
+  /**
+   * The state of a subset of the slices. A shard executes the tasks
+   * submitted to it one at a time and in order, on the executor service of
+   * the processor.
+   */
+  protected class Shard implements Runnable
+  {
+    /**
+     * The state of each slice of this shard
+     */
+    /*@ non_null @*/ protected HashMap<Object,SliceState> m_slices;
+
+    /**
+     * The copy of the predictive function used by this shard
+     */
+    /*@ non_null @*/ protected Function m_shardPi;
+
+    /**
+     * The last prediction made for each slice of this shard
+     */
+    /*@ non_null @*/ protected PredictionCache m_predictions;
+
+    /**
+     * The tasks submitted to this shard and not yet started
+     */
+    /*@ non_null @*/ protected Queue<Runnable> m_tasks;
+
+    /**
+     * Whether this shard is currently scheduled on the executor service
+     */
+    protected boolean m_scheduled;
+
+    /**
+     * Creates a new shard
+     * @param pi The predictive function used by this shard
+     */
+    public Shard(/*@ non_null @*/ Function pi)
+    {
+      super();
+      m_slices = new HashMap<Object,SliceState>();
+      m_shardPi = pi;
+      m_predictions = new PredictionCache();
+      m_tasks = new ArrayDeque<Runnable>();
+      m_scheduled = false;
+    }
+
+    /**
+     * Submits a task to this shard
+     * @param task The task
+     */
+    public void submit(/*@ non_null @*/ Runnable task)
+    {
+      synchronized (this)
+      {
+        m_tasks.add(task);
+        if (m_scheduled)
+        {
+          return;
+        }
+        m_scheduled = true;
+      }
+      try
+      {
+        m_service.execute(this);
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The shard was not scheduled, so no other task is queued
+        synchronized (this)
+        {
+          m_tasks.remove(task);
+          m_scheduled = false;
+        }
+        throw e;
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      while (true)
+      {
+        Runnable task = null;
+        synchronized (this)
+        {
+          task = m_tasks.poll();
+          if (task == null)
+          {
+            m_scheduled = false;
+            return;
+          }
+        }
+        task.run();
+      }
+    }
+
+    /**
+     * Processes an event belonging to a slice of this shard
+     * @param key The slice identifier
+     * @param event The event
+     * @return The list of deltas produced by this event
+     */
+    public List<Object[]> process(Object key, Object event)
+    {
+      SliceState slice = m_slices.get(key);
+      if (slice == null)
+      {
+        slice = new SliceState(m_feature.duplicate(), m_checkpointable ? m_width : 0);
+        m_slices.put(key, slice);
+      }
+      slice.push(event);
+      Queue<Object> features = slice.m_features;
+      List<Object[]> deltas = new ArrayList<Object[]>(features.size());
+      while (!features.isEmpty())
+      {
+        Object[] delta = m_predictions.update(key, features.remove(), m_shardPi);
+        if (delta != null)
+        {
+          deltas.add(delta);
+        }
+      }
+      return deltas;
+    }
+
+    /**
+     * Copies the slices of this shard into another shard of the same
+     * index. The shard must not have tasks in progress.
+     * @param shard The other shard
+     */
+    public void copyInto(/*@ non_null @*/ Shard shard)
+    {
+      for (Map.Entry<Object,SliceState> e : m_slices.entrySet())
+      {
+        shard.m_slices.put(e.getKey(), e.getValue().duplicate());
+      }
+      shard.m_shardPi = m_shardPi.duplicate(true);
+      shard.m_predictions = m_predictions.duplicate();
+    }
+
+    /**
+     * Removes all the slices of this shard
+     */
+    public void clear()
+    {
+      m_slices.clear();
+      m_predictions.clear();
+      m_shardPi.reset();
+    }
+  }
+
+  /**
+   * The feature processor of a slice, and the queue receiving its outputs
+   */
+  protected static class SliceState
+  {
+    /**
+     * The feature processor
+     */
+    /*@ non_null @*/ protected Processor m_processor;
+
+    /**
+     * The pushable of the feature processor
+     */
+    /*@ non_null @*/ protected Pushable m_pushable;
+
+    /**
+     * The features computed by the processor and not yet evaluated
+     */
+    /*@ non_null @*/ protected Queue<Object> m_features;
+
+    /**
+     * The last events pushed to the feature processor
+     */
+    /*@ non_null @*/ protected ArrayDeque<Object> m_events;
+
+    /**
+     * The maximum number of events kept in {@link #m_events}
+     */
+    protected int m_width;
+
+    /**
+     * Creates a new slice state
+     * @param feature The feature processor of the slice
+     * @param width The number of events to keep, or 0 to keep none
+     */
+    public SliceState(/*@ non_null @*/ Processor feature, int width)
+    {
+      super();
+      QueueSink sink = new QueueSink();
+      Connector.connect(feature, sink);
+      m_processor = feature;
+      m_pushable = feature.getPushableInput();
+      m_features = sink.getQueue();
+      m_width = width;
+      m_events = new ArrayDeque<Object>(width);
+    }
+
+    /**
+     * Pushes an event to the feature processor
+     * @param event The event
+     */
+    public void push(/*@ non_null @*/ Object event)
+    {
+      if (m_width > 0)
+      {
+        if (m_events.size() == m_width)
+        {
+          m_events.removeFirst();
+        }
+        m_events.addLast(event);
+      }
+      m_pushable.push(event);
+    }
+
+    /**
+     * Creates a copy of this slice state, with a copy of the state of its
+     * feature processor
+     * @return The copy
+     */
+    /*@ non_null @*/ public SliceState duplicate()
+    {
+      SliceState ss = new SliceState(m_processor.duplicate(true), m_width);
+      ss.m_events.addAll(m_events);
+      ss.m_features.addAll(m_features);
+      return ss;
+    }
+  }
+
+  /**
+   * Processes an event on a shard
+   */
+  protected static class ShardCallable implements Callable<List<Object[]>>
+  {
+    /**
+     * The shard
+     */
+    protected Shard m_shard;
+
+    /**
+     * The slice identifier of the event
+     */
+    protected Object m_key;
+
+    /**
+     * The event
+     */
+    protected Object m_event;
+
+    public ShardCallable(Shard shard, Object key, Object event)
+    {
+      super();
+      m_shard = shard;
+      m_key = key;
+      m_event = event;
+    }
+
+    @Override
+    public List<Object[]> call()
+    {
+      return m_shard.process(m_key, m_event);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.forecast;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.Checkpoint;
+import ca.uqac.lif.cep.peg.metrics.StateSize;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Processor that lets events through unchanged, and remembers the last
+ * <i>w</i> events of each slice. It is placed in front of a processor
+ * whose state, for each slice, only depends on the last <i>w</i> events
+ * of that slice, such as a {@link ca.uqac.lif.cep.tmf.Slice Slice} of
+ * windows of width <i>w</i>. Since the state of such a processor cannot be
+ * read directly, it is saved in the form of these events: on a restore,
+ * they are pushed again into a fresh processor with
+ * {@link #replayInto(Processor)}, which rebuilds the same state in a time
+ * proportional to the number of slices times <i>w</i>.
+ */
+public class SliceHistory extends UniformProcessor implements Checkpointable, StateSize
+{
+  /**
+   * The key under which events are recorded when there is no slicing
+   * function
+   */
+  protected static final Integer s_noSlice = 0;
+
+  /**
+   * The slicing function, or {@code null} to treat all events as a single
+   * slice
+   */
+  /*@ null @*/ protected final Function m_slicing;
+
+  /**
+   * The number of events remembered for each slice
+   */
+  protected final int m_width;
+
+  /**
+   * The last events of each slice, in the order in which the slices were
+   * first seen
+   */
+  /*@ non_null @*/ protected LinkedHashMap<Object,ArrayDeque<Object>> m_slices;
+
+  /**
+   * The total number of events remembered, over all slices
+   */
+  protected int m_numEvents = 0;
+
+  /**
+   * Creates a new slice history
+   * @param slicing The slicing function, or {@code null} to treat all
+   * events as a single slice
+   * @param width The number of events remembered for each slice
+   */
+  public SliceHistory(/*@ null @*/ Function slicing, int width)
+  {
+    super(1, 1);
+    m_slicing = slicing;
+    m_width = width;
+    m_slices = new LinkedHashMap<Object,ArrayDeque<Object>>();
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Object[] outputs)
+  {
+    outputs[0] = inputs[0];
+    Object key = s_noSlice;
+    if (m_slicing != null)
+    {
+      Object[] slice_id = new Object[1];
+      m_slicing.evaluate(inputs, slice_id);
+      key = slice_id[0];
+    }
+    if (key != null && inputs[0] != null)
+    {
+      add(key, inputs[0]);
+    }
+    return true;
+  }
+
+  /**
+   * Records an event of a slice
+   * @param key The slice identifier
+   * @param event The event
+   */
+  protected void add(/*@ non_null @*/ Object key, /*@ non_null @*/ Object event)
+  {
+    ArrayDeque<Object> events = m_slices.get(key);
+    if (events == null)
+    {
+      events = new ArrayDeque<Object>(m_width);
+      m_slices.put(key, events);
+    }
+    if (events.size() == m_width)
+    {
+      events.removeFirst();
+    }
+    else
+    {
+      m_numEvents++;
+    }
+    events.addLast(event);
+  }
+
+  /**
+   * Gets the number of slices seen so far
+   * @return The number of slices
+   */
+  /*@ pure @*/ public int getNumSlices()
+  {
+    return m_slices.size();
+  }
+
+  @Override
+  public int getStateSize()
+  {
+    return m_numEvents;
+  }
+
+  /**
+   * Pushes the events remembered by this history into a processor, slice
+   * by slice. The outputs produced by the processor in the meantime are
+   * discarded, and its output is then reconnected to where it was.
+   * @param p The processor, which should have just been reset
+   */
+  public void replayInto(/*@ non_null @*/ Processor p)
+  {
+    Pushable out = p.getPushableOutput(0);
+    QueueSink sink = new QueueSink();
+    p.setPushableOutput(0, sink.getPushableInput(0));
+    try
+    {
+      Pushable in = p.getPushableInput(0);
+      for (ArrayDeque<Object> events : m_slices.values())
+      {
+        for (Object e : events)
+        {
+          in.push(e);
+        }
+        sink.getQueue().clear();
+      }
+    }
+    finally
+    {
+      p.setPushableOutput(0, out);
+    }
+  }
+
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    out.writeInt(m_slices.size());
+    for (Map.Entry<Object,ArrayDeque<Object>> e : m_slices.entrySet())
+    {
+      out.writeObject(e.getKey());
+      out.writeInt(e.getValue().size());
+      for (Object o : e.getValue())
+      {
+        out.writeObject(o);
+      }
+    }
+  }
+
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    m_slices.clear();
+    m_numEvents = 0;
+    int num_slices = in.readInt();
+    for (int i = 0; i < num_slices; i++)
+    {
+      Object key = Checkpoint.readObject(in);
+      int num_events = in.readInt();
+      for (int j = 0; j < num_events; j++)
+      {
+        add(key, Checkpoint.readObject(in));
+      }
+    }
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_slices.clear();
+    m_numEvents = 0;
+  }
+
+  @Override
+  public SliceHistory duplicate(boolean with_state)
+  {
+    SliceHistory sh = new SliceHistory(m_slicing == null ? null : m_slicing.duplicate(), m_width);
+    if (with_state)
+    {
+      for (Map.Entry<Object,ArrayDeque<Object>> e : m_slices.entrySet())
+      {
+        sh.m_slices.put(e.getKey(), e.getValue().clone());
+      }
+      sh.m_numEvents = m_numEvents;
+    }
+    return sh;
+  }
+}
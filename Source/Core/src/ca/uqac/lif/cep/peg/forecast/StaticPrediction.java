@@ -22,19 +22,64 @@ import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.Processor;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.Function;
+import ca.uqac.lif.cep.peg.Checkpointable;
 import ca.uqac.lif.cep.tmf.Slice;
 import ca.uqac.lif.cep.tmf.Window;
 import ca.uqac.lif.cep.tmf.WindowFunction;
 import ca.uqac.lif.cep.util.Maps;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * A workflow that computes a prediction based on a feature computed over a
  * sliding window of events.  
  * <p>
  * <img src="{@docRoot}/doc-files/Prediction.png" alt="Processor chain">
+ * <p>
+ * By default, the workflow outputs on every event a map associating each
+ * slice to its current prediction. In <em>delta</em> mode, it rather
+ * outputs an array [<i>s</i>, <i>p</i>] only when the prediction <i>p</i>
+ * of a slice <i>s</i> changes; this avoids re-evaluating the predictive
+ * function on every slice for each input event. The deltas are computed by
+ * a single-shard {@link ShardedStaticPrediction}.
+ * <p>
+ * The state of the workflow can be saved with
+ * {@link #checkpoint(ObjectOutput)} once checkpoints are enabled with
+ * {@link #setCheckpointable(boolean)}. It consists of the last events of
+ * each slice, from which the windows of the slices are rebuilt on a
+ * restore. Since keeping these events has a cost, checkpoints are disabled
+ * by default.
  */
-public class StaticPrediction extends GroupProcessor
+public class StaticPrediction extends GroupProcessor implements Checkpointable
 {
+  /**
+   * The last events of each slice, in the default mode, or {@code null}
+   * if checkpoints are disabled
+   */
+  /*@ null @*/ protected SliceHistory m_history = null;
+
+  /**
+   * The slicing function, in the default mode
+   */
+  /*@ null @*/ protected Function m_slicing = null;
+
+  /**
+   * The number of events the state of the feature processor depends on,
+   * in the default mode
+   */
+  protected int m_width = 0;
+
+  /**
+   * The slice processor, in the default mode
+   */
+  /*@ null @*/ protected Slice m_slice = null;
+
+  /**
+   * The processor computing the deltas, in delta mode
+   */
+  /*@ null @*/ protected ShardedStaticPrediction m_deltas = null;
+
   /**
    * Creates a new instance of the static prediction workflow.
    * @param slicing A slicing function, which
@@ -47,16 +92,33 @@ public class StaticPrediction extends GroupProcessor
    * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
    */
   public StaticPrediction(Function slicing, Processor phi, int m, Function pi)
+  {
+    this(slicing, phi, m, pi, false);
+  }
+
+  /**
+   * Creates a new instance of the static prediction workflow.
+   * @param slicing A slicing function, which
+   * associates each incoming event to a slice identifier <i>s</i> ∈ <i>S</i>
+   * @param phi A feature extraction <strong>processor</strong>
+   * φ : Σ<sup>m</sup> → <i>V</i>, which takes a
+   * window of m successive events and computes a feature value <i>v</i> ∈ <i>V</i>
+   * @param m A window width
+   * @param pi A predictive processor π : <i>V</i> → <i>P</i>, which associates a
+   * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
+   * @param deltas Set to {@code true} to output only the predictions that
+   * change, {@code false} to output the map of all predictions
+   */
+  public StaticPrediction(Function slicing, Processor phi, int m, Function pi, boolean deltas)
   {
     super(1, 1);
     notifySources(true);
-    Window feature = new Window(phi, m);
-    Slice slice = new Slice(slicing, feature);
-    ApplyFunction af = new ApplyFunction(new Maps.ApplyAll(pi));
-    Connector.connect(slice, af);
-    addProcessors(slice, af);
-    associateInput(0, slice, 0);
-    associateOutput(0, af, 0);
+    if (deltas)
+    {
+      buildDeltas(new ShardedStaticPrediction(slicing, phi, m, pi, 1));
+      return;
+    }
+    build(slicing, new Window(phi, m), m, pi);
   }
   
   /**
@@ -69,15 +131,139 @@ public class StaticPrediction extends GroupProcessor
    * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
    */
   public StaticPrediction(Function slicing, Function phi, Function pi)
+  {
+    this(slicing, phi, pi, false);
+  }
+
+  /**
+   * Creates a new instance of the static prediction workflow.
+   * @param slicing A slicing function, which
+   * associates each incoming event to a slice identifier <i>s</i> ∈ <i>S</i>
+   * @param phi A feature extraction <strong>function</strong> φ : Σ<sup>m</sup> → <i>V</i>, which takes a
+   * window of m successive events and computes a feature value <i>v</i> ∈ <i>V</i>
+   * @param pi A predictive processor π : <i>V</i> → <i>P</i>, which associates a
+   * feature value <i>v</i> ∈ <i>V</i> to a prediction <i>p</i> ∈ <i>P</i>.
+   * @param deltas Set to {@code true} to output only the predictions that
+   * change, {@code false} to output the map of all predictions
+   */
+  public StaticPrediction(Function slicing, Function phi, Function pi, boolean deltas)
   {
     super(1, 1);
     notifySources(true);
-    WindowFunction feature = new WindowFunction(phi);
-    Slice slice = new Slice(slicing, feature);
+    if (deltas)
+    {
+      buildDeltas(new ShardedStaticPrediction(slicing, phi, pi, 1));
+      return;
+    }
+    build(slicing, new WindowFunction(phi), phi.getInputArity(), pi);
+  }
+
+  /**
+   * Builds the workflow in the default mode
+   * @param slicing The slicing function
+   * @param feature The processor computing the feature of a slice
+   * @param width The number of events the state of the feature processor
+   * depends on
+   * @param pi The predictive function
+   */
+  protected void build(Function slicing, Processor feature, int width, Function pi)
+  {
+    m_slicing = slicing;
+    m_width = width;
+    m_slice = new Slice(slicing, feature);
     ApplyFunction af = new ApplyFunction(new Maps.ApplyAll(pi));
-    Connector.connect(slice, af);
-    addProcessors(slice, af);
-    associateInput(0, slice, 0);
+    Connector.connect(m_slice, af);
+    addProcessors(m_slice, af);
+    associateInput(0, m_slice, 0);
     associateOutput(0, af, 0);
   }
+
+  /**
+   * Builds the workflow in delta mode
+   * @param sp The processor computing the deltas
+   */
+  protected void buildDeltas(ShardedStaticPrediction sp)
+  {
+    m_deltas = sp;
+    addProcessors(sp);
+    associateInput(0, sp, 0);
+    associateOutput(0, sp, 0);
+  }
+
+  /**
+   * Enables checkpoints on this workflow. The last events of each slice
+   * are then kept, so that the state of the workflow can be saved. This
+   * method must be called before the workflow is connected to other
+   * processors and receives events.
+   * @param b Set to {@code true} to enable checkpoints
+   * @return This workflow
+   * @throws IllegalStateException If checkpoints are disabled after
+   * having been enabled
+   */
+  public StaticPrediction setCheckpointable(boolean b)
+  {
+    if (m_deltas != null)
+    {
+      m_deltas.setCheckpointable(b);
+      return this;
+    }
+    if (b == (m_history != null))
+    {
+      return this;
+    }
+    if (!b)
+    {
+      throw new IllegalStateException("Checkpoints cannot be disabled once enabled");
+    }
+    m_history = new SliceHistory(m_slicing.duplicate(), m_width);
+    Connector.connect(m_history, m_slice);
+    addProcessors(m_history);
+    associateInput(0, m_history, 0);
+    return this;
+  }
+
+  /**
+   * Writes the state of this workflow
+   * @param out The output to write to
+   * @throws IOException If the state cannot be written
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    if (m_deltas != null)
+    {
+      m_deltas.checkpoint(out);
+      return;
+    }
+    getHistory().checkpoint(out);
+  }
+
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    if (m_deltas != null)
+    {
+      m_deltas.restore(in);
+      return;
+    }
+    SliceHistory history = getHistory();
+    history.restore(in);
+    m_slice.reset();
+    history.replayInto(m_slice);
+  }
+
+  /**
+   * Gets the last events of each slice
+   * @return The events
+   * @throws IllegalStateException If checkpoints are disabled
+   */
+  /*@ non_null @*/ protected SliceHistory getHistory()
+  {
+    if (m_history == null)
+    {
+      throw new IllegalStateException("Checkpoints are disabled; call setCheckpointable(true) before pushing events");
+    }
+    return m_history;
+  }
 }
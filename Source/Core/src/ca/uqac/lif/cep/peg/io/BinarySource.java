@@ -0,0 +1,141 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+import ca.uqac.lif.cep.peg.CompactSequence;
+import ca.uqac.lif.cep.peg.DoubleSequence;
+import ca.uqac.lif.cep.peg.LongSequence;
+
+/**
+ * Source reading a binary log of numerical events. The log is a plain
+ * succession of 8-byte events, which are either all <tt>double</tt>s or all
+ * <tt>long</tt>s, and are big-endian unless specified otherwise with
+ * {@link #setOrder(ByteOrder)}. This is the same encoding as the events
+ * column of a {@link TraceFile}. Batches output by the source are
+ * {@link DoubleSequence}s or {@link LongSequence}s, depending on the type
+ * of the events.
+ */
+public class BinarySource extends ChannelSource
+{
+  /**
+   * The type of the events
+   */
+  protected final int m_type;
+
+  /**
+   * Creates a new binary source
+   * @param channel The channel to read from
+   * @param type The type of the events, {@link TraceFile#TYPE_DOUBLE} or
+   * {@link TraceFile#TYPE_LONG}
+   */
+  public BinarySource(/*@ non_null @*/ ReadableByteChannel channel, int type)
+  {
+    super(channel, s_defaultCapacity);
+    if (type != TraceFile.TYPE_DOUBLE && type != TraceFile.TYPE_LONG)
+    {
+      throw new IllegalArgumentException("Unknown event type " + type);
+    }
+    m_type = type;
+  }
+
+  /**
+   * Creates a new binary source reading a file
+   * @param file The file
+   * @param type The type of the events, {@link TraceFile#TYPE_DOUBLE} or
+   * {@link TraceFile#TYPE_LONG}
+   * @throws FileNotFoundException If the file cannot be opened
+   */
+  public BinarySource(/*@ non_null @*/ File file, int type) throws FileNotFoundException
+  {
+    this(open(file), type);
+  }
+
+  /**
+   * Sets the byte order of the events
+   * @param order The byte order. The default is big-endian.
+   * @return This source
+   */
+  public BinarySource setOrder(/*@ non_null @*/ ByteOrder order)
+  {
+    m_buffer.order(order);
+    return this;
+  }
+
+  @Override
+  public BinarySource setBatchSize(int size)
+  {
+    super.setBatchSize(size);
+    return this;
+  }
+
+  @Override
+  protected CompactSequence<Number> newBatch(int capacity)
+  {
+    if (m_type == TraceFile.TYPE_LONG)
+    {
+      return LongSequence.withCapacity(capacity);
+    }
+    return DoubleSequence.withCapacity(capacity);
+  }
+
+  @Override
+  protected int read(CompactSequence<Number> batch, int max) throws IOException
+  {
+    int count = 0;
+    while (count < max)
+    {
+      if (m_buffer.remaining() < 8)
+      {
+        if (!fill())
+        {
+          if (m_buffer.hasRemaining())
+          {
+            throw new IOException("The log ends with an incomplete event");
+          }
+          break;
+        }
+        continue;
+      }
+      int n = Math.min(max - count, m_buffer.remaining() >> 3);
+      if (m_type == TraceFile.TYPE_LONG)
+      {
+        LongSequence values = (LongSequence) batch;
+        for (int i = 0; i < n; i++)
+        {
+          values.addLong(m_buffer.getLong());
+        }
+      }
+      else
+      {
+        DoubleSequence values = (DoubleSequence) batch;
+        for (int i = 0; i < n; i++)
+        {
+          values.addDouble(m_buffer.getDouble());
+        }
+      }
+      count += n;
+    }
+    return count;
+  }
+}
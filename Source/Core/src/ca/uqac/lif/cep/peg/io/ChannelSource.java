@@ -0,0 +1,308 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.SynchronousProcessor;
+import ca.uqac.lif.cep.peg.CompactSequence;
+
+/**
+ * Source of numerical events read from a channel. The bytes of the channel
+ * are read into a large direct buffer, and events are decoded directly from
+ * this buffer, without creating intermediate objects.
+ * <p>
+ * By default, the source outputs one {@link Number} per event. With
+ * {@link #setBatchSize(int)}, it rather outputs micro-batches of consecutive
+ * events, in the form of {@link CompactSequence}s; this removes the cost of
+ * boxing each event and of pushing it through a chain of processors, and
+ * the batches can be given directly to the functions of this palette
+ * expecting a {@link ca.uqac.lif.cep.peg.Sequence Sequence} (see the
+ * limits mentioned in {@link CompactSequence}).
+ * <p>
+ * The source can be pulled like any other processor, or push all its
+ * events to the processor connected to its output with {@link #pushAll()}.
+ * It cannot be duplicated, since the state of the channel it reads from
+ * cannot be copied; it can only be reset if it reads from a file.
+ */
+public abstract class ChannelSource extends SynchronousProcessor implements Closeable
+{
+  /**
+   * The default capacity of the buffer, in bytes
+   */
+  protected static final int s_defaultCapacity = 1 << 20;
+
+  /**
+   * The channel to read from
+   */
+  /*@ non_null @*/ protected final ReadableByteChannel m_channel;
+
+  /**
+   * The buffer holding the bytes read from the channel. Outside of
+   * {@link #fill()}, the buffer is ready to be read from.
+   */
+  /*@ non_null @*/ protected ByteBuffer m_buffer;
+
+  /**
+   * Whether the end of the channel has been reached
+   */
+  protected boolean m_endOfChannel;
+
+  /**
+   * The number of events in each output batch, or 1 to output events one
+   * by one
+   */
+  protected int m_batchSize = 1;
+
+  /**
+   * The batch in which events are read when they are output one by one
+   */
+  protected CompactSequence<Number> m_single = null;
+
+  /**
+   * Creates a new source
+   * @param channel The channel to read from
+   * @param capacity The initial capacity of the buffer, in bytes
+   */
+  public ChannelSource(/*@ non_null @*/ ReadableByteChannel channel, int capacity)
+  {
+    super(0, 1);
+    m_channel = channel;
+    m_buffer = ByteBuffer.allocateDirect(capacity);
+    m_buffer.flip();
+    m_endOfChannel = false;
+  }
+
+  /**
+   * Opens a file to be read by a source
+   * @param file The file
+   * @return The channel of the file
+   * @throws FileNotFoundException If the file cannot be opened
+   */
+  protected static FileChannel open(/*@ non_null @*/ File file) throws FileNotFoundException
+  {
+    return new FileInputStream(file).getChannel();
+  }
+
+  /**
+   * Sets the number of events in each batch output by the source
+   * @param size The number of events. The value 1 (default) makes the
+   * source output events one by one; other values make it output
+   * {@link CompactSequence}s of that many events, except for the last
+   * one, which may be shorter.
+   * @return This source
+   */
+  public ChannelSource setBatchSize(int size)
+  {
+    if (size < 1)
+    {
+      throw new IllegalArgumentException("The batch size must be positive");
+    }
+    m_batchSize = size;
+    return this;
+  }
+
+  /**
+   * Gets the number of events in each batch output by the source
+   * @return The number of events
+   */
+  /*@ pure @*/ public int getBatchSize()
+  {
+    return m_batchSize;
+  }
+
+  /**
+   * Creates an empty batch of events
+   * @param capacity The number of events the batch is expected to hold
+   * @return The batch
+   */
+  /*@ non_null @*/ protected abstract CompactSequence<Number> newBatch(int capacity);
+
+  /**
+   * Decodes events from the buffer, and appends them to a batch
+   * @param batch A batch created by {@link #newBatch(int)}
+   * @param max The maximum number of events to read
+   * @return The number of events read, which is smaller than
+   * <code>max</code> only if the end of the channel has been reached
+   * @throws IOException If the channel cannot be read, or contains
+   * malformed data
+   */
+  protected abstract int read(/*@ non_null @*/ CompactSequence<Number> batch, int max) throws IOException;
+
+  /**
+   * Reads more bytes from the channel into the buffer. The bytes that
+   * have not been read from the buffer are kept at its beginning; the
+   * buffer grows if they already fill it.
+   * @return <code>false</code> if the end of the channel has been reached,
+   * <code>true</code> otherwise
+   * @throws IOException If the channel cannot be read
+   */
+  protected boolean fill() throws IOException
+  {
+    if (m_endOfChannel)
+    {
+      return false;
+    }
+    m_buffer.compact();
+    if (!m_buffer.hasRemaining())
+    {
+      ByteBuffer larger = ByteBuffer.allocateDirect(2 * m_buffer.capacity());
+      larger.order(m_buffer.order());
+      m_buffer.flip();
+      larger.put(m_buffer);
+      m_buffer = larger;
+    }
+    int read = 0;
+    while (read == 0)
+    {
+      read = m_channel.read(m_buffer);
+    }
+    m_buffer.flip();
+    if (read < 0)
+    {
+      m_endOfChannel = true;
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean compute(Object[] inputs, Queue<Object[]> outputs)
+  {
+    try
+    {
+      if (m_batchSize == 1)
+      {
+        if (m_single == null)
+        {
+          m_single = newBatch(1);
+        }
+        m_single.clear();
+        if (read(m_single, 1) == 0)
+        {
+          return false;
+        }
+        outputs.add(new Object[] {m_single.get(0)});
+        return true;
+      }
+      CompactSequence<Number> batch = newBatch(m_batchSize);
+      if (read(batch, m_batchSize) == 0)
+      {
+        return false;
+      }
+      outputs.add(new Object[] {batch});
+      return true;
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+
+  /**
+   * Reads all the events of the channel, and pushes them to the processor
+   * connected to the output of this source. The end of the trace is then
+   * notified to this processor.
+   */
+  public void pushAll()
+  {
+    Pushable p = getPushableOutput(0);
+    if (p == null)
+    {
+      throw new ProcessorException("The output of the source is not connected");
+    }
+    Object[] inputs = new Object[0];
+    Queue<Object[]> outputs = new ArrayDeque<Object[]>();
+    while (compute(inputs, outputs))
+    {
+      for (Object[] front : outputs)
+      {
+        p.push(front[0]);
+      }
+      outputs.clear();
+    }
+    p.notifyEndOfTrace();
+  }
+
+  /**
+   * Resets the source. The source reads its channel again from the start
+   * if it is a file; other channels cannot be read again.
+   * @throws UnsupportedOperationException If the channel is not a file
+   */
+  @Override
+  public void reset()
+  {
+    if (!(m_channel instanceof FileChannel))
+    {
+      throw new UnsupportedOperationException("Only a source reading from a file can be reset");
+    }
+    super.reset();
+    try
+    {
+      ((FileChannel) m_channel).position(0);
+    }
+    catch (IOException e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_buffer.clear();
+    m_buffer.flip();
+    m_endOfChannel = false;
+  }
+
+  @Override
+  public Class<?> getOutputType(int index)
+  {
+    if (m_batchSize == 1)
+    {
+      return Number.class;
+    }
+    return newBatch(0).getClass();
+  }
+
+  /**
+   * Closes the channel read by this source
+   * @throws IOException If the channel cannot be closed
+   */
+  @Override
+  public void close() throws IOException
+  {
+    m_channel.close();
+  }
+
+  /**
+   * Always throws an exception, as the state of a channel cannot be copied
+   * @throws UnsupportedOperationException Always
+   */
+  @Override
+  public ChannelSource duplicate(boolean with_state)
+  {
+    throw new UnsupportedOperationException("A source reading from a channel cannot be duplicated");
+  }
+}
@@ -0,0 +1,211 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import ca.uqac.lif.cep.peg.Checkpointable;
+
+/**
+ * Saves and restores the state of a group of {@link Checkpointable}
+ * objects. A checkpoint starts with a header containing the number of
+ * objects it holds; the state of each object is then preceded by the name
+ * of its class, so that restoring a checkpoint into objects of the wrong
+ * type fails instead of silently corrupting their state.
+ * <p>
+ * A typical use is to save the processors of a chain periodically, and to
+ * restore them into a newly built chain after a restart:
+ * <pre>
+ * Checkpoint.save(file, update_classifier, prediction);
+ * ...
+ * Checkpoint.restore(file, update_classifier, prediction);
+ * </pre>
+ */
+public class Checkpoint
+{
+  /**
+   * The first four bytes of a checkpoint
+   */
+  public static final int MAGIC = 0x5054434b;
+
+  /**
+   * The version of the format
+   */
+  public static final int VERSION = 1;
+
+  private Checkpoint()
+  {
+    super();
+  }
+
+  /**
+   * Saves the state of objects to a file. The checkpoint is first written
+   * to a temporary file in the same directory, which then replaces the
+   * file; if saving fails or is interrupted, an existing checkpoint in
+   * that file is left intact.
+   * @param file The file. An existing file is replaced.
+   * @param objects The objects
+   * @throws IOException If the state cannot be written
+   */
+  public static void save(/*@ non_null @*/ File file, Checkpointable ... objects) throws IOException
+  {
+    File dir = file.getAbsoluteFile().getParentFile();
+    // The prefix of a temporary file must have at least 3 characters
+    File temp = File.createTempFile(file.getName() + ".ckpt", ".tmp", dir);
+    boolean saved = false;
+    try
+    {
+      FileOutputStream os = new FileOutputStream(temp);
+      try
+      {
+        save(os, objects);
+        // Make sure the data is on disk before the file is replaced
+        os.getFD().sync();
+      }
+      finally
+      {
+        os.close();
+      }
+      if (!temp.renameTo(file))
+      {
+        // On some platforms, a file cannot be renamed over an existing one
+        if (!file.delete() || !temp.renameTo(file))
+        {
+          throw new IOException("Cannot replace " + file + " with " + temp);
+        }
+      }
+      saved = true;
+    }
+    finally
+    {
+      if (!saved)
+      {
+        temp.delete();
+      }
+    }
+  }
+
+  /**
+   * Saves the state of objects to a stream. The stream is flushed, but
+   * not closed.
+   * @param os The stream
+   * @param objects The objects
+   * @throws IOException If the state cannot be written
+   */
+  public static void save(/*@ non_null @*/ OutputStream os, Checkpointable ... objects) throws IOException
+  {
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(os));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(objects.length);
+    for (Checkpointable c : objects)
+    {
+      out.writeUTF(c.getClass().getName());
+      c.checkpoint(out);
+    }
+    out.flush();
+  }
+
+  /**
+   * Restores the state of objects from a file
+   * @param file The file
+   * @param objects The objects, in the same order as when the file was
+   * saved
+   * @throws IOException If the state cannot be read, or does not
+   * correspond to the objects
+   */
+  public static void restore(/*@ non_null @*/ File file, Checkpointable ... objects) throws IOException
+  {
+    InputStream is = new FileInputStream(file);
+    try
+    {
+      restore(is, objects);
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  /**
+   * Restores the state of objects from a stream. The stream is not closed.
+   * @param is The stream
+   * @param objects The objects, in the same order as when the stream was
+   * saved
+   * @throws IOException If the state cannot be read, or does not
+   * correspond to the objects
+   */
+  public static void restore(/*@ non_null @*/ InputStream is, Checkpointable ... objects) throws IOException
+  {
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(is));
+    if (in.readInt() != MAGIC)
+    {
+      throw new IOException("Not a checkpoint");
+    }
+    int version = in.readInt();
+    if (version != VERSION)
+    {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+    int count = in.readInt();
+    if (count != objects.length)
+    {
+      throw new IOException("The checkpoint contains " + count + " objects, but " + objects.length + " were given");
+    }
+    for (Checkpointable c : objects)
+    {
+      String name = in.readUTF();
+      if (!name.equals(c.getClass().getName()))
+      {
+        throw new IOException("Cannot restore the state of a " + name + " into a " + c.getClass().getName());
+      }
+      c.restore(in);
+    }
+  }
+
+  /**
+   * Reads an object written with
+   * {@link ObjectOutput#writeObject(Object)}, reporting a missing
+   * class as an {@link IOException}
+   * @param in The input to read from
+   * @return The object
+   * @throws IOException If the object cannot be read
+   */
+  public static Object readObject(/*@ non_null @*/ ObjectInput in) throws IOException
+  {
+    try
+    {
+      return in.readObject();
+    }
+    catch (ClassNotFoundException e)
+    {
+      throw new IOException(e);
+    }
+  }
+}
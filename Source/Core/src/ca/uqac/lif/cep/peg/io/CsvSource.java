@@ -0,0 +1,396 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+import ca.uqac.lif.cep.peg.CompactSequence;
+import ca.uqac.lif.cep.peg.DoubleSequence;
+
+/**
+ * Source reading one column of numbers from a file of comma-separated
+ * values. Each line of the file produces one event, which is the
+ * <tt>double</tt> value of the selected column. Blank lines are ignored,
+ * and a missing or empty field produces the value <tt>NaN</tt>. Batches
+ * output by the source are {@link DoubleSequence}s.
+ * <p>
+ * Numbers are decoded directly from the bytes of the file. Decimal numbers
+ * of at most 15 significant digits, with or without an exponent, are
+ * decoded without creating any object; other values, such as
+ * <tt>NaN</tt> or numbers with more digits, are decoded by
+ * {@link Double#parseDouble(String)}. Spaces and double quotes around a
+ * field are ignored; quoted fields containing the separator are not
+ * supported.
+ */
+public class CsvSource extends ChannelSource
+{
+  /**
+   * The powers of 10 that can be represented exactly by a <tt>double</tt>
+   */
+  protected static final double[] s_powersOfTen = {1e0, 1e1, 1e2, 1e3, 1e4,
+    1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+    1e18, 1e19, 1e20, 1e21, 1e22};
+
+  /**
+   * The character set used to decode the numbers that cannot be decoded
+   * directly
+   */
+  protected static final Charset s_ascii = Charset.forName("US-ASCII");
+
+  /**
+   * The largest integer that can be represented exactly by a
+   * <tt>double</tt>
+   */
+  protected static final long s_maxExactInteger = 1L << 53;
+
+  /**
+   * The index of the column to read
+   */
+  protected final int m_column;
+
+  /**
+   * The character separating the fields of a line
+   */
+  protected byte m_separator = ',';
+
+  /**
+   * The number of lines to ignore at the beginning of the file
+   */
+  protected int m_skipLines = 0;
+
+  /**
+   * The number of lines read so far
+   */
+  protected long m_lineNumber = 0;
+
+  /**
+   * Creates a new CSV source
+   * @param channel The channel to read from
+   * @param column The index of the column to read, starting at 0
+   */
+  public CsvSource(/*@ non_null @*/ ReadableByteChannel channel, int column)
+  {
+    super(channel, s_defaultCapacity);
+    m_column = column;
+  }
+
+  /**
+   * Creates a new CSV source reading the first column
+   * @param channel The channel to read from
+   */
+  public CsvSource(/*@ non_null @*/ ReadableByteChannel channel)
+  {
+    this(channel, 0);
+  }
+
+  /**
+   * Creates a new CSV source reading a file
+   * @param file The file
+   * @param column The index of the column to read, starting at 0
+   * @throws FileNotFoundException If the file cannot be opened
+   */
+  public CsvSource(/*@ non_null @*/ File file, int column) throws FileNotFoundException
+  {
+    this(open(file), column);
+  }
+
+  /**
+   * Sets the character separating the fields of a line
+   * @param separator The character, which must be ASCII. The default is a
+   * comma.
+   * @return This source
+   */
+  public CsvSource setSeparator(char separator)
+  {
+    if (separator > 127)
+    {
+      throw new IllegalArgumentException("The separator must be an ASCII character");
+    }
+    m_separator = (byte) separator;
+    return this;
+  }
+
+  /**
+   * Sets the number of lines to ignore at the beginning of the file, such
+   * as a header giving the names of the columns
+   * @param n The number of lines
+   * @return This source
+   */
+  public CsvSource setSkipLines(int n)
+  {
+    m_skipLines = n;
+    return this;
+  }
+
+  @Override
+  public CsvSource setBatchSize(int size)
+  {
+    super.setBatchSize(size);
+    return this;
+  }
+
+  @Override
+  protected CompactSequence<Number> newBatch(int capacity)
+  {
+    return DoubleSequence.withCapacity(capacity);
+  }
+
+  @Override
+  protected int read(CompactSequence<Number> batch, int max) throws IOException
+  {
+    DoubleSequence values = (DoubleSequence) batch;
+    int count = 0;
+    while (count < max)
+    {
+      int end = findEndOfLine();
+      if (end < 0)
+      {
+        break;
+      }
+      int from = m_buffer.position();
+      m_buffer.position(end < m_buffer.limit() ? end + 1 : end);
+      if (m_lineNumber++ < m_skipLines)
+      {
+        continue;
+      }
+      if (end > from && m_buffer.get(end - 1) == '\r')
+      {
+        end--;
+      }
+      if (end == from)
+      {
+        continue;
+      }
+      // Skip to the selected column
+      int col = 0;
+      while (col < m_column && from < end)
+      {
+        if (m_buffer.get(from++) == m_separator)
+        {
+          col++;
+        }
+      }
+      int to = from;
+      while (to < end && m_buffer.get(to) != m_separator)
+      {
+        to++;
+      }
+      try
+      {
+        values.addDouble(parseDouble(m_buffer, from, to));
+      }
+      catch (NumberFormatException e)
+      {
+        throw new IOException("Line " + m_lineNumber + ": " + e.getMessage());
+      }
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Finds the end of the line starting at the current position of the
+   * buffer, reading more bytes from the channel if needed
+   * @return The position of the line feed ending the line, the limit of
+   * the buffer if the last line of the channel does not end with a line
+   * feed, or -1 if there are no more lines
+   * @throws IOException If the channel cannot be read
+   */
+  protected int findEndOfLine() throws IOException
+  {
+    int i = m_buffer.position();
+    while (true)
+    {
+      int limit = m_buffer.limit();
+      for (; i < limit; i++)
+      {
+        if (m_buffer.get(i) == '\n')
+        {
+          return i;
+        }
+      }
+      int scanned = i - m_buffer.position();
+      if (!fill())
+      {
+        return m_buffer.hasRemaining() ? m_buffer.limit() : -1;
+      }
+      i = m_buffer.position() + scanned;
+    }
+  }
+
+  /**
+   * Decodes a decimal number from a range of bytes
+   * @param b The buffer containing the bytes
+   * @param from The position of the first byte
+   * @param to The position after the last byte
+   * @return The number, or <tt>NaN</tt> if the range is empty
+   * @throws NumberFormatException If the bytes do not contain a number
+   */
+  public static double parseDouble(/*@ non_null @*/ ByteBuffer b, int from, int to)
+  {
+    while (from < to && isBlank(b.get(from)))
+    {
+      from++;
+    }
+    while (to > from && isBlank(b.get(to - 1)))
+    {
+      to--;
+    }
+    if (from == to)
+    {
+      return Double.NaN;
+    }
+    int i = from;
+    boolean negative = false;
+    byte c = b.get(i);
+    if (c == '-' || c == '+')
+    {
+      negative = c == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any_digit = false;
+    boolean exact = true;
+    for (; i < to; i++)
+    {
+      c = b.get(i);
+      if (c < '0' || c > '9')
+      {
+        break;
+      }
+      any_digit = true;
+      if (digits < 18)
+      {
+        mantissa = 10 * mantissa + (c - '0');
+        if (mantissa > 0)
+        {
+          digits++;
+        }
+      }
+      else
+      {
+        exponent++;
+        exact &= c == '0';
+      }
+    }
+    if (i < to && b.get(i) == '.')
+    {
+      for (i++; i < to; i++)
+      {
+        c = b.get(i);
+        if (c < '0' || c > '9')
+        {
+          break;
+        }
+        any_digit = true;
+        if (digits < 18)
+        {
+          mantissa = 10 * mantissa + (c - '0');
+          if (mantissa > 0)
+          {
+            digits++;
+          }
+          exponent--;
+        }
+        else
+        {
+          exact &= c == '0';
+        }
+      }
+    }
+    if (any_digit && i < to && (b.get(i) == 'e' || b.get(i) == 'E'))
+    {
+      i++;
+      boolean negative_exponent = false;
+      if (i < to && (b.get(i) == '-' || b.get(i) == '+'))
+      {
+        negative_exponent = b.get(i) == '-';
+        i++;
+      }
+      int exp = 0;
+      int start = i;
+      for (; i < to; i++)
+      {
+        c = b.get(i);
+        if (c < '0' || c > '9')
+        {
+          break;
+        }
+        if (exp < 100000)
+        {
+          exp = 10 * exp + (c - '0');
+        }
+      }
+      if (i == start)
+      {
+        any_digit = false;
+      }
+      exponent += negative_exponent ? -exp : exp;
+    }
+    if (any_digit && i == to && exact && mantissa < s_maxExactInteger)
+    {
+      // Both the mantissa and the power of 10 are exact, so that a single
+      // operation gives a correctly rounded result
+      if (mantissa == 0)
+      {
+        return negative ? -0d : 0d;
+      }
+      if (exponent >= 0 && exponent < s_powersOfTen.length)
+      {
+        double value = mantissa * s_powersOfTen[exponent];
+        return negative ? -value : value;
+      }
+      if (exponent < 0 && -exponent < s_powersOfTen.length)
+      {
+        double value = mantissa / s_powersOfTen[-exponent];
+        return negative ? -value : value;
+      }
+    }
+    byte[] bytes = new byte[to - from];
+    for (int j = 0; j < bytes.length; j++)
+    {
+      bytes[j] = b.get(from + j);
+    }
+    return Double.parseDouble(new String(bytes, s_ascii));
+  }
+
+  /**
+   * Determines if a byte is ignored around a field
+   * @param c The byte
+   * @return <code>true</code> if the byte is a space, a tab or a double
+   * quote
+   */
+  protected static boolean isBlank(byte c)
+  {
+    return c == ' ' || c == '\t' || c == '"';
+  }
+
+  @Override
+  public void reset()
+  {
+    super.reset();
+    m_lineNumber = 0;
+  }
+}
@@ -0,0 +1,459 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.uqac.lif.cep.peg.CompactSequence;
+import ca.uqac.lif.cep.peg.DoubleSequence;
+import ca.uqac.lif.cep.peg.LongSequence;
+import ca.uqac.lif.cep.peg.NumericSequence;
+import ca.uqac.lif.cep.peg.Sequence;
+
+/**
+ * Reads the sequences stored in a trace file written by a
+ * {@link TraceFileWriter}. The file is mapped into memory rather than
+ * read: opening it takes the same time regardless of its size, and events
+ * are only loaded from the disk by the operating system when they are
+ * accessed. The sequences of the file can therefore be given to a
+ * {@link ca.uqac.lif.cep.peg.ml.SetMiningFunction SetMiningFunction} even
+ * if they do not fit on the heap.
+ * <p>
+ * The sequences returned by the file are read-only views over the mapped
+ * events, and do not copy them. They are {@link CompactSequence}s, with
+ * the same limits: on Java 8 and later, {@code spliterator()} and
+ * {@code stream()} see an empty sequence, and code that may use them
+ * should be given a copy made with {@link CompactSequence#toSequence()}.
+ * Reading from the file does not modify any state, so that sequences can
+ * be read by multiple threads at the same time.
+ * <p>
+ * The memory mapped by a file is released when the file object is garbage
+ * collected, not when it is closed; sequences obtained from the file
+ * remain readable after {@link #close()}.
+ */
+public class TraceFile implements Closeable
+{
+  /**
+   * The first four bytes of a trace file
+   */
+  public static final int MAGIC = 0x50544346;
+
+  /**
+   * The version of the file format
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Type of a file whose events are <tt>double</tt>s
+   */
+  public static final int TYPE_DOUBLE = 0;
+
+  /**
+   * Type of a file whose events are <tt>long</tt>s
+   */
+  public static final int TYPE_LONG = 1;
+
+  /**
+   * The size of the header of a trace file, in bytes
+   */
+  public static final int HEADER_SIZE = 32;
+
+  /**
+   * A single mapping holds 2<sup>27</sup> values of 8 bytes, which is
+   * below the limit of 2 GB for one mapping
+   */
+  protected static final int s_segmentShift = 27;
+
+  /**
+   * The mask giving the position of a value within its mapping
+   */
+  protected static final long s_segmentMask = (1L << s_segmentShift) - 1;
+
+  /**
+   * The file
+   */
+  /*@ non_null @*/ protected final RandomAccessFile m_file;
+
+  /**
+   * The type of the events
+   */
+  protected final int m_type;
+
+  /**
+   * The number of sequences in the file
+   */
+  protected final long m_numSequences;
+
+  /**
+   * The number of events in the file
+   */
+  protected final long m_numEvents;
+
+  /**
+   * The mappings of the events column
+   */
+  /*@ non_null @*/ protected final ByteBuffer[] m_events;
+
+  /**
+   * The mappings of the offsets column
+   */
+  /*@ non_null @*/ protected final ByteBuffer[] m_offsets;
+
+  /**
+   * Opens a trace file
+   * @param file The file
+   * @throws IOException If the file cannot be read, or is not a trace file
+   */
+  public TraceFile(/*@ non_null @*/ File file) throws IOException
+  {
+    super();
+    m_file = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel channel = m_file.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+      {
+        // Keep reading
+      }
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+      {
+        throw new IOException(file + " is not a trace file");
+      }
+      int version = header.getInt();
+      if (version != VERSION)
+      {
+        throw new IOException("Unsupported trace file version " + version);
+      }
+      m_type = header.getInt();
+      header.getInt();
+      m_numSequences = header.getLong();
+      m_numEvents = header.getLong();
+      long events_start = HEADER_SIZE;
+      long offsets_start = events_start + 8 * m_numEvents;
+      if (channel.size() < offsets_start + 8 * (m_numSequences + 1))
+      {
+        throw new IOException(file + " is truncated");
+      }
+      m_events = map(channel, events_start, m_numEvents);
+      m_offsets = map(channel, offsets_start, m_numSequences + 1);
+    }
+    catch (IOException e)
+    {
+      m_file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Maps a column of 8-byte values into memory
+   * @param channel The channel of the file
+   * @param start The position of the column in the file
+   * @param count The number of values in the column
+   * @return The mappings, each holding at most 2<sup>27</sup> values
+   * @throws IOException If the column cannot be mapped
+   */
+  protected static ByteBuffer[] map(FileChannel channel, long start, long count) throws IOException
+  {
+    int num_segments = (int) ((count + s_segmentMask) >>> s_segmentShift);
+    ByteBuffer[] segments = new ByteBuffer[num_segments];
+    for (int i = 0; i < num_segments; i++)
+    {
+      long first = (long) i << s_segmentShift;
+      long size = Math.min(count - first, 1L << s_segmentShift);
+      segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + 8 * first, 8 * size);
+    }
+    return segments;
+  }
+
+  /**
+   * Gets the type of the events in the file
+   * @return {@link #TYPE_DOUBLE} or {@link #TYPE_LONG}
+   */
+  /*@ pure @*/ public int getType()
+  {
+    return m_type;
+  }
+
+  /**
+   * Gets the number of sequences in the file
+   * @return The number of sequences
+   */
+  /*@ pure @*/ public long getNumSequences()
+  {
+    return m_numSequences;
+  }
+
+  /**
+   * Gets the total number of events in the file
+   * @return The number of events
+   */
+  /*@ pure @*/ public long getNumEvents()
+  {
+    return m_numEvents;
+  }
+
+  /**
+   * Gets an event as a <tt>double</tt>
+   * @param index The position of the event in the events column
+   * @return The event
+   */
+  /*@ pure @*/ public double getDouble(long index)
+  {
+    ByteBuffer b = m_events[(int) (index >>> s_segmentShift)];
+    int pos = (int) ((index & s_segmentMask) << 3);
+    if (m_type == TYPE_LONG)
+    {
+      return b.getLong(pos);
+    }
+    return b.getDouble(pos);
+  }
+
+  /**
+   * Gets an event as a <tt>long</tt>
+   * @param index The position of the event in the events column
+   * @return The event
+   */
+  /*@ pure @*/ public long getLong(long index)
+  {
+    ByteBuffer b = m_events[(int) (index >>> s_segmentShift)];
+    int pos = (int) ((index & s_segmentMask) << 3);
+    if (m_type == TYPE_DOUBLE)
+    {
+      return (long) b.getDouble(pos);
+    }
+    return b.getLong(pos);
+  }
+
+  /**
+   * Gets the position of the first event of a sequence in the events
+   * column
+   * @param index The index of the sequence; the value <i>n</i> gives the
+   * number of events
+   * @return The position
+   */
+  /*@ pure @*/ protected long getOffset(long index)
+  {
+    return m_offsets[(int) (index >>> s_segmentShift)].getLong((int) ((index & s_segmentMask) << 3));
+  }
+
+  /**
+   * Gets a sequence of the file
+   * @param index The index of the sequence
+   * @return A view over the events of the sequence
+   */
+  /*@ non_null @*/ public MappedSequence getSequence(long index)
+  {
+    if (index < 0 || index >= m_numSequences)
+    {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_numSequences);
+    }
+    long start = getOffset(index);
+    return new MappedSequence(this, start, (int) (getOffset(index + 1) - start));
+  }
+
+  /**
+   * Gets the sequences of the file. The views over the sequences are
+   * created as the set is iterated over.
+   * @return A read-only set containing the sequences
+   */
+  /*@ non_null @*/ public Set<Sequence<Number>> getSequences()
+  {
+    return new AbstractSet<Sequence<Number>>()
+    {
+      @Override
+      public Iterator<Sequence<Number>> iterator()
+      {
+        return new Iterator<Sequence<Number>>()
+        {
+          protected long m_index = 0;
+
+          @Override
+          public boolean hasNext()
+          {
+            return m_index < m_numSequences;
+          }
+
+          @Override
+          public Sequence<Number> next()
+          {
+            if (m_index >= m_numSequences)
+            {
+              throw new NoSuchElementException();
+            }
+            return getSequence(m_index++);
+          }
+
+          @Override
+          public void remove()
+          {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size()
+      {
+        return (int) Math.min(m_numSequences, Integer.MAX_VALUE);
+      }
+    };
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    m_file.close();
+  }
+
+  /**
+   * A read-only view over the events of a sequence in a trace file
+   */
+  public static class MappedSequence extends CompactSequence<Number> implements NumericSequence
+  {
+    /**
+     * Dummy UID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The file
+     */
+    /*@ non_null @*/ protected final transient TraceFile m_trace;
+
+    /**
+     * The position of the first event of the sequence in the events column
+     */
+    protected final long m_start;
+
+    /**
+     * The number of events in the sequence
+     */
+    protected final int m_size;
+
+    protected MappedSequence(/*@ non_null @*/ TraceFile trace, long start, int size)
+    {
+      super();
+      m_trace = trace;
+      m_start = start;
+      m_size = size;
+    }
+
+    /**
+     * Gets an event of the sequence as a <tt>double</tt>, without boxing it
+     * @param index The index of the event
+     * @return The event
+     */
+    @Override
+    public double getDouble(int index)
+    {
+      checkIndex(index);
+      return m_trace.getDouble(m_start + index);
+    }
+
+    /**
+     * Gets an event of the sequence as a <tt>long</tt>, without boxing it
+     * @param index The index of the event
+     * @return The event
+     */
+    public long getLong(int index)
+    {
+      checkIndex(index);
+      return m_trace.getLong(m_start + index);
+    }
+
+    @Override
+    public int size()
+    {
+      return m_size;
+    }
+
+    @Override
+    public Number get(int index)
+    {
+      checkIndex(index);
+      if (m_trace.m_type == TYPE_LONG)
+      {
+        return m_trace.getLong(m_start + index);
+      }
+      return m_trace.getDouble(m_start + index);
+    }
+
+    @Override
+    protected void append(Number e)
+    {
+      throw readOnly();
+    }
+
+    @Override
+    public Number set(int index, Number e)
+    {
+      throw readOnly();
+    }
+
+    @Override
+    public void clear()
+    {
+      throw readOnly();
+    }
+
+    /**
+     * Creates the exception thrown by methods that modify the sequence
+     * @return The exception
+     */
+    protected static UnsupportedOperationException readOnly()
+    {
+      return new UnsupportedOperationException("This sequence is read-only");
+    }
+
+    /**
+     * Copies the events of the sequence to the heap
+     * @return A {@link DoubleSequence} or a {@link LongSequence}, depending
+     * on the type of the events
+     */
+    @Override
+    public CompactSequence<Number> clone()
+    {
+      if (m_trace.m_type == TYPE_LONG)
+      {
+        LongSequence seq = LongSequence.withCapacity(m_size);
+        for (int i = 0; i < m_size; i++)
+        {
+          seq.addLong(m_trace.getLong(m_start + i));
+        }
+        return seq;
+      }
+      DoubleSequence seq = DoubleSequence.withCapacity(m_size);
+      for (int i = 0; i < m_size; i++)
+      {
+        seq.addDouble(m_trace.getDouble(m_start + i));
+      }
+      return seq;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ca.uqac.lif.cep.peg.LongSequence;
+import ca.uqac.lif.cep.peg.Sequence;
+
+/**
+ * Writes sequences of numbers into a trace file that can be read by
+ * {@link TraceFile}.
+ * <p>
+ * A trace file is made of a header, followed by a column containing the
+ * events of all the sequences one after the other, and a column containing
+ * the position of the first event of each sequence in the events column.
+ * All values are big-endian. The header contains, in this order:
+ * <ul>
+ * <li>the int {@link TraceFile#MAGIC}</li>
+ * <li>the int version of the format, currently 1</li>
+ * <li>the int type of the events, {@link TraceFile#TYPE_DOUBLE} or
+ * {@link TraceFile#TYPE_LONG}; each event is stored in 8 bytes</li>
+ * <li>an int set to 0</li>
+ * <li>the long number of sequences <i>n</i></li>
+ * <li>the long number of events <i>m</i></li>
+ * </ul>
+ * The events column contains <i>m</i> events, and the offsets column
+ * contains <i>n</i>+1 longs: the events of sequence <i>i</i> are those at
+ * positions <i>o</i><sub><i>i</i></sub> to <i>o</i><sub><i>i</i>+1</sub> &minus; 1.
+ * <p>
+ * Events are written as sequences are added; only the offsets of the
+ * sequences are kept in memory until the writer is closed.
+ */
+public class TraceFileWriter implements Closeable
+{
+  /**
+   * The size of the buffer used to write events
+   */
+  protected static final int s_bufferSize = 1 << 16;
+
+  /**
+   * The file being written
+   */
+  /*@ non_null @*/ protected final RandomAccessFile m_file;
+
+  /**
+   * The channel of the file
+   */
+  /*@ non_null @*/ protected final FileChannel m_channel;
+
+  /**
+   * The type of the events
+   */
+  protected final int m_type;
+
+  /**
+   * The buffer where events are written before being sent to the file
+   */
+  /*@ non_null @*/ protected final ByteBuffer m_buffer;
+
+  /**
+   * The offset of the first event of each sequence written so far
+   */
+  /*@ non_null @*/ protected final LongSequence m_offsets;
+
+  /**
+   * The number of events written so far
+   */
+  protected long m_numEvents;
+
+  /**
+   * Creates a new trace file. An existing file is overwritten.
+   * @param file The file
+   * @param type The type of the events, {@link TraceFile#TYPE_DOUBLE} or
+   * {@link TraceFile#TYPE_LONG}
+   * @throws IOException If the file cannot be created
+   */
+  public TraceFileWriter(/*@ non_null @*/ File file, int type) throws IOException
+  {
+    super();
+    if (type != TraceFile.TYPE_DOUBLE && type != TraceFile.TYPE_LONG)
+    {
+      throw new IllegalArgumentException("Unknown event type " + type);
+    }
+    m_type = type;
+    m_file = new RandomAccessFile(file, "rw");
+    m_file.setLength(0);
+    m_channel = m_file.getChannel();
+    m_buffer = ByteBuffer.allocate(s_bufferSize);
+    m_offsets = new LongSequence();
+    m_numEvents = 0;
+    // Leave room for the header, which is written on close
+    m_channel.position(TraceFile.HEADER_SIZE);
+  }
+
+  /**
+   * Writes a sequence of numbers at the end of the file
+   * @param sequence The sequence
+   * @throws IOException If the sequence cannot be written
+   */
+  public void write(/*@ non_null @*/ Sequence<? extends Number> sequence) throws IOException
+  {
+    m_offsets.addLong(m_numEvents);
+    for (Number n : sequence)
+    {
+      if (m_buffer.remaining() < 8)
+      {
+        flush();
+      }
+      if (m_type == TraceFile.TYPE_DOUBLE)
+      {
+        m_buffer.putDouble(n.doubleValue());
+      }
+      else
+      {
+        m_buffer.putLong(n.longValue());
+      }
+      m_numEvents++;
+    }
+  }
+
+  /**
+   * Writes the buffered events to the file
+   * @throws IOException If the events cannot be written
+   */
+  protected void flush() throws IOException
+  {
+    m_buffer.flip();
+    while (m_buffer.hasRemaining())
+    {
+      m_channel.write(m_buffer);
+    }
+    m_buffer.clear();
+  }
+
+  /**
+   * Writes the offsets and the header of the file, and closes it
+   * @throws IOException If the file cannot be written
+   */
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      m_offsets.addLong(m_numEvents);
+      for (int i = 0; i < m_offsets.size(); i++)
+      {
+        if (m_buffer.remaining() < 8)
+        {
+          flush();
+        }
+        m_buffer.putLong(m_offsets.getLong(i));
+      }
+      flush();
+      m_buffer.putInt(TraceFile.MAGIC);
+      m_buffer.putInt(TraceFile.VERSION);
+      m_buffer.putInt(m_type);
+      m_buffer.putInt(0);
+      m_buffer.putLong(m_offsets.size() - 1);
+      m_buffer.putLong(m_numEvents);
+      m_buffer.flip();
+      long position = 0;
+      while (m_buffer.hasRemaining())
+      {
+        position += m_channel.write(m_buffer, position);
+      }
+    }
+    finally
+    {
+      m_file.close();
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.Pushable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the processors inside a {@link MeteredGroupProcessor}.
+ * Each inner processor, or <em>stage</em>, has a {@link StageMetrics}
+ * that can be registered as an MBean on the platform MBean server by
+ * calling {@link #register()}, under the name:
+ * <pre>
+ * ca.uqac.lif.cep.peg:type=Stage,group=<i>Group-id</i>,stage=<i>Stage-id</i>
+ * </pre>
+ * where the names of the group and of the stage are made of their class
+ * name and of their unique processor ID. Registration is never done
+ * automatically: group processors are often duplicated, for example once
+ * per slice, and the MBean server would otherwise keep the metrics of
+ * every copy forever. A registered group must be unregistered with
+ * {@link #unregister()} once it is no longer used.
+ * <p>
+ * Metrics are disabled by default. They are enabled either by setting the
+ * system property {@value #PROPERTY} to {@code true}, or by calling
+ * {@link #setEnabled(boolean)}. This setting only affects the group
+ * processors created afterwards; a processor created while metrics are
+ * disabled is not instrumented in any way, and runs at the same speed as
+ * an ordinary group processor.
+ */
+public class GroupMetrics
+{
+  /**
+   * The system property that enables metrics
+   */
+  public static final String PROPERTY = "ca.uqac.lif.cep.peg.metrics";
+
+  /**
+   * The domain of the names of the MBeans
+   */
+  public static final String DOMAIN = "ca.uqac.lif.cep.peg";
+
+  /**
+   * Whether metrics are enabled for new group processors
+   */
+  protected static volatile boolean s_enabled = Boolean.getBoolean(PROPERTY);
+
+  /**
+   * The name of the group processor
+   */
+  /*@ non_null @*/ protected final String m_name;
+
+  /**
+   * The metrics of each stage, in the order in which the stages were added
+   */
+  /*@ non_null @*/ protected final List<StageMetrics> m_stages;
+
+  /**
+   * An index of the metrics by processor
+   */
+  /*@ non_null @*/ protected final Map<Processor,StageMetrics> m_index;
+
+  /**
+   * The stage associated to each input of the group
+   */
+  /*@ non_null @*/ protected final Map<Integer,Processor> m_entries;
+
+  /**
+   * The names under which the stages are registered
+   */
+  /*@ non_null @*/ protected final Map<StageMetrics,ObjectName> m_names;
+
+  /**
+   * Whether the stages are registered as MBeans
+   */
+  protected boolean m_registered = false;
+
+  /**
+   * Creates the metrics of a group processor
+   * @param group The group processor
+   */
+  public GroupMetrics(/*@ non_null @*/ Processor group)
+  {
+    super();
+    m_name = StageMetrics.getName(group);
+    m_stages = new ArrayList<StageMetrics>();
+    m_index = new IdentityHashMap<Processor,StageMetrics>();
+    m_entries = new HashMap<Integer,Processor>();
+    m_names = new IdentityHashMap<StageMetrics,ObjectName>();
+  }
+
+  /**
+   * Tells whether metrics are enabled for new group processors
+   * @return {@code true} if metrics are enabled, {@code false} otherwise
+   */
+  public static boolean isEnabled()
+  {
+    return s_enabled;
+  }
+
+  /**
+   * Enables or disables metrics for the group processors created from now
+   * on
+   * @param b Set to {@code true} to enable metrics, {@code false} to
+   * disable them
+   */
+  public static void setEnabled(boolean b)
+  {
+    s_enabled = b;
+  }
+
+  /**
+   * Gets the name of the group processor
+   * @return The name
+   */
+  /*@ pure non_null @*/ public String getName()
+  {
+    return m_name;
+  }
+
+  /**
+   * Gets the metrics of all the stages of the group
+   * @return The metrics
+   */
+  /*@ pure non_null @*/ public synchronized List<StageMetrics> getStages()
+  {
+    return Collections.unmodifiableList(new ArrayList<StageMetrics>(m_stages));
+  }
+
+  /**
+   * Gets the metrics of a stage of the group
+   * @param p The processor of the stage
+   * @return The metrics, or {@code null} if the processor is not a stage
+   * of this group
+   */
+  /*@ pure null @*/ public synchronized StageMetrics getStage(/*@ non_null @*/ Processor p)
+  {
+    return m_index.get(p);
+  }
+
+  /**
+   * Registers the metrics of each stage as an MBean. Stages added to the
+   * group afterwards are registered as well.
+   */
+  public synchronized void register()
+  {
+    m_registered = true;
+    for (StageMetrics sm : m_stages)
+    {
+      register(sm);
+    }
+  }
+
+  /**
+   * Unregisters the MBeans of this group. This should be done when the
+   * group processor is no longer used, since the MBean server otherwise
+   * keeps the metrics forever.
+   */
+  public synchronized void unregister()
+  {
+    m_registered = false;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : m_names.values())
+    {
+      try
+      {
+        server.unregisterMBean(name);
+      }
+      catch (InstanceNotFoundException e)
+      {
+        // Already unregistered by someone else; nothing to do
+      }
+      catch (JMException e)
+      {
+        throw new ProcessorException(e);
+      }
+    }
+    m_names.clear();
+  }
+
+  /**
+   * Adds a stage to the group
+   * @param p The processor of the stage
+   */
+  synchronized void addStage(/*@ non_null @*/ Processor p)
+  {
+    if (m_index.containsKey(p))
+    {
+      return;
+    }
+    StageMetrics sm = new StageMetrics(m_name, p);
+    m_stages.add(sm);
+    m_index.put(p, sm);
+    if (m_registered)
+    {
+      register(sm);
+    }
+  }
+
+  /**
+   * Associates a stage to an input of the group
+   * @param index The index of the input
+   * @param p The processor of the stage
+   */
+  synchronized void setEntry(int index, /*@ non_null @*/ Processor p)
+  {
+    m_entries.put(index, p);
+  }
+
+  /**
+   * Wraps the pushable of an input of the group, so that the events pushed
+   * into it are counted. Since this is where events start entering the
+   * group, this is also where the connections between the stages are
+   * metered.
+   * @param index The index of the input
+   * @param p The pushable of the group
+   * @return The metered pushable
+   */
+  synchronized Pushable wrapInput(int index, /*@ non_null @*/ Pushable p)
+  {
+    attach();
+    Processor entry = m_entries.get(index);
+    return new MeteredPushable(p, null, entry == null ? null : m_index.get(entry));
+  }
+
+  /**
+   * Places a metered pushable on every output of every stage that is not
+   * metered yet. This method can be called again after the connections of
+   * the group have changed.
+   */
+  synchronized void attach()
+  {
+    for (StageMetrics sm : m_stages)
+    {
+      Processor p = sm.getProcessor();
+      if (p == null)
+      {
+        continue;
+      }
+      for (int i = 0; i < p.getOutputArity(); i++)
+      {
+        Pushable out = p.getPushableOutput(i);
+        if (out == null || out instanceof MeteredPushable)
+        {
+          continue;
+        }
+        p.setPushableOutput(i, new MeteredPushable(out, sm, m_index.get(out.getProcessor())));
+      }
+    }
+  }
+
+  /**
+   * Registers the metrics of a stage as an MBean
+   * @param sm The metrics
+   */
+  protected void register(/*@ non_null @*/ StageMetrics sm)
+  {
+    if (m_names.containsKey(sm))
+    {
+      return;
+    }
+    try
+    {
+      ObjectName name = new ObjectName(DOMAIN + ":type=Stage,group=" + m_name + ",stage=" + sm.getStage());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(sm, name);
+      m_names.put(sm, name);
+    }
+    catch (JMException e)
+    {
+      throw new ProcessorException(e);
+    }
+  }
+}
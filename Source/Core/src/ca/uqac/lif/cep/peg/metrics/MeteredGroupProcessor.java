@@ -0,0 +1,122 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import ca.uqac.lif.cep.GroupProcessor;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+
+/**
+ * Group processor that can record, for each processor it contains, the
+ * number of events received and sent, the time spent in its computations
+ * and the size of the state it retains. These metrics are only recorded
+ * when {@linkplain GroupMetrics#isEnabled() enabled} at the moment the
+ * group is created.
+ * <p>
+ * Metering works by placing a {@link MeteredPushable} on each connection
+ * between the inner processors when the group is first connected to
+ * something upstream; the inner processors themselves are left untouched.
+ * When metrics are disabled, no such pushable is created, and the group
+ * behaves exactly as a plain {@link GroupProcessor}. Only the processors
+ * added with {@link #addProcessor(Processor)} or
+ * {@link #addProcessors(Processor...)}, and events pushed into the group,
+ * are metered.
+ */
+public class MeteredGroupProcessor extends GroupProcessor
+{
+  /**
+   * The metrics of this group, or {@code null} if metrics are disabled
+   */
+  /*@ null @*/ protected final GroupMetrics m_metrics;
+
+  /**
+   * Creates a new metered group processor
+   * @param in_arity The input arity
+   * @param out_arity The output arity
+   */
+  public MeteredGroupProcessor(int in_arity, int out_arity)
+  {
+    super(in_arity, out_arity);
+    m_metrics = GroupMetrics.isEnabled() ? new GroupMetrics(this) : null;
+  }
+
+  /**
+   * Gets the metrics of this group
+   * @return The metrics, or {@code null} if metrics were disabled when the
+   * group was created
+   */
+  /*@ pure null @*/ public GroupMetrics getMetrics()
+  {
+    return m_metrics;
+  }
+
+  @Override
+  public GroupProcessor addProcessor(Processor p)
+  {
+    if (m_metrics != null)
+    {
+      m_metrics.addStage(p);
+    }
+    return super.addProcessor(p);
+  }
+
+  @Override
+  public GroupProcessor addProcessors(Processor ... procs)
+  {
+    if (m_metrics != null)
+    {
+      for (Processor p : procs)
+      {
+        m_metrics.addStage(p);
+      }
+    }
+    return super.addProcessors(procs);
+  }
+
+  @Override
+  public void associateInput(int i, Processor p, int j)
+  {
+    super.associateInput(i, p, j);
+    if (m_metrics != null)
+    {
+      m_metrics.setEntry(i, p);
+    }
+  }
+
+  @Override
+  public Pushable getPushableInput(int index)
+  {
+    Pushable p = super.getPushableInput(index);
+    if (m_metrics == null)
+    {
+      return p;
+    }
+    return m_metrics.wrapInput(index, p);
+  }
+
+  @Override
+  public void setPushableOutput(int i, Pushable p)
+  {
+    super.setPushableOutput(i, p);
+    if (m_metrics != null)
+    {
+      // The group may have replaced the output of an inner processor
+      m_metrics.attach();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+
+/**
+ * Pushable placed on a connection between two processors of a
+ * {@link MeteredGroupProcessor}, which counts the events that go through
+ * it and times the push. The time spent in the push is credited to the
+ * downstream stage and taken away from the upstream stage; the time
+ * recorded for a stage is hence the time spent in its own computations.
+ */
+class MeteredPushable implements Pushable
+{
+  /**
+   * The pushable events are forwarded to
+   */
+  /*@ non_null @*/ protected final Pushable m_pushable;
+
+  /**
+   * The stage upstream of the connection, or {@code null} if the
+   * connection comes from outside the group
+   */
+  /*@ null @*/ protected final StageMetrics m_from;
+
+  /**
+   * The stage downstream of the connection, or {@code null} if the
+   * connection leads outside the group
+   */
+  /*@ null @*/ protected final StageMetrics m_to;
+
+  /**
+   * Creates a new metered pushable
+   * @param pushable The pushable events are forwarded to
+   * @param from The stage upstream of the connection
+   * @param to The stage downstream of the connection
+   */
+  MeteredPushable(/*@ non_null @*/ Pushable pushable, /*@ null @*/ StageMetrics from, /*@ null @*/ StageMetrics to)
+  {
+    super();
+    m_pushable = pushable;
+    m_from = from;
+    m_to = to;
+  }
+
+  @Override
+  public Pushable push(Object o)
+  {
+    if (m_from != null)
+    {
+      m_from.eventOut();
+    }
+    if (m_to != null)
+    {
+      m_to.eventIn();
+    }
+    long start = System.nanoTime();
+    try
+    {
+      m_pushable.push(o);
+    }
+    finally
+    {
+      elapsed(System.nanoTime() - start);
+    }
+    return this;
+  }
+
+  @Override
+  public void notifyEndOfTrace()
+  {
+    long start = System.nanoTime();
+    try
+    {
+      m_pushable.notifyEndOfTrace();
+    }
+    finally
+    {
+      elapsed(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public Processor getProcessor()
+  {
+    return m_pushable.getProcessor();
+  }
+
+  @Override
+  public int getPosition()
+  {
+    return m_pushable.getPosition();
+  }
+
+  /**
+   * Records the time spent downstream of this connection
+   * @param nanos The time, in nanoseconds
+   */
+  protected void elapsed(long nanos)
+  {
+    if (m_to != null)
+    {
+      m_to.addNanos(nanos);
+    }
+    if (m_from != null)
+    {
+      m_from.addNanos(-nanos);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import ca.uqac.lif.cep.Processor;
+import java.lang.ref.WeakReference;
+
+/**
+ * Counters kept for one processor inside a {@link MeteredGroupProcessor}.
+ * The processor is only weakly referenced, so that a registered MBean
+ * does not keep it from being garbage collected.
+ */
+public class StageMetrics implements StageMetricsMBean
+{
+  /**
+   * Index of the counter of input events
+   */
+  protected static final int IN = 0;
+
+  /**
+   * Index of the counter of output events
+   */
+  protected static final int OUT = 1;
+
+  /**
+   * Index of the counter of nanoseconds
+   */
+  protected static final int NANOS = 2;
+
+  /**
+   * The name of the group processor
+   */
+  /*@ non_null @*/ protected final String m_group;
+
+  /**
+   * The name of the processor
+   */
+  /*@ non_null @*/ protected final String m_stage;
+
+  /**
+   * The processor
+   */
+  /*@ non_null @*/ protected final WeakReference<Processor> m_processor;
+
+  /**
+   * The counters of this stage
+   */
+  /*@ non_null @*/ protected final StripedCounter m_counters;
+
+  /**
+   * Creates the metrics of a processor
+   * @param group The name of the group processor
+   * @param p The processor
+   */
+  public StageMetrics(/*@ non_null @*/ String group, /*@ non_null @*/ Processor p)
+  {
+    super();
+    m_group = group;
+    m_stage = getName(p);
+    m_processor = new WeakReference<Processor>(p);
+    m_counters = new StripedCounter(3);
+  }
+
+  @Override
+  public String getGroup()
+  {
+    return m_group;
+  }
+
+  @Override
+  public String getStage()
+  {
+    return m_stage;
+  }
+
+  @Override
+  public long getEventsIn()
+  {
+    return m_counters.sum(IN);
+  }
+
+  @Override
+  public long getEventsOut()
+  {
+    return m_counters.sum(OUT);
+  }
+
+  @Override
+  public long getComputeNanos()
+  {
+    return m_counters.sum(NANOS);
+  }
+
+  @Override
+  public int getStateSize()
+  {
+    Processor p = m_processor.get();
+    if (p instanceof StateSize)
+    {
+      return ((StateSize) p).getStateSize();
+    }
+    return -1;
+  }
+
+  @Override
+  public void reset()
+  {
+    m_counters.reset();
+  }
+
+  /**
+   * Gets the processor of this stage
+   * @return The processor, or {@code null} if it has been garbage
+   * collected
+   */
+  /*@ pure null @*/ public Processor getProcessor()
+  {
+    return m_processor.get();
+  }
+
+  /**
+   * Records that an event was pushed into the processor
+   */
+  protected void eventIn()
+  {
+    m_counters.add(IN, 1);
+  }
+
+  /**
+   * Records that an event was pushed out of the processor
+   */
+  protected void eventOut()
+  {
+    m_counters.add(OUT, 1);
+  }
+
+  /**
+   * Adds to the time spent by the processor
+   * @param nanos The time to add, in nanoseconds. This value is negative
+   * for the time spent downstream of the processor.
+   */
+  protected void addNanos(long nanos)
+  {
+    m_counters.add(NANOS, nanos);
+  }
+
+  /**
+   * Gets a name for a processor, made of its class name and its unique ID
+   * @param p The processor
+   * @return The name
+   */
+  /*@ non_null @*/ public static String getName(/*@ non_null @*/ Processor p)
+  {
+    String name = p.getClass().getSimpleName();
+    if (name.isEmpty())
+    {
+      // Anonymous class
+      name = p.getClass().getName();
+      name = name.substring(name.lastIndexOf('.') + 1);
+    }
+    return name + "-" + p.getId();
+  }
+}
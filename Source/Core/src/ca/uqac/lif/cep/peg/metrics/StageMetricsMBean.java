@@ -0,0 +1,67 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+/**
+ * Management interface of a {@link StageMetrics}.
+ */
+public interface StageMetricsMBean
+{
+  /**
+   * Gets the name of the group processor the stage belongs to
+   * @return The name
+   */
+  public String getGroup();
+
+  /**
+   * Gets the name of the processor of this stage
+   * @return The name
+   */
+  public String getStage();
+
+  /**
+   * Gets the number of events pushed into the processor
+   * @return The number of events
+   */
+  public long getEventsIn();
+
+  /**
+   * Gets the number of events pushed out of the processor
+   * @return The number of events
+   */
+  public long getEventsOut();
+
+  /**
+   * Gets the time spent by the processor itself on the events it
+   * received, excluding the time spent by the processors downstream
+   * @return The time, in nanoseconds
+   */
+  public long getComputeNanos();
+
+  /**
+   * Gets the amount of state retained by the processor
+   * @return The size, or -1 if the processor does not report it
+   * @see StateSize
+   */
+  public int getStateSize();
+
+  /**
+   * Sets the counters of this stage back to zero
+   */
+  public void reset();
+}
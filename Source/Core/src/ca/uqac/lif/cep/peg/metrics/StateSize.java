@@ -0,0 +1,35 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+/**
+ * Interface implemented by processors that can tell how much state they
+ * currently retain. This size is reported by the metrics of a
+ * {@link MeteredGroupProcessor}.
+ */
+public interface StateSize
+{
+  /**
+   * Gets the amount of state currently retained, typically a number of
+   * events or of instances. This method can be called from another thread
+   * than the one that pushes events into the processor; the value it
+   * returns is then only approximate.
+   * @return The size of the state
+   */
+  /*@ pure @*/ public int getStateSize();
+}
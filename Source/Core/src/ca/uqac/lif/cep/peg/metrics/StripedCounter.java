@@ -0,0 +1,155 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of counters that can be incremented concurrently by many threads
+ * at a low cost. Each counter is split into a number of cells; a thread
+ * only updates the cell associated with its identifier, and the value of
+ * the counter is the sum of its cells. The cells of different threads are
+ * placed on different cache lines, so that threads updating the counters
+ * at the same time rarely contend with each other.
+ * <p>
+ * Reading a counter is more expensive than updating it, and the value
+ * read while other threads update the counter is only approximate. This
+ * makes these counters suited to statistics that are updated on every
+ * event and read once in a while.
+ */
+public class StripedCounter
+{
+  /**
+   * The number of longs in a cache line
+   */
+  protected static final int s_lineSize = 8;
+
+  /**
+   * The maximum number of stripes
+   */
+  protected static final int s_maxStripes = 64;
+
+  /**
+   * The cells, one run of {@link #m_stride} longs per stripe
+   */
+  /*@ non_null @*/ protected final AtomicLongArray m_cells;
+
+  /**
+   * The number of counters
+   */
+  protected final int m_numCounters;
+
+  /**
+   * The distance between the cells of two consecutive stripes
+   */
+  protected final int m_stride;
+
+  /**
+   * The number of stripes minus one; the number of stripes is a power of 2
+   */
+  protected final int m_mask;
+
+  /**
+   * Creates a new set of counters, with a number of stripes based on the
+   * number of available processors
+   * @param num_counters The number of counters
+   */
+  public StripedCounter(int num_counters)
+  {
+    this(num_counters, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new set of counters
+   * @param num_counters The number of counters
+   * @param num_stripes The number of stripes. This number is rounded up to
+   * a power of 2, and capped to 64.
+   */
+  public StripedCounter(int num_counters, int num_stripes)
+  {
+    super();
+    int stripes = 1;
+    while (stripes < num_stripes && stripes < s_maxStripes)
+    {
+      stripes *= 2;
+    }
+    m_numCounters = num_counters;
+    m_stride = ((num_counters + s_lineSize - 1) / s_lineSize) * s_lineSize;
+    m_mask = stripes - 1;
+    // One extra run of padding at each end keeps the first and last
+    // stripes away from the array header and from other objects
+    m_cells = new AtomicLongArray((stripes + 2) * m_stride);
+  }
+
+  /**
+   * Adds a value to a counter
+   * @param counter The index of the counter
+   * @param x The value to add
+   */
+  public void add(int counter, long x)
+  {
+    m_cells.getAndAdd(getOffset() + counter, x);
+  }
+
+  /**
+   * Gets the value of a counter
+   * @param counter The index of the counter
+   * @return The sum of the cells of this counter
+   */
+  public long sum(int counter)
+  {
+    long sum = 0;
+    for (int i = 0; i <= m_mask; i++)
+    {
+      sum += m_cells.get((i + 1) * m_stride + counter);
+    }
+    return sum;
+  }
+
+  /**
+   * Sets all counters back to zero. Updates made concurrently with this
+   * call may or may not be lost.
+   */
+  public void reset()
+  {
+    for (int i = 0; i < m_cells.length(); i++)
+    {
+      m_cells.set(i, 0);
+    }
+  }
+
+  /**
+   * Gets the number of counters
+   * @return The number of counters
+   */
+  /*@ pure @*/ public int getNumCounters()
+  {
+    return m_numCounters;
+  }
+
+  /**
+   * Gets the offset of the cells of the current thread
+   * @return The offset
+   */
+  protected int getOffset()
+  {
+    // Thread identifiers are handed out in sequence, so that threads
+    // created one after the other fall in different stripes
+    return (((int) Thread.currentThread().getId() & m_mask) + 1) * m_stride;
+  }
+}
@@ -23,9 +23,19 @@ import java.util.Set;
 import org.apache.commons.math3.ml.clustering.DoublePoint;
 import ca.uqac.lif.cep.peg.Sequence;
 
+/**
+ * Mining function that clusters points. The first event of each sequence
+ * is taken as a point; with an executor service, these points are
+ * extracted from chunks of the set of sequences in parallel.
+ */
 @SuppressWarnings("rawtypes")
 public abstract class ClusteringFunction extends SetMiningFunction<DoublePoint,Set>
 {
+	/**
+	 * Extracts the first point of each sequence
+	 */
+	protected static final FirstPoints s_firstPoints = new FirstPoints();
+
 	protected ClusteringFunction()
 	{
 		super(Set.class);
@@ -34,14 +44,39 @@ public abstract class ClusteringFunction extends SetMiningFunction<DoublePoint,S
 	@Override
 	public final Set mine(Set<Sequence<DoublePoint>> sequences)
 	{
-		Set<DoublePoint> points = new HashSet<DoublePoint>();
-		for (Sequence<DoublePoint> seq : sequences)
-		{
-			if (!seq.isEmpty())
-				points.add(seq.getFirst());
-		}
-		return computeClustering(points);
+		return computeClustering(mapCombine(sequences, s_firstPoints));
 	}
 		
 	protected abstract Set<DoublePoint> computeClustering(Set<DoublePoint> points);
+
+	/**
+	 * Gathers the first point of each sequence into a set
+	 */
+	protected static class FirstPoints implements ChunkMiner<DoublePoint,Set<DoublePoint>>
+	{
+		@Override
+		public Set<DoublePoint> map(SequenceView<DoublePoint> chunk)
+		{
+			Set<DoublePoint> points = new HashSet<DoublePoint>();
+			for (Sequence<DoublePoint> seq : chunk)
+			{
+				if (!seq.isEmpty())
+					points.add(seq.getFirst());
+			}
+			return points;
+		}
+
+		@Override
+		public Set<DoublePoint> combine(Set<DoublePoint> x, Set<DoublePoint> y)
+		{
+			// Add the smaller set to the larger one
+			if (x.size() < y.size())
+			{
+				y.addAll(x);
+				return y;
+			}
+			x.addAll(y);
+			return x;
+		}
+	}
 }
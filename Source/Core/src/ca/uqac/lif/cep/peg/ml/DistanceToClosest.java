@@ -7,10 +7,25 @@ import org.apache.commons.math3.ml.distance.DistanceMeasure;
 
 import ca.uqac.lif.cep.functions.BinaryFunction;
 
+/**
+ * Computes the distance between a point and the closest point of a set.
+ * <p>
+ * The same set of points, such as the centroids produced by
+ * {@link KMeansFunction}, is typically compared with many points in a row.
+ * The function therefore keeps a {@link PointIndex} on the last set it
+ * received, and reuses it as long as it receives the same set object. A set
+ * is assumed not to be modified once it has been passed to the function;
+ * as a safeguard, the index is also rebuilt if the size of the set changes.
+ */
 @SuppressWarnings("rawtypes")
 public class DistanceToClosest extends BinaryFunction<Set, DoublePoint, Number>
 {
 	protected DistanceMeasure m_measure;
+
+	/**
+	 * The index on the last set received
+	 */
+	/*@ null @*/ protected volatile CachedIndex m_cache = null;
 	
 	public DistanceToClosest(DistanceMeasure measure)
 	{
@@ -21,16 +36,52 @@ public class DistanceToClosest extends BinaryFunction<Set, DoublePoint, Number>
 	@Override
 	public Number getValue(Set x, DoublePoint y)
 	{
-		double min_dist = Double.MAX_VALUE;
-		double[] coords = y.getPoint();
-		for (Object o : x)
+		return getIndex(x).getDistanceToClosest(y.getPoint());
+	}
+
+	/**
+	 * Gets the index on a set of points, creating it if the set is not
+	 * the last one received
+	 * @param x The set
+	 * @return The index
+	 */
+	/*@ non_null @*/ protected PointIndex getIndex(/*@ non_null @*/ Set x)
+	{
+		CachedIndex c = m_cache;
+		if (c == null || c.m_set != x || c.m_size != x.size())
+		{
+			c = new CachedIndex(x, new PointIndex(x, m_measure));
+			m_cache = c;
+		}
+		return c.m_index;
+	}
+
+	/**
+	 * An index associated with the set it was created from
+	 */
+	protected static class CachedIndex
+	{
+		/**
+		 * The set
+		 */
+		/*@ non_null @*/ protected final Set<?> m_set;
+
+		/**
+		 * The size of the set when the index was created
+		 */
+		protected final int m_size;
+
+		/**
+		 * The index
+		 */
+		/*@ non_null @*/ protected final PointIndex m_index;
+
+		public CachedIndex(/*@ non_null @*/ Set<?> set, /*@ non_null @*/ PointIndex index)
 		{
-			DoublePoint p = DoublePointCast.getDoublePoint(o);
-			if (o != null)
-			{
-				min_dist = Math.min(min_dist, m_measure.compute(p.getPoint(), coords));
-			}
+			super();
+			m_set = set;
+			m_size = set.size();
+			m_index = index;
 		}
-		return min_dist;
 	}
 }
@@ -0,0 +1,187 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.peg.Checkpointable;
+
+/**
+ * Processor that outputs a n-dimensional {@code DoublePoint} out of a
+ * stream of numbers, containing the first <i>n</i> running statistical
+ * moments of the stream. This processor produces the same output as
+ * {@link RunningMoments}, but computes all the moments in a single
+ * processor: the sums of powers are kept in an array of primitive doubles,
+ * and the powers of each input number are obtained by repeated
+ * multiplication.
+ * <p>
+ * By default, a new {@code DoublePoint} is output for each input event.
+ * If {@link #setReuseOutput(boolean) setReuseOutput(true)} is called, the
+ * processor instead outputs the same {@code DoublePoint} every time and
+ * overwrites its values on each event. This avoids any allocation, but
+ * downstream processors must then not keep a reference to a point past the
+ * next input event.
+ * 
+ * @author Sylvain Hallé
+ */
+public class FusedRunningMoments extends UniformProcessor implements Checkpointable
+{
+	/**
+	 * The number of statistical moments to compute
+	 */
+	protected int m_numMoments;
+
+	/**
+	 * The running sum of the <i>i</i>+1-th power of each input number
+	 */
+	protected double[] m_sums;
+
+	/**
+	 * The number of events received so far
+	 */
+	protected long m_numEvents;
+
+	/**
+	 * Whether to reuse the same output point for each event
+	 */
+	protected boolean m_reuseOutput = false;
+
+	/**
+	 * The values of the output point, when it is reused
+	 */
+	protected double[] m_outValues;
+
+	/**
+	 * The output point, when it is reused
+	 */
+	protected DoublePoint m_outPoint;
+
+	/**
+	 * Creates a new processor
+	 * @param num_moments The number of moments to compute. Must be greater
+	 * than 0.
+	 */
+	public FusedRunningMoments(int num_moments)
+	{
+		super(1, 1);
+		m_numMoments = num_moments;
+		m_sums = new double[num_moments];
+		m_numEvents = 0;
+		m_outValues = new double[num_moments];
+		m_outPoint = new DoublePoint(m_outValues);
+	}
+
+	public FusedRunningMoments()
+	{
+		this(1);
+	}
+
+	/**
+	 * Sets whether the processor outputs the same point on every event
+	 * @param b Set to {@code true} to reuse the output point,
+	 * {@code false} to output a new point on each event
+	 * @return This processor
+	 */
+	public FusedRunningMoments setReuseOutput(boolean b)
+	{
+		m_reuseOutput = b;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Object[] outputs)
+			throws ProcessorException
+	{
+		double x = ((Number) inputs[0]).doubleValue();
+		m_numEvents++;
+		double p = 1;
+		for (int i = 0; i < m_numMoments; i++)
+		{
+			p *= x;
+			m_sums[i] += p;
+		}
+		double[] values = m_outValues;
+		if (!m_reuseOutput)
+		{
+			values = new double[m_numMoments];
+		}
+		for (int i = 0; i < m_numMoments; i++)
+		{
+			values[i] = m_sums[i] / m_numEvents;
+		}
+		if (m_reuseOutput)
+		{
+			outputs[0] = m_outPoint;
+		}
+		else
+		{
+			outputs[0] = new DoublePoint(values);
+		}
+		return true;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		for (int i = 0; i < m_numMoments; i++)
+		{
+			m_sums[i] = 0;
+		}
+		m_numEvents = 0;
+	}
+
+	@Override
+	public FusedRunningMoments duplicate(boolean with_state)
+	{
+		FusedRunningMoments frm = new FusedRunningMoments(m_numMoments);
+		frm.m_reuseOutput = m_reuseOutput;
+		if (with_state)
+		{
+			System.arraycopy(m_sums, 0, frm.m_sums, 0, m_numMoments);
+			frm.m_numEvents = m_numEvents;
+		}
+		return frm;
+	}
+
+	@Override
+	public void checkpoint(ObjectOutput out) throws IOException
+	{
+		out.writeLong(m_numEvents);
+		for (int i = 0; i < m_numMoments; i++)
+		{
+			out.writeDouble(m_sums[i]);
+		}
+	}
+
+	@Override
+	public void restore(ObjectInput in) throws IOException
+	{
+		m_numEvents = in.readLong();
+		for (int i = 0; i < m_numMoments; i++)
+		{
+			m_sums[i] = in.readDouble();
+		}
+	}
+}
@@ -38,6 +38,10 @@ import ca.uqac.lif.cep.functions.UnaryFunction;
  * the input set into a {@link DoublePoint}, using
  * {@link DoublePointCast#getDoublePoint(Object)}. This means that
  * lists of numbers can be used instead of {@link DoublePoint}s.
+ * <p>
+ * The clustering is computed from scratch on each call. To maintain the
+ * centroids of a stream of points, use {@link StreamingKMeans}, which
+ * updates them one point at a time.
  * 
  * @author Sylvain Hallé
  */
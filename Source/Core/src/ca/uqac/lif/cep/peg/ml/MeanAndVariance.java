@@ -22,23 +22,46 @@ import static ca.uqac.lif.cep.Connector.LEFT;
 import static ca.uqac.lif.cep.Connector.OUTPUT;
 import static ca.uqac.lif.cep.Connector.RIGHT;
 import ca.uqac.lif.cep.Connector;
-import ca.uqac.lif.cep.GroupProcessor;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.FunctionTree;
+import ca.uqac.lif.cep.peg.metrics.MeteredGroupProcessor;
 import ca.uqac.lif.cep.tmf.Fork;
 
 /**
  * Processor that outputs a two-dimensional {@code DoublePoint} out of a
  * stream of numbers, containing the running average and running variance
  * of the stream.
+ * <p>
+ * By default, the variance is computed by {@link RunningVariance}. The
+ * processor can also be instantiated to compute both values in a single
+ * pass with a {@link WelfordVariance} processor, which is faster and
+ * numerically stable.
  * @author Sylvain Hallé
  */
-public class MeanAndVariance extends GroupProcessor
+public class MeanAndVariance extends MeteredGroupProcessor
 {
 	public MeanAndVariance()
+	{
+		this(false);
+	}
+
+	/**
+	 * Creates a new processor
+	 * @param single_pass Set to {@code true} to compute the mean and
+	 * variance with a {@link WelfordVariance} processor
+	 */
+	public MeanAndVariance(boolean single_pass)
 	{
 		super(1, 1);
+		if (single_pass)
+		{
+			WelfordVariance wv = new WelfordVariance(true);
+			associateInput(INPUT, wv, INPUT);
+			associateOutput(OUTPUT, wv, OUTPUT);
+			addProcessors(wv);
+			return;
+		}
 		Fork f = new Fork(2);
 		associateInput(INPUT, f, INPUT);
 		StatMoment avg = new StatMoment(1);
@@ -0,0 +1,301 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import java.util.Collection;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.distance.ChebyshevDistance;
+import org.apache.commons.math3.ml.distance.DistanceMeasure;
+import org.apache.commons.math3.ml.distance.EuclideanDistance;
+import org.apache.commons.math3.ml.distance.ManhattanDistance;
+
+/**
+ * An index over a fixed set of points, which finds the distance between a
+ * point and its closest neighbor in the set. The elements of the set are
+ * cast into points once, using {@link DoublePointCast#getDoublePoint(Object)};
+ * elements that cannot be cast are ignored.
+ * <p>
+ * When the distance measure is Euclidean, Manhattan or Chebyshev distance,
+ * the points are stored in a <a href="https://en.wikipedia.org/wiki/K-d_tree">k-d
+ * tree</a>, and a query takes a time logarithmic in the number of points on
+ * average. For these measures, the distance between two points is never
+ * smaller than the difference of any of their coordinates, which is what
+ * allows the tree to skip whole regions of space. For any other measure,
+ * the points are compared with the query one by one.
+ * <p>
+ * The index is not modified by queries, and can be used by multiple
+ * threads.
+ * @see DistanceToClosest
+ */
+public class PointIndex
+{
+	/**
+	 * Below this number of points, a region of the tree is scanned
+	 * linearly
+	 */
+	protected static final int s_leafSize = 8;
+
+	/**
+	 * The distance measure
+	 */
+	/*@ non_null @*/ protected final DistanceMeasure m_measure;
+
+	/**
+	 * The coordinates of the points. When {@link #m_axes} is not null, the
+	 * points are laid out as a k-d tree: the root of the range
+	 * [<i>lo</i>,<i>hi</i>[ is at its middle, points on its left have a
+	 * smaller coordinate along its axis, and points on its right a greater
+	 * one.
+	 */
+	/*@ non_null @*/ protected final double[][] m_points;
+
+	/**
+	 * The axis along which the points are split at each node of the tree,
+	 * or <tt>null</tt> if the points are not stored in a tree
+	 */
+	/*@ null @*/ protected final int[] m_axes;
+
+	/**
+	 * Creates a new index
+	 * @param points The points to index
+	 * @param measure The distance measure
+	 */
+	public PointIndex(/*@ non_null @*/ Collection<?> points, /*@ non_null @*/ DistanceMeasure measure)
+	{
+		super();
+		m_measure = measure;
+		double[][] coords = new double[points.size()][];
+		int n = 0;
+		int dim = -1;
+		boolean same_dim = true;
+		for (Object o : points)
+		{
+			DoublePoint p = DoublePointCast.getDoublePoint(o);
+			if (p == null)
+			{
+				continue;
+			}
+			double[] c = p.getPoint();
+			if (dim < 0)
+			{
+				dim = c.length;
+			}
+			same_dim = same_dim && c.length == dim;
+			coords[n++] = c;
+		}
+		if (n < coords.length)
+		{
+			double[][] trimmed = new double[n][];
+			System.arraycopy(coords, 0, trimmed, 0, n);
+			coords = trimmed;
+		}
+		m_points = coords;
+		if (same_dim && dim > 0 && n > s_leafSize && isBoundedByCoordinates(measure))
+		{
+			m_axes = new int[n];
+			build(0, n, dim);
+		}
+		else
+		{
+			m_axes = null;
+		}
+	}
+
+	/**
+	 * Gets the number of points in the index
+	 * @return The number of points
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_points.length;
+	}
+
+	/**
+	 * Computes the distance between a point and its closest neighbor in the
+	 * index
+	 * @param point The coordinates of the point
+	 * @return The distance, or {@link Double#MAX_VALUE} if the index is
+	 * empty
+	 */
+	/*@ pure @*/ public double getDistanceToClosest(/*@ non_null @*/ double[] point)
+	{
+		if (m_axes == null)
+		{
+			return scan(0, m_points.length, point, Double.MAX_VALUE);
+		}
+		return search(0, m_points.length, point, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Determines if the distance between two points, according to a measure,
+	 * is never smaller than the difference between any of their coordinates
+	 * @param measure The distance measure
+	 * @return <tt>true</tt> if this is the case, <tt>false</tt> if it is not
+	 * or is not known
+	 */
+	/*@ pure @*/ protected static boolean isBoundedByCoordinates(/*@ non_null @*/ DistanceMeasure measure)
+	{
+		Class<?> c = measure.getClass();
+		return c == EuclideanDistance.class || c == ManhattanDistance.class
+				|| c == ChebyshevDistance.class;
+	}
+
+	/**
+	 * Arranges a range of points as a k-d tree
+	 * @param lo The first position of the range
+	 * @param hi The position after the last one of the range
+	 * @param dim The number of dimensions of the points
+	 */
+	protected void build(int lo, int hi, int dim)
+	{
+		while (hi - lo > s_leafSize)
+		{
+			// Split along the axis where the points are the most spread
+			int axis = 0;
+			double spread = -1;
+			for (int k = 0; k < dim; k++)
+			{
+				double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+				for (int i = lo; i < hi; i++)
+				{
+					double v = m_points[i][k];
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+				if (max - min > spread)
+				{
+					spread = max - min;
+					axis = k;
+				}
+			}
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi - 1, mid, axis);
+			m_axes[mid] = axis;
+			build(lo, mid, dim);
+			lo = mid + 1;
+		}
+	}
+
+	/**
+	 * Rearranges a range of points so that the point at a given position
+	 * is the one that would be there if the range were sorted along an
+	 * axis
+	 * @param lo The first position of the range
+	 * @param hi The last position of the range
+	 * @param k The position
+	 * @param axis The axis
+	 */
+	protected void select(int lo, int hi, int k, int axis)
+	{
+		while (hi > lo)
+		{
+			double pivot = m_points[(lo + hi) >>> 1][axis];
+			int i = lo, j = hi;
+			while (i <= j)
+			{
+				while (m_points[i][axis] < pivot)
+				{
+					i++;
+				}
+				while (m_points[j][axis] > pivot)
+				{
+					j--;
+				}
+				if (i <= j)
+				{
+					double[] t = m_points[i];
+					m_points[i] = m_points[j];
+					m_points[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+			{
+				hi = j;
+			}
+			else if (k >= i)
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Searches a range of the k-d tree for a point closer than a given
+	 * distance
+	 * @param lo The first position of the range
+	 * @param hi The position after the last one of the range
+	 * @param q The coordinates of the query point
+	 * @param best The smallest distance found so far
+	 * @return The smallest distance found
+	 */
+	protected double search(int lo, int hi, double[] q, double best)
+	{
+		while (hi - lo > s_leafSize)
+		{
+			int mid = (lo + hi) >>> 1;
+			double[] p = m_points[mid];
+			best = Math.min(best, m_measure.compute(p, q));
+			int axis = m_axes[mid];
+			double diff = q[axis] - p[axis];
+			// Search the side of the query point first
+			if (diff < 0)
+			{
+				best = search(lo, mid, q, best);
+				if (-diff >= best)
+				{
+					return best;
+				}
+				lo = mid + 1;
+			}
+			else
+			{
+				best = search(mid + 1, hi, q, best);
+				if (diff >= best)
+				{
+					return best;
+				}
+				hi = mid;
+			}
+		}
+		return scan(lo, hi, q, best);
+	}
+
+	/**
+	 * Compares a query point with each point in a range
+	 * @param lo The first position of the range
+	 * @param hi The position after the last one of the range
+	 * @param q The coordinates of the query point
+	 * @param best The smallest distance found so far
+	 * @return The smallest distance found
+	 */
+	protected double scan(int lo, int hi, double[] q, double best)
+	{
+		for (int i = lo; i < hi; i++)
+		{
+			best = Math.min(best, m_measure.compute(m_points[i], q));
+		}
+		return best;
+	}
+}
@@ -23,7 +23,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -39,6 +41,25 @@ import ca.uqac.lif.cep.tmf.SinkLast;
 /**
  * Mining function that uses BeepBeep processors to extract patterns from
  * traces.
+ * <p>
+ * Each thread evaluating the trace processor keeps its own copy of that
+ * processor, connected to a sink once and for all, and resets it before
+ * each new trace. Building a chain of processors often costs more than
+ * running it on a short trace, and this avoids doing it for each trace. A
+ * processor whose {@link Processor#reset() reset()} method throws an
+ * {@link UnsupportedOperationException} is instead duplicated for each trace,
+ * as is every processor if pooling is disabled with
+ * {@link #setPooling(boolean)}.
+ * <p>
+ * By default, the results computed for all the traces are gathered into a
+ * set, and then pushed to the combine processor; equal results are
+ * therefore passed only once. In streaming mode, enabled with
+ * {@link #setStreaming(boolean)}, each result is pushed to the combine
+ * processor as soon as it is computed, and equal results are all passed.
+ * With an executor service, at most a fixed number of traces are then
+ * submitted and not yet combined at any time, so that the memory used
+ * does not depend on the number of traces. In both modes, the order in
+ * which results are pushed is not specified.
  * @author Sylvain Hallé
  *
  * @param <T> The type of the events in the input sequences
@@ -68,9 +89,28 @@ public class ProcessorMiningFunction<T,U> extends SetMiningFunction<T,U>
   protected U m_defaultValue = null;
 
   /**
-   * An executor service to run multiple mining functions in parallel
+   * Whether to push the result for each trace to the combine processor
+   * as soon as it is computed
    */
-  protected ExecutorService m_service;
+  protected boolean m_streaming = false;
+
+  /**
+   * In streaming mode, the maximum number of traces being processed at
+   * the same time
+   */
+  protected int m_maxInFlight = 64;
+
+  /**
+   * Whether to reuse trace processors from one trace to the next
+   */
+  protected volatile boolean m_pooling = true;
+
+  /**
+   * The trace processor kept by each thread. The pooled processors do not
+   * refer to this function, so that a function that is no longer used
+   * does not stay reachable from the threads that ran it.
+   */
+  protected transient volatile ThreadLocal<PooledProcessor<T,U>> m_pool = new ThreadLocal<PooledProcessor<T,U>>();
 
   public ProcessorMiningFunction(Processor trace_processor, Processor combine_processor)
   {
@@ -83,10 +123,8 @@ public class ProcessorMiningFunction<T,U> extends SetMiningFunction<T,U>
     super((Class<U>) combine_processor.getOutputType(0).getClass());
     m_traceProcessor = trace_processor;
     m_combineProcessor = combine_processor;
-    m_service = null;
     m_collectedValues = new HashSet<U>();
     m_defaultValue = default_value;
-    m_service = null;
   }
 
   public void setDefaultValue(U value)
@@ -94,14 +132,113 @@ public class ProcessorMiningFunction<T,U> extends SetMiningFunction<T,U>
     m_defaultValue = value;
   }
 
-  public void setThreadManager(ExecutorService manager)
+  /**
+   * Sets the executor service used to run the trace processor on
+   * multiple traces in parallel
+   * @param manager The service, or <tt>null</tt> to process traces in the
+   * calling thread
+   * @return This function
+   */
+  @Override
+  public ProcessorMiningFunction<T,U> setThreadManager(ExecutorService manager)
   {
     m_service = manager;
+    clearPool();
+    return this;
+  }
+
+  /**
+   * Sets whether the function pushes the result computed for each trace
+   * to the combine processor as soon as it is available
+   * @param b Set to <tt>true</tt> to enable streaming, <tt>false</tt>
+   * to gather all the results first (default)
+   */
+  public void setStreaming(boolean b)
+  {
+    m_streaming = b;
+  }
+
+  /**
+   * Sets the maximum number of traces submitted to the executor service
+   * and not yet passed to the combine processor, in streaming mode
+   * @param n The number of traces (default 64). Values smaller than 1 are
+   * treated as 1.
+   */
+  public void setMaxInFlight(int n)
+  {
+    m_maxInFlight = Math.max(1, n);
+  }
+
+  /**
+   * Sets whether trace processors are reset and reused from one trace to
+   * the next
+   * @param b Set to <tt>true</tt> to reuse processors (default),
+   * <tt>false</tt> to use a new duplicate of the trace processor for each
+   * trace
+   */
+  public void setPooling(boolean b)
+  {
+    m_pooling = b;
+    if (!b)
+    {
+      clearPool();
+    }
+  }
+
+  /**
+   * Drops the trace processors kept by all threads. The processors pooled
+   * by threads other than the calling one cannot be removed directly;
+   * replacing the thread-local variable makes them unreachable from this
+   * function.
+   */
+  protected void clearPool()
+  {
+    m_pool = new ThreadLocal<PooledProcessor<T,U>>();
   }
 
   @SuppressWarnings("unchecked")
   @Override
   public Object mine(@SuppressWarnings("rawtypes") Set sequences) throws FunctionException
+  {
+    m_combineProcessor.reset();
+    SinkLast sink = new SinkLast();
+    try 
+    {
+      Connector.connect(m_combineProcessor, sink);
+    }
+    catch (ConnectorException e)
+    {
+      throw new FunctionException(e);
+    }
+    Pushable p = m_combineProcessor.getPushableInput();
+    if (m_streaming)
+    {
+      mineStreaming((Set<Sequence<T>>) sequences, p);
+    }
+    else
+    {
+      m_collectedValues.clear();
+      collect((Set<Sequence<T>>) sequences);
+      for (Object o : m_collectedValues)
+      {
+        p.push(o);
+      }
+      m_collectedValues.clear();
+    }
+    Object[] values = sink.getLast();
+    if (values != null)
+    {
+      return values[0];
+    }
+    return m_defaultValue;
+  }
+
+  /**
+   * Runs the trace processor on each sequence, and gathers the results
+   * into {@link #m_collectedValues}
+   * @param sequences The sequences
+   */
+  protected void collect(Set<Sequence<T>> sequences)
   {
     Iterator<Sequence<T>> it = sequences.iterator();
     List<Future<U>> futures = new ArrayList<Future<U>>();
@@ -141,27 +278,54 @@ public class ProcessorMiningFunction<T,U> extends SetMiningFunction<T,U>
         }
       }
     }
-    m_combineProcessor.reset();
-    SinkLast sink = new SinkLast();
-    try 
+  }
+
+  /**
+   * Runs the trace processor on each sequence, and pushes each result
+   * to the combine processor as soon as it is available
+   * @param sequences The sequences
+   * @param p The pushable of the combine processor
+   */
+  protected void mineStreaming(Set<Sequence<T>> sequences, Pushable p)
+  {
+    if (m_service == null)
     {
-      Connector.connect(m_combineProcessor, sink);
+      // Single-threaded execution
+      for (Sequence<T> seq : sequences)
+      {
+        p.push(new SequenceCallable(seq).call());
+      }
+      return;
     }
-    catch (ConnectorException e)
+    // Multi-threaded execution
+    CompletionService<U> completion = new ExecutorCompletionService<U>(m_service);
+    int in_flight = 0;
+    try
     {
-      throw new FunctionException(e);
+      for (Sequence<T> seq : sequences)
+      {
+        if (in_flight >= m_maxInFlight)
+        {
+          p.push(completion.take().get());
+          in_flight--;
+        }
+        completion.submit(new SequenceCallable(seq));
+        in_flight++;
+      }
+      while (in_flight > 0)
+      {
+        p.push(completion.take().get());
+        in_flight--;
+      }
     }
-    Pushable p = m_combineProcessor.getPushableInput();
-    for (Object o : m_collectedValues)
+    catch (InterruptedException e) 
     {
-      p.push(o);
+      throw new ProcessorException(e);
     }
-    Object[] values = sink.getLast();
-    if (values != null)
+    catch (ExecutionException e) 
     {
-      return values[0];
+      throw new ProcessorException(e);
     }
-    return m_defaultValue;
   }
 
   protected class SequenceCallable implements Callable<U>
@@ -177,17 +341,96 @@ public class ProcessorMiningFunction<T,U> extends SetMiningFunction<T,U>
     @Override
     public U call() throws ConnectorException 
     {
-      Processor proc = m_traceProcessor.duplicate();
-      SinkLast sink = new SinkLast();
-      Connector.connect(proc, sink);
-      Pushable p = proc.getPushableInput();
-      for (T event : m_sequence)
+      return getProcessor().process(m_sequence);
+    }
+  }
+
+  /**
+   * Gets a trace processor ready to process a new trace
+   * @return The processor
+   */
+  protected PooledProcessor<T,U> getProcessor()
+  {
+    if (!m_pooling)
+    {
+      return new PooledProcessor<T,U>(m_traceProcessor.duplicate());
+    }
+    ThreadLocal<PooledProcessor<T,U>> pool = m_pool;
+    PooledProcessor<T,U> pp = pool.get();
+    if (pp == null)
+    {
+      pp = new PooledProcessor<T,U>(m_traceProcessor.duplicate());
+      pool.set(pp);
+      return pp;
+    }
+    try
+    {
+      pp.reset();
+    }
+    catch (UnsupportedOperationException e)
+    {
+      // This processor cannot be reset: stop pooling
+      m_pooling = false;
+      pool.remove();
+      pp = new PooledProcessor<T,U>(m_traceProcessor.duplicate());
+    }
+    return pp;
+  }
+
+  /**
+   * A trace processor connected to a sink that receives its output
+   * @param <T> The type of the events of a trace
+   * @param <U> The type of the value computed on a trace
+   */
+  protected static class PooledProcessor<T,U>
+  {
+    /**
+     * The trace processor
+     */
+    protected final Processor m_processor;
+
+    /**
+     * The sink connected to the processor
+     */
+    protected final SinkLast m_sink;
+
+    /**
+     * The pushable used to give events to the processor
+     */
+    protected final Pushable m_pushable;
+
+    public PooledProcessor(Processor proc)
+    {
+      super();
+      m_processor = proc;
+      m_sink = new SinkLast();
+      Connector.connect(proc, m_sink);
+      m_pushable = proc.getPushableInput();
+    }
+
+    /**
+     * Resets the processor and the sink
+     */
+    public void reset()
+    {
+      m_processor.reset();
+      m_sink.reset();
+    }
+
+    /**
+     * Runs the processor on a trace
+     * @param sequence The trace
+     * @return The last value output by the processor
+     */
+    public U process(Sequence<T> sequence)
+    {
+      for (T event : sequence)
       {
-        p.push(event);
+        m_pushable.push(event);
       }
       @SuppressWarnings("unchecked")
-      U o = (U) sink.getLast()[0];
+      U o = (U) m_sink.getLast()[0];
       return o;
-    }		
+    }
   }
 }
@@ -63,10 +63,9 @@ public class ProcessorVectorFunction<T> extends VectorFunction<T>
 		{
 			return (DoublePoint) objs[0];
 		}
-		Number[] last = (Number[]) sink.getLast();
-		if (last.length > 0)
+		if (objs[0] instanceof Number)
 		{
-			return new DoublePoint(new double[]{last[0].doubleValue()});
+			return new DoublePoint(new double[]{((Number) objs[0]).doubleValue()});
 		}
 		return new DoublePoint(new double[]{}); 
 	}
@@ -30,6 +30,9 @@ import ca.uqac.lif.cep.tmf.Fork;
  * moments of the stream. It is represented graphically as follows:
  * <p>
  * <img src="{@docRoot}/doc-files/RunningMoments.png" alt="Processor">
+ * <p>
+ * {@link FusedRunningMoments} computes the same output in a single
+ * processor, and should be preferred when throughput matters.
  * 
  * @author Sylvain Hallé
  */
@@ -17,8 +17,15 @@
  */
 package ca.uqac.lif.cep.peg.ml;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import ca.uqac.lif.cep.functions.FunctionException;
 import ca.uqac.lif.cep.functions.UnaryFunction;
@@ -26,6 +33,17 @@ import ca.uqac.lif.cep.peg.Sequence;
 
 /**
  * Extracts a pattern from a set of sequences.
+ * <p>
+ * Mining functions whose result can be computed on parts of the set and
+ * then combined can do so with
+ * {@link #mapCombine(Set, ChunkMiner) mapCombine()}. The set is split into
+ * chunks of at most a fixed number of sequences; a partial result is
+ * computed for each chunk, and partial results are then combined in the
+ * order of the chunks. If an executor service is given with
+ * {@link #setThreadManager(ExecutorService)}, chunks are mined in parallel.
+ * There are typically more chunks than threads: threads that finish early
+ * take the next chunk waiting in the queue of the service, so that the load
+ * is balanced even if some chunks take longer than others.
  * @author Sylvain Hallé
  *
  * @param <T> The type of the events in the input sequences
@@ -34,22 +52,50 @@ import ca.uqac.lif.cep.peg.Sequence;
 @SuppressWarnings("rawtypes")
 public abstract class SetMiningFunction<T,U> extends UnaryFunction<Set,U>
 {
+	/**
+	 * An executor service to mine chunks of the set in parallel
+	 */
+	protected ExecutorService m_service = null;
+
+	/**
+	 * The maximum number of sequences in a chunk
+	 */
+	protected int m_chunkSize = 256;
+
 	public SetMiningFunction(Class<U> u)
 	{
 		super(Set.class, u);
 	}
 
+	/**
+	 * Sets the executor service used to mine chunks of the set in parallel
+	 * @param service The service, or <tt>null</tt> to mine in the calling
+	 * thread
+	 * @return This function
+	 */
+	public SetMiningFunction<T,U> setThreadManager(ExecutorService service)
+	{
+		m_service = service;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of sequences in a chunk of the set
+	 * @param size The number of sequences (default 256)
+	 * @return This function
+	 */
+	public SetMiningFunction<T,U> setChunkSize(int size)
+	{
+		m_chunkSize = Math.max(1, size);
+		return this;
+	}
+
+	@SuppressWarnings("unchecked")
 	@Override
 	public final U getValue(Set x) throws FunctionException
 	{
-		Set<Sequence<T>> sequences = new HashSet<Sequence<T>>();
-		for (Object o : x)
-		{
-			@SuppressWarnings("unchecked")
-			Sequence<T> seq = (Sequence<T>) o;
-			sequences.add(seq);
-		}
-		return mine(sequences);
+		// The set is not modified by mining: no need to copy it
+		return mine((Set<Sequence<T>>) x);
 	}
 	
 	/**
@@ -59,4 +105,203 @@ public abstract class SetMiningFunction<T,U> extends UnaryFunction<Set,U>
 	 * @throws FunctionException 
 	 */
 	public abstract U mine(Set<Sequence<T>> sequences) throws FunctionException;
+
+	/**
+	 * Mines a set of sequences by chunks, and combines the partial results
+	 * @param sequences The sequences
+	 * @param miner The object computing and combining partial results
+	 * @return The combination of the partial results of all chunks
+	 * @throws FunctionException If mining a chunk fails
+	 */
+	protected <A> A mapCombine(Set<Sequence<T>> sequences, final ChunkMiner<T,A> miner) throws FunctionException
+	{
+		SequenceView<T> all = new SequenceView<T>(sequences);
+		if (m_service == null || all.size() <= m_chunkSize)
+		{
+			return miner.map(all);
+		}
+		List<SequenceView<T>> chunks = new ArrayList<SequenceView<T>>();
+		all.splitInto(m_chunkSize, chunks);
+		List<Future<A>> futures = new ArrayList<Future<A>>(chunks.size());
+		for (final SequenceView<T> chunk : chunks)
+		{
+			futures.add(m_service.submit(new Callable<A>()
+			{
+				@Override
+				public A call()
+				{
+					return miner.map(chunk);
+				}
+			}));
+		}
+		A result = null;
+		boolean first = true;
+		try
+		{
+			for (Future<A> f : futures)
+			{
+				A a = f.get();
+				result = first ? a : miner.combine(result, a);
+				first = false;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new FunctionException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new FunctionException(e.getCause());
+		}
+		return result;
+	}
+
+	/**
+	 * Computes partial results on chunks of a set of sequences, and
+	 * combines them
+	 * @param <T> The type of the events in the sequences
+	 * @param <A> The type of the partial results
+	 */
+	public static interface ChunkMiner<T,A>
+	{
+		/**
+		 * Computes the partial result for a chunk. This method may be called
+		 * by multiple threads at the same time, on different chunks.
+		 * @param chunk The chunk
+		 * @return The partial result
+		 */
+		public A map(SequenceView<T> chunk);
+
+		/**
+		 * Combines two partial results. The operation must be associative:
+		 * it is called on the results of consecutive chunks, in the order
+		 * of the chunks. It is always called by a single thread, and may
+		 * modify and return one of its arguments.
+		 * @param x The result for the first chunks
+		 * @param y The result for the chunks that follow
+		 * @return The combined result
+		 */
+		public A combine(A x, A y);
+	}
+
+	/**
+	 * A read-only view over a range of sequences, which can be split into
+	 * smaller ranges
+	 * @param <T> The type of the events in the sequences
+	 */
+	public static class SequenceView<T> implements Iterable<Sequence<T>>
+	{
+		/**
+		 * The sequences
+		 */
+		/*@ non_null @*/ protected final Object[] m_sequences;
+
+		/**
+		 * The first position of the range
+		 */
+		protected final int m_from;
+
+		/**
+		 * The position after the last one of the range
+		 */
+		protected final int m_to;
+
+		/**
+		 * Creates a view over all the sequences of a set
+		 * @param sequences The sequences
+		 */
+		public SequenceView(/*@ non_null @*/ Set<Sequence<T>> sequences)
+		{
+			this(sequences.toArray(), 0, sequences.size());
+		}
+
+		protected SequenceView(/*@ non_null @*/ Object[] sequences, int from, int to)
+		{
+			super();
+			m_sequences = sequences;
+			m_from = from;
+			m_to = to;
+		}
+
+		/**
+		 * Gets the number of sequences in the view
+		 * @return The number of sequences
+		 */
+		/*@ pure @*/ public int size()
+		{
+			return m_to - m_from;
+		}
+
+		/**
+		 * Gets a sequence of the view
+		 * @param index The position of the sequence in the view
+		 * @return The sequence
+		 */
+		@SuppressWarnings("unchecked")
+		/*@ pure @*/ public Sequence<T> get(int index)
+		{
+			return (Sequence<T>) m_sequences[m_from + index];
+		}
+
+		/**
+		 * Splits the view in two halves
+		 * @return An array containing the two halves
+		 */
+		@SuppressWarnings("unchecked")
+		/*@ non_null @*/ public SequenceView<T>[] split()
+		{
+			int mid = (m_from + m_to) >>> 1;
+			return new SequenceView[] {new SequenceView<T>(m_sequences, m_from, mid),
+					new SequenceView<T>(m_sequences, mid, m_to)};
+		}
+
+		/**
+		 * Splits the view into consecutive views of at most a given size
+		 * @param max_size The maximum size
+		 * @param chunks The list where the views are added, in order
+		 */
+		public void splitInto(int max_size, /*@ non_null @*/ List<SequenceView<T>> chunks)
+		{
+			if (size() <= max_size)
+			{
+				chunks.add(this);
+				return;
+			}
+			SequenceView<T>[] halves = split();
+			halves[0].splitInto(max_size, chunks);
+			halves[1].splitInto(max_size, chunks);
+		}
+
+		@Override
+		public Iterator<Sequence<T>> iterator()
+		{
+			return new Iterator<Sequence<T>>()
+			{
+				protected int m_position = m_from;
+
+				@Override
+				public boolean hasNext()
+				{
+					return m_position < m_to;
+				}
+
+				@SuppressWarnings("unchecked")
+				@Override
+				public Sequence<T> next()
+				{
+					if (m_position >= m_to)
+					{
+						throw new NoSuchElementException();
+					}
+					return (Sequence<T>) m_sequences[m_position++];
+				}
+
+				@Override
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
 }
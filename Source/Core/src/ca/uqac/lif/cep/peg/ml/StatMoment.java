@@ -17,15 +17,20 @@
  */
 package ca.uqac.lif.cep.peg.ml;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.peg.Checkpointable;
 
 /**
  * Computes the running statistical moment of order <i>n</i> on a
  * stream of numbers.
  * @author Sylvain Hallé
  */
-public class StatMoment extends UniformProcessor
+public class StatMoment extends UniformProcessor implements Checkpointable
 {
 	protected int m_order;
 	
@@ -55,15 +60,56 @@ public class StatMoment extends UniformProcessor
 	{
 		Number n = (Number) inputs[0];
 		m_numEvents++;
-		m_sum += Math.pow(n.doubleValue(), m_order);
+		m_sum += power(n.doubleValue());
 		outputs[0] = m_sum / m_numEvents;
 		return true;
 	}
 
+	/**
+	 * Raises a number to the order of this moment. Repeated multiplication
+	 * is used rather than {@link Math#pow(double, double)}, which is much
+	 * slower for small integer exponents.
+	 * @param x The number
+	 * @return The number raised to the power <i>n</i>
+	 */
+	protected double power(double x)
+	{
+		if (m_order < 0)
+		{
+			return Math.pow(x, m_order);
+		}
+		double p = 1;
+		for (int i = 0; i < m_order; i++)
+		{
+			p *= x;
+		}
+		return p;
+	}
+
 	@Override
 	public StatMoment duplicate(boolean with_state)
 	{
-		return new StatMoment(m_order);
+		StatMoment sm = new StatMoment(m_order);
+		if (with_state)
+		{
+			sm.m_sum = m_sum;
+			sm.m_numEvents = m_numEvents;
+		}
+		return sm;
+	}
+
+	@Override
+	public void checkpoint(ObjectOutput out) throws IOException
+	{
+		out.writeDouble(m_sum);
+		out.writeDouble(m_numEvents);
+	}
+
+	@Override
+	public void restore(ObjectInput in) throws IOException
+	{
+		m_sum = in.readDouble();
+		m_numEvents = in.readDouble();
 	}
 	
 }
@@ -0,0 +1,300 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.math3.ml.clustering.CentroidCluster;
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.UniformProcessor;
+
+/**
+ * Processor that computes the centroids of <i>k</i> clusters over a stream
+ * of points, using the sequential version of the
+ * <a href="https://en.wikipedia.org/wiki/K-means_clustering"><i>K</i>-means</a>
+ * algorithm. Each input event is cast into a {@link DoublePoint} using
+ * {@link DoublePointCast#getDoublePoint(Object)}; events that cannot be
+ * cast are ignored. For each input event, the processor outputs a set of
+ * {@link DoublePoint}s representing the current centroids, like
+ * {@link KMeansFunction} does for a collection of points.
+ * <p>
+ * The first <i>k</i> distinct points become the initial centroids. Each
+ * subsequent point is then assigned to its closest centroid (according to
+ * Euclidean distance), and this centroid is moved towards the point by a
+ * fraction 1/<i>w</i> of their difference, where <i>w</i> is the number of
+ * points assigned to the centroid so far. Handling a point therefore takes
+ * O(<i>kd</i>) for <i>d</i>-dimensional points, instead of clustering all
+ * the points again.
+ * <p>
+ * Two options make the centroids follow a stream whose distribution
+ * changes over time:
+ * <ul>
+ * <li>With {@link #setDecay(double)}, the weight of past points is
+ * multiplied by a factor smaller than 1 on each new event, so that
+ * centroids give more importance to recent points</li>
+ * <li>With {@link #setReseedInterval(int)}, the processor keeps the last
+ * <i>n</i> points and, every <i>n</i> events, replaces the centroids by those
+ * computed on these points by a <i>K</i>-means++ clusterer. This moves
+ * centroids that have been stranded far from any point.</li>
+ * </ul>
+ * 
+ * @author Sylvain Hallé
+ */
+public class StreamingKMeans extends UniformProcessor
+{
+	/**
+	 * The number of clusters to compute
+	 */
+	protected int m_k;
+
+	/**
+	 * The coordinates of the centroids
+	 */
+	protected double[][] m_centroids;
+
+	/**
+	 * The weight of the points assigned to each centroid
+	 */
+	protected double[] m_weights;
+
+	/**
+	 * The number of centroids created so far
+	 */
+	protected int m_numCentroids;
+
+	/**
+	 * The factor by which the weight of past points is multiplied on each
+	 * new point
+	 */
+	protected double m_decay = 1;
+
+	/**
+	 * The number of events between each reseeding, or 0 to never reseed
+	 */
+	protected int m_reseedInterval = 0;
+
+	/**
+	 * The last points received, used for reseeding
+	 */
+	protected double[][] m_recent;
+
+	/**
+	 * The number of points received since the last reseeding
+	 */
+	protected int m_sinceReseed;
+
+	/**
+	 * Creates a new streaming <i>K</i>-means processor.
+	 * @param k The value of <i>K</i>, i.e. the numbers of clusters
+	 */
+	public StreamingKMeans(int k)
+	{
+		super(1, 1);
+		m_k = k;
+		m_centroids = new double[k][];
+		m_weights = new double[k];
+		m_numCentroids = 0;
+		m_sinceReseed = 0;
+	}
+
+	/**
+	 * Sets the factor by which the weight of past points is multiplied on
+	 * each new point
+	 * @param decay The factor, between 0 (exclusive) and 1 (inclusive).
+	 * The default is 1, where all points have the same weight.
+	 * @return This processor
+	 */
+	public StreamingKMeans setDecay(double decay)
+	{
+		m_decay = decay;
+		return this;
+	}
+
+	/**
+	 * Sets the number of events between each reseeding of the centroids
+	 * @param n The number of events. The value 0 (default) disables
+	 * reseeding.
+	 * @return This processor
+	 */
+	public StreamingKMeans setReseedInterval(int n)
+	{
+		m_reseedInterval = n;
+		m_recent = n > 0 ? new double[n][] : null;
+		m_sinceReseed = 0;
+		return this;
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Object[] outputs)
+			throws ProcessorException
+	{
+		DoublePoint dp = DoublePointCast.getDoublePoint(inputs[0]);
+		if (dp != null)
+		{
+			double[] x = dp.getPoint();
+			if (m_numCentroids > 0 && x.length != m_centroids[0].length)
+			{
+				throw new ProcessorException("Point has " + x.length + " dimensions, expected " + m_centroids[0].length);
+			}
+			update(x);
+			if (m_recent != null)
+			{
+				// The array of the point may be reused by its sender
+				m_recent[m_sinceReseed++] = x.clone();
+				if (m_sinceReseed == m_reseedInterval)
+				{
+					reseed();
+					m_sinceReseed = 0;
+				}
+			}
+		}
+		outputs[0] = getCenters();
+		return true;
+	}
+
+	/**
+	 * Updates the centroids with a new point
+	 * @param x The coordinates of the point
+	 */
+	protected void update(double[] x)
+	{
+		if (m_decay != 1)
+		{
+			for (int i = 0; i < m_numCentroids; i++)
+			{
+				m_weights[i] *= m_decay;
+			}
+		}
+		int closest = -1;
+		double min_dist = Double.MAX_VALUE;
+		for (int i = 0; i < m_numCentroids; i++)
+		{
+			double[] c = m_centroids[i];
+			double dist = 0;
+			for (int j = 0; j < x.length; j++)
+			{
+				double d = x[j] - c[j];
+				dist += d * d;
+			}
+			if (dist < min_dist)
+			{
+				min_dist = dist;
+				closest = i;
+			}
+		}
+		if (m_numCentroids < m_k && min_dist > 0)
+		{
+			// Not enough centroids yet: the point becomes one
+			m_centroids[m_numCentroids] = x.clone();
+			m_weights[m_numCentroids] = 1;
+			m_numCentroids++;
+			return;
+		}
+		double w = m_weights[closest] + 1;
+		m_weights[closest] = w;
+		double[] c = m_centroids[closest];
+		for (int j = 0; j < x.length; j++)
+		{
+			c[j] += (x[j] - c[j]) / w;
+		}
+	}
+
+	/**
+	 * Replaces the centroids by those computed by a <i>K</i>-means++
+	 * clusterer on the last points received
+	 */
+	protected void reseed()
+	{
+		List<DoublePoint> points = new ArrayList<DoublePoint>(m_reseedInterval);
+		for (int i = 0; i < m_reseedInterval; i++)
+		{
+			points.add(new DoublePoint(m_recent[i]));
+		}
+		if (points.size() < m_k)
+		{
+			return;
+		}
+		KMeansPlusPlusClusterer<DoublePoint> clusterer = new KMeansPlusPlusClusterer<DoublePoint>(m_k);
+		List<CentroidCluster<DoublePoint>> clusters = clusterer.cluster(points);
+		m_numCentroids = 0;
+		for (CentroidCluster<DoublePoint> cluster : clusters)
+		{
+			m_centroids[m_numCentroids] = cluster.getCenter().getPoint().clone();
+			m_weights[m_numCentroids] = cluster.getPoints().size();
+			m_numCentroids++;
+		}
+	}
+
+	/**
+	 * Gets the current centroids
+	 * @return A set of new points with the coordinates of the centroids
+	 */
+	public Set<DoublePoint> getCenters()
+	{
+		Set<DoublePoint> centers = new HashSet<DoublePoint>();
+		for (int i = 0; i < m_numCentroids; i++)
+		{
+			// DoublePoint does not copy its array
+			centers.add(new DoublePoint(m_centroids[i].clone()));
+		}
+		return centers;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		for (int i = 0; i < m_k; i++)
+		{
+			m_centroids[i] = null;
+			m_weights[i] = 0;
+		}
+		m_numCentroids = 0;
+		m_sinceReseed = 0;
+	}
+
+	@Override
+	public StreamingKMeans duplicate(boolean with_state)
+	{
+		StreamingKMeans skm = new StreamingKMeans(m_k);
+		skm.setDecay(m_decay);
+		skm.setReseedInterval(m_reseedInterval);
+		if (with_state)
+		{
+			for (int i = 0; i < m_numCentroids; i++)
+			{
+				skm.m_centroids[i] = m_centroids[i].clone();
+				skm.m_weights[i] = m_weights[i];
+			}
+			skm.m_numCentroids = m_numCentroids;
+			for (int i = 0; i < m_sinceReseed; i++)
+			{
+				// Stored points are never modified, and can be shared
+				skm.m_recent[i] = m_recent[i];
+			}
+			skm.m_sinceReseed = m_sinceReseed;
+		}
+		return skm;
+	}
+}
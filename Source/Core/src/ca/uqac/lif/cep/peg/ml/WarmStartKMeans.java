@@ -0,0 +1,424 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.ml.clustering.CentroidCluster;
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
+
+import ca.uqac.lif.cep.functions.FunctionException;
+
+/**
+ * Computes the <i>K</i>-means clustering of a set of points, starting from
+ * the centroids found on the previous call. When the set of points changes
+ * only slightly from one call to the next, as is the case when clustering
+ * successive windows of a stream, these centroids are already close to the
+ * new ones, and the algorithm converges in a few iterations. The first
+ * call, or any call where warm starts are disabled, starts from centroids
+ * chosen by the <i>K</i>-means++ seeding procedure, like {@link KMeans}.
+ * <p>
+ * The iterations of the algorithm follow Lloyd's method: each point is
+ * assigned to its closest centroid, and each centroid is then moved to the
+ * mean of its points, until no point changes cluster. If an executor service
+ * is given with {@link #setThreadManager(ExecutorService)}, the assignment
+ * step is split into blocks of points processed in parallel. A cluster that
+ * receives no point keeps its previous centroid.
+ * 
+ * @author Sylvain Hallé
+ */
+public class WarmStartKMeans extends ClusteringFunction
+{
+	/**
+	 * Below this number of points per block, the assignment step is not
+	 * split further
+	 */
+	protected static final int s_minBlockSize = 1024;
+
+	/**
+	 * The number of clusters to compute
+	 */
+	protected int m_k;
+
+	/**
+	 * The maximum number of iterations of the algorithm
+	 */
+	protected int m_maxIterations = 100;
+
+	/**
+	 * Whether to start from the centroids of the previous call
+	 */
+	protected boolean m_warmStart = true;
+
+	/**
+	 * The centroids found on the previous call, or <tt>null</tt>
+	 */
+	protected double[][] m_centroids = null;
+
+	/**
+	 * The number of blocks into which the assignment step is split when
+	 * run in parallel
+	 */
+	protected int m_numBlocks = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The number of iterations run on the last call
+	 */
+	protected int m_lastIterations = 0;
+
+	/**
+	 * Creates a new instance of the function.
+	 * @param k The value of <i>K</i>, i.e. the numbers of clusters in the
+	 * resulting set
+	 */
+	public WarmStartKMeans(int k)
+	{
+		super();
+		m_k = k;
+	}
+
+	/**
+	 * Sets whether each call starts from the centroids found on the
+	 * previous one
+	 * @param b Set to <tt>true</tt> to start from previous centroids
+	 * (default), <tt>false</tt> to always start from new seeds
+	 * @return This function
+	 */
+	public WarmStartKMeans setWarmStart(boolean b)
+	{
+		m_warmStart = b;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of iterations of the algorithm
+	 * @param n The number of iterations (default 100)
+	 * @return This function
+	 */
+	public WarmStartKMeans setMaxIterations(int n)
+	{
+		m_maxIterations = n;
+		return this;
+	}
+
+	/**
+	 * Sets the executor service used to extract the points from the
+	 * sequences and to run the assignment step in parallel
+	 * @param service The service, or <tt>null</tt> to run the algorithm in
+	 * the calling thread
+	 * @return This function
+	 */
+	@Override
+	public WarmStartKMeans setThreadManager(ExecutorService service)
+	{
+		m_service = service;
+		return this;
+	}
+
+	/**
+	 * Sets the number of blocks into which the assignment step is split
+	 * when run in parallel
+	 * @param n The number of blocks (default: the number of available
+	 * processors)
+	 * @return This function
+	 */
+	public WarmStartKMeans setNumBlocks(int n)
+	{
+		m_numBlocks = n;
+		return this;
+	}
+
+	/**
+	 * Gets the number of iterations run on the last call to the function
+	 * @return The number of iterations
+	 */
+	public int getLastIterations()
+	{
+		return m_lastIterations;
+	}
+
+	@Override
+	protected Set<DoublePoint> computeClustering(Set<DoublePoint> points)
+	{
+		double[][] coords = new double[points.size()][];
+		int n = 0;
+		for (DoublePoint dp : points)
+		{
+			coords[n++] = dp.getPoint();
+		}
+		double[][] centroids = m_centroids;
+		if (!m_warmStart || centroids == null || n == 0 || centroids[0].length != coords[0].length)
+		{
+			centroids = seed(points);
+		}
+		m_lastIterations = 0;
+		int[] assignment = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			assignment[i] = -1;
+		}
+		while (m_lastIterations < m_maxIterations)
+		{
+			m_lastIterations++;
+			Partial total = assign(coords, centroids, assignment);
+			for (int j = 0; j < centroids.length; j++)
+			{
+				if (total.m_counts[j] > 0)
+				{
+					double[] c = centroids[j];
+					double[] s = total.m_sums[j];
+					for (int t = 0; t < c.length; t++)
+					{
+						c[t] = s[t] / total.m_counts[j];
+					}
+				}
+			}
+			if (total.m_changed == 0)
+			{
+				break;
+			}
+		}
+		m_centroids = centroids;
+		Set<DoublePoint> centers = new HashSet<DoublePoint>();
+		for (double[] c : centroids)
+		{
+			// DoublePoint does not copy its array
+			centers.add(new DoublePoint(c.clone()));
+		}
+		return centers;
+	}
+
+	/**
+	 * Chooses initial centroids with the <i>K</i>-means++ seeding procedure
+	 * @param points The points
+	 * @return The centroids
+	 */
+	protected double[][] seed(Set<DoublePoint> points)
+	{
+		// With no iteration, the clusterer only computes the seeds
+		KMeansPlusPlusClusterer<DoublePoint> clusterer = new KMeansPlusPlusClusterer<DoublePoint>(m_k, 0);
+		List<CentroidCluster<DoublePoint>> clusters = clusterer.cluster(points);
+		double[][] centroids = new double[clusters.size()][];
+		for (int j = 0; j < centroids.length; j++)
+		{
+			centroids[j] = clusters.get(j).getCenter().getPoint().clone();
+		}
+		return centroids;
+	}
+
+	/**
+	 * Assigns each point to its closest centroid
+	 * @param coords The coordinates of the points
+	 * @param centroids The coordinates of the centroids
+	 * @param assignment The index of the centroid each point is assigned
+	 * to; this array is updated by the method
+	 * @return The sum of the points assigned to each centroid
+	 */
+	protected Partial assign(double[][] coords, double[][] centroids, int[] assignment)
+	{
+		int n = coords.length;
+		int blocks = Math.min(m_numBlocks, n / s_minBlockSize);
+		if (m_service == null || blocks < 2)
+		{
+			return new AssignmentBlock(coords, centroids, assignment, 0, n).call();
+		}
+		List<Future<Partial>> futures = new ArrayList<Future<Partial>>(blocks);
+		for (int b = 0; b < blocks; b++)
+		{
+			int from = (int) ((long) n * b / blocks);
+			int to = (int) ((long) n * (b + 1) / blocks);
+			futures.add(m_service.submit(new AssignmentBlock(coords, centroids, assignment, from, to)));
+		}
+		Partial total = null;
+		for (Future<Partial> f : futures)
+		{
+			try
+			{
+				Partial p = f.get();
+				if (total == null)
+				{
+					total = p;
+				}
+				else
+				{
+					total.add(p);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				throw new FunctionException(e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new FunctionException(e);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_centroids = null;
+		m_lastIterations = 0;
+	}
+
+	@Override
+	public WarmStartKMeans duplicate(boolean with_state)
+	{
+		WarmStartKMeans wkm = new WarmStartKMeans(m_k);
+		wkm.m_maxIterations = m_maxIterations;
+		wkm.m_warmStart = m_warmStart;
+		wkm.m_service = m_service;
+		wkm.m_chunkSize = m_chunkSize;
+		wkm.m_numBlocks = m_numBlocks;
+		if (with_state && m_centroids != null)
+		{
+			wkm.m_centroids = new double[m_centroids.length][];
+			for (int j = 0; j < m_centroids.length; j++)
+			{
+				wkm.m_centroids[j] = m_centroids[j].clone();
+			}
+		}
+		return wkm;
+	}
+
+	/**
+	 * The sums and counts of the points assigned to each centroid, for
+	 * some of the points
+	 */
+	protected static class Partial
+	{
+		/**
+		 * The sum of the coordinates of the points assigned to each centroid
+		 */
+		protected final double[][] m_sums;
+
+		/**
+		 * The number of points assigned to each centroid
+		 */
+		protected final int[] m_counts;
+
+		/**
+		 * The number of points whose centroid has changed
+		 */
+		protected int m_changed;
+
+		public Partial(int k, int dim)
+		{
+			super();
+			m_sums = new double[k][dim];
+			m_counts = new int[k];
+			m_changed = 0;
+		}
+
+		/**
+		 * Adds the sums and counts of another partial result to this one
+		 * @param p The other partial result
+		 */
+		public void add(Partial p)
+		{
+			for (int j = 0; j < m_counts.length; j++)
+			{
+				m_counts[j] += p.m_counts[j];
+				double[] s = m_sums[j], ps = p.m_sums[j];
+				for (int t = 0; t < s.length; t++)
+				{
+					s[t] += ps[t];
+				}
+			}
+			m_changed += p.m_changed;
+		}
+	}
+
+	/**
+	 * Assigns the points of a block to their closest centroid
+	 */
+	protected static class AssignmentBlock implements Callable<Partial>
+	{
+		protected final double[][] m_coords;
+
+		protected final double[][] m_centroids;
+
+		protected final int[] m_assignment;
+
+		protected final int m_from;
+
+		protected final int m_to;
+
+		public AssignmentBlock(double[][] coords, double[][] centroids, int[] assignment, int from, int to)
+		{
+			super();
+			m_coords = coords;
+			m_centroids = centroids;
+			m_assignment = assignment;
+			m_from = from;
+			m_to = to;
+		}
+
+		@Override
+		public Partial call()
+		{
+			int k = m_centroids.length;
+			int dim = m_centroids[0].length;
+			Partial p = new Partial(k, dim);
+			for (int i = m_from; i < m_to; i++)
+			{
+				double[] x = m_coords[i];
+				int closest = 0;
+				double min_dist = Double.MAX_VALUE;
+				for (int j = 0; j < k; j++)
+				{
+					double[] c = m_centroids[j];
+					double dist = 0;
+					for (int t = 0; t < dim; t++)
+					{
+						double d = x[t] - c[t];
+						dist += d * d;
+					}
+					if (dist < min_dist)
+					{
+						min_dist = dist;
+						closest = j;
+					}
+				}
+				if (m_assignment[i] != closest)
+				{
+					m_assignment[i] = closest;
+					p.m_changed++;
+				}
+				p.m_counts[closest]++;
+				double[] s = p.m_sums[closest];
+				for (int t = 0; t < dim; t++)
+				{
+					s[t] += x[t];
+				}
+			}
+			return p;
+		}
+	}
+}
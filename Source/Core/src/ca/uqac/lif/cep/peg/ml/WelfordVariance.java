@@ -0,0 +1,278 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.peg.Checkpointable;
+
+/**
+ * Processor computing the running variance of a stream of numbers in a
+ * single pass, using Welford's algorithm. Contrary to
+ * {@link RunningVariance}, which computes E[X<sup>2</sup>] - E[X]<sup>2</sup>,
+ * this processor does not suffer from catastrophic cancellation when the
+ * input numbers are large compared to their spread.
+ * <p>
+ * The processor can either output the variance as a number, or a
+ * two-dimensional {@code DoublePoint} containing the running average and
+ * the running variance of the stream, like {@link MeanAndVariance}.
+ * <p>
+ * The statistics computed so far are kept in a {@link State} object, which
+ * can be merged with the state of another processor. This makes it possible
+ * to compute partial aggregates on different parts of a stream (for example
+ * in different threads) and to combine them afterwards.
+ * 
+ * @author Sylvain Hallé
+ */
+public class WelfordVariance extends UniformProcessor implements Checkpointable
+{
+	/**
+	 * The statistics computed on the events received so far
+	 */
+	protected State m_state;
+
+	/**
+	 * Whether to output the running average along with the variance
+	 */
+	protected boolean m_withMean;
+
+	/**
+	 * Creates a new processor that outputs the running variance
+	 */
+	public WelfordVariance()
+	{
+		this(false);
+	}
+
+	/**
+	 * Creates a new processor
+	 * @param with_mean Set to {@code true} to output a {@code DoublePoint}
+	 * containing the running average and variance, {@code false} to output
+	 * only the variance
+	 */
+	public WelfordVariance(boolean with_mean)
+	{
+		super(1, 1);
+		m_withMean = with_mean;
+		m_state = new State();
+	}
+
+	@Override
+	protected boolean compute(Object[] inputs, Object[] outputs)
+			throws ProcessorException
+	{
+		m_state.add(((Number) inputs[0]).doubleValue());
+		if (m_withMean)
+		{
+			outputs[0] = new DoublePoint(new double[] {m_state.getMean(), m_state.getVariance()});
+		}
+		else
+		{
+			outputs[0] = m_state.getVariance();
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the statistics computed on the events received so far
+	 * @return The state. This is the object used internally by the processor,
+	 * and not a copy.
+	 */
+	/*@ pure non_null @*/ public State getState()
+	{
+		return m_state;
+	}
+
+	/**
+	 * Merges the statistics computed by another processor into those of
+	 * this processor. The next output of this processor will be the
+	 * variance of the events received by both processors.
+	 * @param s The state to merge
+	 */
+	public void merge(/*@ non_null @*/ State s)
+	{
+		m_state.merge(s);
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+		m_state.reset();
+	}
+
+	@Override
+	public WelfordVariance duplicate(boolean with_state)
+	{
+		WelfordVariance wv = new WelfordVariance(m_withMean);
+		if (with_state)
+		{
+			wv.m_state = m_state.duplicate();
+		}
+		return wv;
+	}
+
+	@Override
+	public void checkpoint(ObjectOutput out) throws IOException
+	{
+		out.writeLong(m_state.m_count);
+		out.writeDouble(m_state.m_mean);
+		out.writeDouble(m_state.m_m2);
+	}
+
+	@Override
+	public void restore(ObjectInput in) throws IOException
+	{
+		m_state.m_count = in.readLong();
+		m_state.m_mean = in.readDouble();
+		m_state.m_m2 = in.readDouble();
+	}
+
+	/**
+	 * The count, mean and sum of squared deviations of a set of numbers.
+	 * Two states can be merged using the pairwise update formula of Chan
+	 * et al.
+	 */
+	public static class State
+	{
+		/**
+		 * The number of values added
+		 */
+		protected long m_count = 0;
+
+		/**
+		 * The average of the values added
+		 */
+		protected double m_mean = 0;
+
+		/**
+		 * The sum of the squared deviations from the mean
+		 */
+		protected double m_m2 = 0;
+
+		/**
+		 * Adds a value to the state
+		 * @param x The value
+		 */
+		public void add(double x)
+		{
+			m_count++;
+			double delta = x - m_mean;
+			m_mean += delta / m_count;
+			m_m2 += delta * (x - m_mean);
+		}
+
+		/**
+		 * Merges another state into this one. After the call, this state
+		 * contains the statistics of the union of the values of both states.
+		 * @param s The other state
+		 */
+		public void merge(/*@ non_null @*/ State s)
+		{
+			if (s.m_count == 0)
+			{
+				return;
+			}
+			if (m_count == 0)
+			{
+				m_count = s.m_count;
+				m_mean = s.m_mean;
+				m_m2 = s.m_m2;
+				return;
+			}
+			long count = m_count + s.m_count;
+			double delta = s.m_mean - m_mean;
+			m_mean += delta * s.m_count / count;
+			m_m2 += s.m_m2 + delta * delta * ((double) m_count * s.m_count / count);
+			m_count = count;
+		}
+
+		/**
+		 * Gets the number of values added to this state
+		 * @return The number of values
+		 */
+		/*@ pure @*/ public long getCount()
+		{
+			return m_count;
+		}
+
+		/**
+		 * Gets the average of the values added to this state
+		 * @return The average, or 0 if no value was added
+		 */
+		/*@ pure @*/ public double getMean()
+		{
+			return m_mean;
+		}
+
+		/**
+		 * Gets the (population) variance of the values added to this state
+		 * @return The variance, or 0 if no value was added
+		 */
+		/*@ pure @*/ public double getVariance()
+		{
+			if (m_count == 0)
+			{
+				return 0;
+			}
+			return m_m2 / m_count;
+		}
+
+		/**
+		 * Gets the sample variance of the values added to this state
+		 * @return The variance, or 0 if less than two values were added
+		 */
+		/*@ pure @*/ public double getSampleVariance()
+		{
+			if (m_count < 2)
+			{
+				return 0;
+			}
+			return m_m2 / (m_count - 1);
+		}
+
+		/**
+		 * Resets the state to its initial value
+		 */
+		public void reset()
+		{
+			m_count = 0;
+			m_mean = 0;
+			m_m2 = 0;
+		}
+
+		/**
+		 * Creates a copy of this state
+		 * @return The copy
+		 */
+		/*@ non_null @*/ public State duplicate()
+		{
+			State s = new State();
+			s.m_count = m_count;
+			s.m_mean = m_mean;
+			s.m_m2 = m_m2;
+			return s;
+		}
+	}
+}
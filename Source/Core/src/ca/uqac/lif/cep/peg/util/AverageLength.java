@@ -20,6 +20,7 @@ package ca.uqac.lif.cep.peg.util;
 import ca.uqac.lif.cep.peg.Sequence;
 import ca.uqac.lif.cep.peg.ml.SetMiningFunction;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Mining function that computes the average length of a set of
@@ -34,24 +35,64 @@ public class AverageLength extends SetMiningFunction<Object,Number>
 		super(Number.class);
 	}
 
+	/**
+	 * Computes the number of sequences and the sum of their lengths in each
+	 * chunk
+	 */
+	protected static final Sums s_sums = new Sums();
+
 	@Override
 	public Number mine(Set<Sequence<Object>> sequences)
 	{
-		float count = 0;
-		float total = 0;
-		for (Sequence<Object> seq : sequences)
-		{
-			count++;
-			total += seq.size();
-		}
-		if (count == 0)
+		double[] sums = mapCombine(sequences, s_sums);
+		if (sums[0] == 0)
 			return 0;
-		return total / count;
+		return (float) (sums[1] / sums[0]);
 	}
-	
+
+	/**
+	 * Creates an instance of this function that mines chunks of the set of
+	 * sequences in parallel
+	 * @param service The executor service used to mine chunks
+	 * @return The new function
+	 */
+	public static AverageLength parallel(ExecutorService service)
+	{
+		AverageLength f = new AverageLength();
+		f.setThreadManager(service);
+		return f;
+	}
+
 	@Override
 	public AverageLength clone()
 	{
 		return this;
 	}
+
+	/**
+	 * Computes the number of sequences and the sum of their lengths for a
+	 * chunk of sequences
+	 */
+	protected static class Sums implements ChunkMiner<Object,double[]>
+	{
+		@Override
+		public double[] map(SequenceView<Object> chunk)
+		{
+			double[] sums = new double[2];
+			for (Sequence<Object> seq : chunk)
+			{
+				sums[0]++;
+				sums[1] += seq.size();
+			}
+			return sums;
+		}
+
+		@Override
+		public double[] combine(double[] x, double[] y)
+		{
+			x[0] += y[0];
+			x[1] += y[1];
+			return x;
+		}
+	}
 }
@@ -17,9 +17,11 @@
  */
 package ca.uqac.lif.cep.peg.util;
 
+import ca.uqac.lif.cep.peg.NumericSequence;
 import ca.uqac.lif.cep.peg.Sequence;
 import ca.uqac.lif.cep.peg.ml.SetMiningFunction;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Mining function that computes the average of values in a set of
@@ -34,27 +36,77 @@ public class AverageValues extends SetMiningFunction<Number,Number>
 		super(Number.class);
 	}
 
+	/**
+	 * Computes the number of values and their sum in each chunk
+	 */
+	protected static final Sums s_sums = new Sums();
+
 	@Override
 	public Number mine(Set<Sequence<Number>> sequences)
 	{
-		float count = 0;
-		float total = 0;
-		for (Sequence<Number> seq : sequences)
-		{
-			for (Number n : seq)
-			{
-				count++;
-				total += n.floatValue();	
-			}
-		}
-		if (count == 0)
+		double[] sums = mapCombine(sequences, s_sums);
+		if (sums[0] == 0)
 			return 0;
-		return total / count;
+		return (float) (sums[1] / sums[0]);
 	}
-	
+
+	/**
+	 * Creates an instance of this function that mines chunks of the set of
+	 * sequences in parallel
+	 * @param service The executor service used to mine chunks
+	 * @return The new function
+	 */
+	public static AverageValues parallel(ExecutorService service)
+	{
+		AverageValues f = new AverageValues();
+		f.setThreadManager(service);
+		return f;
+	}
+
 	@Override
 	public AverageValues clone()
 	{
 		return this;
 	}
+
+	/**
+	 * Computes the number of values and their sum for a chunk of sequences
+	 */
+	protected static class Sums implements ChunkMiner<Number,double[]>
+	{
+		@Override
+		public double[] map(SequenceView<Number> chunk)
+		{
+			double[] sums = new double[2];
+			for (Sequence<Number> seq : chunk)
+			{
+				if (seq instanceof NumericSequence)
+				{
+					// Read the values without boxing them
+					NumericSequence n_seq = (NumericSequence) seq;
+					int size = n_seq.size();
+					for (int i = 0; i < size; i++)
+					{
+						sums[1] += n_seq.getDouble(i);
+					}
+					sums[0] += size;
+					continue;
+				}
+				for (Number n : seq)
+				{
+					sums[0]++;
+					sums[1] += n.doubleValue();
+				}
+			}
+			return sums;
+		}
+
+		@Override
+		public double[] combine(double[] x, double[] y)
+		{
+			x[0] += y[0];
+			x[1] += y[1];
+			return x;
+		}
+	}
 }
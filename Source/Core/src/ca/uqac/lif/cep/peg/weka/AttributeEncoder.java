@@ -0,0 +1,278 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.weka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Converts arrays of values into the numbers Weka uses to represent them in
+ * an {@link Instance}. The encoder is built once from a list of attributes;
+ * it records the type of each attribute and builds a dictionary of the
+ * values of each nominal attribute, so that encoding a value is a
+ * single lookup.
+ * <p>
+ * Nominal values are first looked up by identity, which succeeds without
+ * comparing strings for interned strings (such as string literals) and
+ * for enum constants, which are looked up by their name; other objects are
+ * looked up by their string representation. Apart from this, the encoding
+ * follows the same rules as
+ * {@link WekaUtils#createInstanceFromArray(Instances, Object[], Attribute...)}.
+ * The dictionaries are never modified after the encoder is created, so that
+ * the same encoder can be used by multiple threads. The only exception is
+ * string attributes: encoding a string adds it to the values of the
+ * {@link Attribute} itself. The encoder does this while holding the lock
+ * of the attribute; other code adding values to an attribute shared with
+ * an encoder must hold the same lock.
+ */
+public class AttributeEncoder
+{
+  /**
+   * Type of an attribute whose values are numbers
+   */
+  protected static final int NUMERIC = 0;
+
+  /**
+   * Type of an attribute taking its values from a fixed list
+   */
+  protected static final int NOMINAL = 1;
+
+  /**
+   * Type of any other attribute
+   */
+  protected static final int OTHER = 2;
+
+  /**
+   * The attributes handled by this encoder
+   */
+  /*@ non_null @*/ protected final Attribute[] m_attributes;
+
+  /**
+   * The type of each attribute
+   */
+  /*@ non_null @*/ protected final int[] m_types;
+
+  /**
+   * For each nominal attribute, the index of each value, looked up by
+   * identity
+   */
+  /*@ non_null @*/ protected final List<Map<Object,Integer>> m_identityIndex;
+
+  /**
+   * For each nominal attribute, the index of each value, looked up by
+   * string
+   */
+  /*@ non_null @*/ protected final List<Map<String,Integer>> m_index;
+
+  /**
+   * Creates a new encoder
+   * @param attributes The attributes, in the order in which their
+   * values appear in the arrays to encode
+   */
+  public AttributeEncoder(Attribute ... attributes)
+  {
+    super();
+    m_attributes = attributes;
+    m_types = new int[attributes.length];
+    m_identityIndex = new ArrayList<Map<Object,Integer>>(attributes.length);
+    m_index = new ArrayList<Map<String,Integer>>(attributes.length);
+    for (int i = 0; i < attributes.length; i++)
+    {
+      Attribute att = attributes[i];
+      Map<Object,Integer> identity_index = null;
+      Map<String,Integer> index = null;
+      if (att.isNumeric())
+      {
+        m_types[i] = NUMERIC;
+      }
+      else if (att.isNominal())
+      {
+        m_types[i] = NOMINAL;
+        identity_index = new IdentityHashMap<Object,Integer>();
+        index = new HashMap<String,Integer>();
+        for (int j = 0; j < att.numValues(); j++)
+        {
+          String value = att.value(j);
+          identity_index.put(value.intern(), j);
+          index.put(value, j);
+        }
+      }
+      else
+      {
+        m_types[i] = OTHER;
+      }
+      m_identityIndex.add(identity_index);
+      m_index.add(index);
+    }
+  }
+
+  /**
+   * Gets the number of attributes handled by this encoder
+   * @return The number of attributes
+   */
+  /*@ pure @*/ public int size()
+  {
+    return m_attributes.length;
+  }
+
+  /**
+   * Encodes a single value
+   * @param index The index of the attribute the value is given to
+   * @param o The value. <tt>null</tt> is interpreted as a missing value.
+   * @return The number representing the value
+   * @throws IllegalArgumentException If the value is not defined for the
+   * attribute
+   */
+  public double encode(int index, Object o)
+  {
+    if (o == null)
+    {
+      return Instance.missingValue();
+    }
+    if (o instanceof Number)
+    {
+      return ((Number) o).doubleValue();
+    }
+    switch (m_types[index])
+    {
+    case NOMINAL:
+    {
+      Map<Object,Integer> identity_index = m_identityIndex.get(index);
+      Integer i = identity_index.get(o);
+      if (i == null && o instanceof Enum<?>)
+      {
+        // The name of an enum constant is an interned string
+        i = identity_index.get(((Enum<?>) o).name());
+      }
+      if (i == null)
+      {
+        i = m_index.get(index).get(o.toString());
+        if (i == null)
+        {
+          throw new IllegalArgumentException("Value not defined for given nominal attribute!");
+        }
+      }
+      return i;
+    }
+    case OTHER:
+    {
+      // A string value is added to the attribute, which may be shared
+      Attribute att = m_attributes[index];
+      synchronized (att)
+      {
+        return WekaUtils.encodeValue(att, o);
+      }
+    }
+    default:
+      return WekaUtils.encodeValue(m_attributes[index], o);
+    }
+  }
+
+  /**
+   * Encodes an array of values
+   * @param row The values; the <i>i</i>-th element is the value of the
+   * <i>i</i>-th attribute
+   * @param out The array where the encoded values are written. Attributes
+   * for which <tt>row</tt> has no element are set as missing.
+   */
+  public void encode(/*@ non_null @*/ Object[] row, /*@ non_null @*/ double[] out)
+  {
+    int len = Math.min(row.length, m_attributes.length);
+    int i = 0;
+    for (; i < len; i++)
+    {
+      out[i] = encode(i, row[i]);
+    }
+    for (; i < m_attributes.length; i++)
+    {
+      out[i] = Instance.missingValue();
+    }
+  }
+
+  /**
+   * Encodes the values of the attributes given as an array, a collection,
+   * or a single value
+   * @param x The values
+   * @param out The array where the encoded values are written. Attributes
+   * for which <tt>x</tt> has no value are set as missing.
+   */
+  public void encodeValues(Object x, /*@ non_null @*/ double[] out)
+  {
+    if (x != null && x.getClass().isArray())
+    {
+      encode((Object[]) x, out);
+      return;
+    }
+    int i = 0;
+    if (x instanceof Collection<?>)
+    {
+      for (Object o : (Collection<?>) x)
+      {
+        if (i >= m_attributes.length)
+        {
+          break;
+        }
+        out[i] = encode(i, o);
+        i++;
+      }
+    }
+    else
+    {
+      out[0] = encode(0, x);
+      i = 1;
+    }
+    for (; i < m_attributes.length; i++)
+    {
+      out[i] = Instance.missingValue();
+    }
+  }
+
+  /**
+   * Creates an {@link Instance} from an array of values
+   * @param dataset The dataset linked to this instance
+   * @param row The array of values
+   * @return The instance
+   */
+  /*@ non_null @*/ public Instance createInstance(/*@ non_null @*/ Instances dataset, /*@ non_null @*/ Object[] row)
+  {
+    double[] values = new double[m_attributes.length];
+    encode(row, values);
+    // This constructor does not copy the array
+    Instance ins = new Instance(1, values);
+    ins.setDataset(dataset);
+    return ins;
+  }
+
+  /**
+   * Gets the dictionary of the values of a nominal attribute
+   * @param index The index of the attribute
+   * @return A map from each value to its index, or <tt>null</tt> if the
+   * attribute is not nominal
+   */
+  /*@ pure @*/ public Map<String,Integer> getDictionary(int index)
+  {
+    return m_index.get(index);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.weka;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * A window over the last <i>n</i> instances given to a classifier, stored
+ * in a circular buffer. Adding an instance to a full window evicts the
+ * oldest one in constant time, whereas deleting the first element of an
+ * {@link Instances} object shifts all the others.
+ * <p>
+ * The contents of the window are copied into an {@link Instances} object
+ * only when a classifier needs to be built from them, using
+ * {@link #toInstances(Instances)}. This object is created with the size
+ * of the window as its capacity, so that it never grows while being
+ * filled. Note that {@link Instances#add(Instance)} still makes a copy of
+ * each instance.
+ */
+public class InstanceWindow
+{
+  /**
+   * The instances of the window
+   */
+  /*@ non_null @*/ protected Instance[] m_instances;
+
+  /**
+   * The position in the buffer of the oldest instance of the window
+   */
+  protected int m_head;
+
+  /**
+   * The number of instances currently in the window
+   */
+  protected int m_size;
+
+  /**
+   * Creates a new empty window
+   * @param width The maximum number of instances in the window. Must be
+   * greater than 0.
+   */
+  public InstanceWindow(int width)
+  {
+    super();
+    m_instances = new Instance[width];
+    m_head = 0;
+    m_size = 0;
+  }
+
+  /**
+   * Adds an instance to the window
+   * @param inst The instance
+   * @return The instance evicted from the window to make room for the
+   * new one, or <tt>null</tt> if the window was not full
+   */
+  /*@ null @*/ public Instance add(/*@ non_null @*/ Instance inst)
+  {
+    if (m_size < m_instances.length)
+    {
+      m_instances[(m_head + m_size) % m_instances.length] = inst;
+      m_size++;
+      return null;
+    }
+    Instance evicted = m_instances[m_head];
+    m_instances[m_head] = inst;
+    m_head = (m_head + 1) % m_instances.length;
+    return evicted;
+  }
+
+  /**
+   * Gets an instance of the window
+   * @param index The position of the instance, 0 being the oldest
+   * @return The instance
+   */
+  /*@ pure non_null @*/ public Instance get(int index)
+  {
+    if (index < 0 || index >= m_size)
+    {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + m_size);
+    }
+    return m_instances[(m_head + index) % m_instances.length];
+  }
+
+  /**
+   * Gets the number of instances in the window
+   * @return The number of instances
+   */
+  /*@ pure @*/ public int size()
+  {
+    return m_size;
+  }
+
+  /**
+   * Gets the maximum number of instances in the window
+   * @return The width of the window
+   */
+  /*@ pure @*/ public int getWidth()
+  {
+    return m_instances.length;
+  }
+
+  /**
+   * Creates a set of instances containing the instances of the window,
+   * from the oldest to the most recent
+   * @param header A set of instances whose attributes are copied
+   * @return The new set of instances
+   */
+  /*@ non_null @*/ public Instances toInstances(/*@ non_null @*/ Instances header)
+  {
+    Instances dest = new Instances(header, m_size);
+    for (int i = 0; i < m_size; i++)
+    {
+      dest.add(m_instances[(m_head + i) % m_instances.length]);
+    }
+    return dest;
+  }
+
+  /**
+   * Removes all the instances of the window
+   */
+  public void clear()
+  {
+    for (int i = 0; i < m_instances.length; i++)
+    {
+      m_instances[i] = null;
+    }
+    m_head = 0;
+    m_size = 0;
+  }
+
+  /**
+   * Creates a copy of this window. The instances themselves are
+   * not copied.
+   * @return The copy
+   */
+  /*@ non_null @*/ public InstanceWindow duplicate()
+  {
+    InstanceWindow iw = new InstanceWindow(m_instances.length);
+    System.arraycopy(m_instances, 0, iw.m_instances, 0, m_instances.length);
+    iw.m_head = m_head;
+    iw.m_size = m_size;
+    return iw;
+  }
+}
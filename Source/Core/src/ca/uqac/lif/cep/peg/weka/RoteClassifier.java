@@ -17,6 +17,8 @@
  */
 package ca.uqac.lif.cep.peg.weka;
 
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,6 +30,13 @@ import weka.core.Instances;
 /**
  * A simple classifier that simply memorizes direct associations between
  * features and classes. It is mostly used for testing purposes.
+ * <p>
+ * Associations are indexed by the values of their attributes (except the
+ * class attribute), so that classifying an instance takes a single lookup,
+ * regardless of the number of associations stored. As with
+ * {@link WekaUtils#isEqual(Instance, Instance, Attribute...)}, an instance
+ * with a missing value for one of these attributes is never equal to
+ * another one.
  */
 public class RoteClassifier extends Classifier
 {
@@ -36,23 +45,44 @@ public class RoteClassifier extends Classifier
    */
   private static final long serialVersionUID = 1L;
 
-  protected Map<Instance,Double> m_associations;
+  /**
+   * The class associated to each vector of attribute values
+   */
+  protected Map<FeatureVector,Double> m_associations;
 
   protected Attribute[] m_attributes;
 
   public RoteClassifier(Attribute ... attributes)
   {
     super();
-    m_associations = new HashMap<Instance,Double>();
+    m_associations = new HashMap<FeatureVector,Double>();
     m_attributes = attributes;
   }
 
+  /**
+   * Associates the values of the attributes of an instance to a class.
+   * If an association already exists for the same values, it is replaced.
+   * @param inst The instance. The value of its class attribute is ignored.
+   * @param class_index The index of the class value
+   */
   public void addAssociation(Instance inst, double class_index)
   {
-    m_associations.put(inst, class_index);
+    FeatureVector v = new FeatureVector(inst, m_attributes.length - 1);
+    if (!v.hasMissing())
+    {
+      // Vectors with a missing value can never be matched
+      m_associations.put(v, class_index);
+    }
   }
 
-
+  /**
+   * Gets the number of associations memorized by the classifier
+   * @return The number of associations
+   */
+  /*@ pure @*/ public int getNumAssociations()
+  {
+    return m_associations.size();
+  }
 
   @Override
   public void buildClassifier(Instances inst) throws Exception
@@ -63,14 +93,84 @@ public class RoteClassifier extends Classifier
   @Override
   public double classifyInstance(Instance inst)
   {
-    for (Instance k_inst : m_associations.keySet())
+    Double d = m_associations.get(new FeatureVector(inst, m_attributes.length - 1));
+    if (d == null)
     {
-      if (WekaUtils.isEqual(k_inst, inst, m_attributes))
+      return 0d;
+    }
+    return d;
+  }
+
+  /**
+   * The values of the attributes of an instance, compared by value
+   */
+  protected static class FeatureVector implements Serializable
+  {
+    /**
+     * Dummy UID
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The values of the attributes
+     */
+    /*@ non_null @*/ protected final double[] m_values;
+
+    /**
+     * The hash code of the values, computed once
+     */
+    protected final int m_hashCode;
+
+    /**
+     * Creates a new feature vector
+     * @param inst The instance to take the values from
+     * @param length The number of attributes to take, starting from the
+     * first
+     */
+    public FeatureVector(/*@ non_null @*/ Instance inst, int length)
+    {
+      super();
+      m_values = new double[length];
+      for (int i = 0; i < length; i++)
       {
-        return m_associations.get(k_inst);
+        double d = inst.value(i);
+        // 0 and -0 are equal, but have a different representation
+        m_values[i] = d == 0 ? 0 : d;
       }
+      m_hashCode = Arrays.hashCode(m_values);
+    }
+
+    /**
+     * Determines if one of the values of the vector is missing
+     * @return <tt>true</tt> if a value is missing, <tt>false</tt> otherwise
+     */
+    /*@ pure @*/ public boolean hasMissing()
+    {
+      for (double d : m_values)
+      {
+        if (Double.isNaN(d))
+        {
+          return true;
+        }
+      }
+      return false;
     }
-    return 0d;
-  }
 
-}
\ No newline at end of file
+    @Override
+    public int hashCode()
+    {
+      return m_hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof FeatureVector))
+      {
+        return false;
+      }
+      FeatureVector v = (FeatureVector) o;
+      return m_hashCode == v.m_hashCode && Arrays.equals(m_values, v.m_values);
+    }
+  }
+}
@@ -19,9 +19,19 @@ package ca.uqac.lif.cep.peg.weka;
 
 import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.UniformProcessor;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.Checkpoint;
+import ca.uqac.lif.cep.peg.metrics.StateSize;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -57,8 +67,36 @@ import weka.core.Instances;
  * accumulate instances for some time, and only update the classifier every
  * <i>n</i> events. In all cases, the processor outputs a classifier upon every
  * output event: either an updated classifier, or the last output classifier. 
+ * <p>
+ * If the classifier implements Weka's {@link UpdateableClassifier} interface,
+ * the processor trains it incrementally: after the classifier has been built
+ * once, each new instance is passed to
+ * {@link UpdateableClassifier#updateClassifier(Instance) updateClassifier()},
+ * and the update interval is ignored. Since Weka classifiers cannot forget an
+ * instance, when the number of instances is bounded, the classifier is rebuilt
+ * from the instances in the window every time <tt>roll_width</tt> instances
+ * have been evicted from it. The model therefore always reflects the last
+ * <tt>roll_width</tt> instances, plus at most <tt>roll_width</tt> older ones.
+ * Incremental training can be disabled with {@link #setIncremental(boolean)}.
+ * <p>
+ * Otherwise, the classifier can be rebuilt in the background by giving the
+ * processor an executor service with {@link #setThreadManager(ExecutorService)}.
+ * When the update interval is reached, the processor takes a snapshot of its
+ * instances and trains a copy of the classifier on this snapshot in another
+ * thread. In the meantime, it keeps outputting the last classifier it has
+ * published; the new classifier replaces it as soon as its training is
+ * complete. At most one training runs at a time: if the update interval is
+ * reached again before it completes, a new training is started as soon as
+ * possible afterwards. The delay between the instances received and those
+ * the current classifier was trained on can be obtained with
+ * {@link #getModelStaleness()}.
+ * <p>
+ * The state of the processor can be saved with
+ * {@link #checkpoint(ObjectOutput)}. A checkpoint contains the instances
+ * currently kept by the processor and the classifier trained on them, so
+ * that a restored processor resumes without retraining.
  */
-public class UpdateClassifier extends UniformProcessor
+public class UpdateClassifier extends UniformProcessor implements Checkpointable, StateSize
 {
   /**
    * A name given to the dataset. This is because Weka requires sets of
@@ -79,6 +117,21 @@ public class UpdateClassifier extends UniformProcessor
    */
   /*@ non_null @*/ protected Instances m_instances;
 
+  /**
+   * The set of instances new instances are associated to. When the number
+   * of instances is bounded, this set is always empty, and the instances
+   * of the window do not keep alive the sets the classifier was built
+   * from. Otherwise, it is {@link #m_instances} itself.
+   */
+  /*@ non_null @*/ protected Instances m_header;
+
+  /**
+   * The window of the last instances, when their number is bounded.
+   * In such a case, {@link #m_instances} is replaced by a copy of the
+   * window only when the classifier is built.
+   */
+  /*@ null @*/ protected InstanceWindow m_window = null;
+
   /**
    * The size of the circular buffer storing the instances
    * to be learned.
@@ -96,6 +149,12 @@ public class UpdateClassifier extends UniformProcessor
    */
   /*@ non_null @*/ protected final Attribute[] m_attributes;
 
+  /**
+   * The encoder converting input arrays into instances, built once from
+   * {@link #m_attributes}
+   */
+  /*@ non_null @*/ protected final AttributeEncoder m_encoder;
+
   /**
    * The classifier that will be applied on the instances
    */
@@ -124,6 +183,83 @@ public class UpdateClassifier extends UniformProcessor
    */
   protected boolean m_makeCopy = false;
 
+  /**
+   * The last copy of the classifier output by the processor, when
+   * {@link #m_makeCopy} is set
+   */
+  /*@ null @*/ protected Classifier m_snapshot = null;
+
+  /**
+   * Whether the classifier has been modified since {@link #m_snapshot}
+   * was taken
+   */
+  protected boolean m_modelChanged = true;
+
+  /**
+   * Whether to train the classifier incrementally when it implements
+   * {@link UpdateableClassifier}
+   */
+  protected boolean m_incremental = true;
+
+  /**
+   * Whether the classifier has been built at least once since the
+   * processor was created or reset
+   */
+  protected boolean m_built = false;
+
+  /**
+   * The number of instances evicted from the window since the classifier
+   * was last built
+   */
+  protected int m_evictedSinceBuild = 0;
+
+  /**
+   * An executor service on which the classifier is rebuilt in the
+   * background, or <tt>null</tt> to rebuild it in the calling thread
+   */
+  /*@ null @*/ protected ExecutorService m_service = null;
+
+  /**
+   * The classifier currently output by the processor, when it is rebuilt
+   * in the background
+   */
+  /*@ null @*/ protected volatile Classifier m_published = null;
+
+  /**
+   * The training running in the background, if any
+   */
+  /*@ null @*/ protected Future<?> m_training = null;
+
+  /**
+   * Whether a training should be started as soon as the one running in the
+   * background completes
+   */
+  protected boolean m_trainingRequested = false;
+
+  /**
+   * Incremented on every reset, so that trainings started before a reset
+   * do not publish their classifier
+   */
+  protected volatile int m_generation = 0;
+
+  /**
+   * Lock held when a classifier built in the background is published, and
+   * when the processor is reset, so that a training cannot publish a model
+   * of the old data after a reset
+   */
+  /*@ non_null @*/ protected final Object m_publishLock = new Object();
+
+  /**
+   * The value of {@link #m_instanceCount} when the snapshot used to build the
+   * current classifier was taken
+   */
+  protected volatile long m_modelInstanceCount = 0;
+
+  /**
+   * The time, in milliseconds, taken by the last build of the classifier
+   */
+  protected volatile long m_lastTrainingTime = 0;
+
   /**
    * Creates a new update classifier processor.
    * @param c The classifier used to classify the instances. Depending on the
@@ -152,10 +288,11 @@ public class UpdateClassifier extends UniformProcessor
     m_classifier = c;
     m_dataSetName = name;
     m_attributes = attributes;
+    m_encoder = new AttributeEncoder(attributes);
     m_updateInterval = update_interval;
     m_rollWidth = roll_width;
     m_instanceSize = 0;
-    m_instances = WekaUtils.createInstances(m_dataSetName, s_capacity, m_attributes);
+    createInstances();
   }
 
   /**
@@ -192,6 +329,87 @@ public class UpdateClassifier extends UniformProcessor
     return this;
   }
 
+  /**
+   * Sets whether the classifier is trained incrementally, if it implements
+   * Weka's {@link UpdateableClassifier} interface. This has no effect
+   * on other classifiers.
+   * @param b Set to <tt>true</tt> (default) to train the classifier
+   * incrementally, <tt>false</tt> to always rebuild it from all the instances
+   * @return This processor
+   */
+  /*@ non_null @*/ public UpdateClassifier setIncremental(boolean b)
+  {
+    m_incremental = b;
+    return this;
+  }
+
+  /**
+   * Determines if the classifier is trained incrementally
+   * @return <tt>true</tt> if the classifier is trained incrementally,
+   * <tt>false</tt> otherwise
+   */
+  /*@ pure @*/ public boolean isIncremental()
+  {
+    return m_incremental && m_classifier instanceof UpdateableClassifier;
+  }
+
+  /**
+   * Sets the executor service on which the classifier is rebuilt. This
+   * has no effect when the classifier is trained incrementally.
+   * @param service The executor service, or <tt>null</tt> to rebuild the
+   * classifier in the thread that pushes events to the processor (default)
+   * @return This processor
+   */
+  /*@ non_null @*/ public UpdateClassifier setThreadManager(/*@ null @*/ ExecutorService service)
+  {
+    m_service = service;
+    return this;
+  }
+
+  /**
+   * Waits until the training running in the background, if any, is
+   * complete and its classifier is published
+   */
+  public void awaitTraining()
+  {
+    if (m_training == null)
+    {
+      return;
+    }
+    try
+    {
+      m_training.get();
+    }
+    catch (InterruptedException e)
+    {
+      throw new ProcessorException(e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new ProcessorException(e.getCause());
+    }
+    m_training = null;
+  }
+
+  /**
+   * Gets the number of input events received since the snapshot of the
+   * instances used to build the current classifier was taken
+   * @return The number of events
+   */
+  /*@ pure @*/ public long getModelStaleness()
+  {
+    return m_instanceCount - m_modelInstanceCount;
+  }
+
+  /**
+   * Gets the time taken by the last build of the classifier
+   * @return The time, in milliseconds
+   */
+  /*@ pure @*/ public long getLastTrainingTime()
+  {
+    return m_lastTrainingTime;
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   protected boolean compute(Object[] inputs, Object[] outputs)
@@ -208,6 +426,7 @@ public class UpdateClassifier extends UniformProcessor
       collection = new ArrayList<Object>(1);
       collection.add(inputs[0]);
     }
+    boolean incremental = isIncremental();
     for (Object o : collection)
     {
       if (o == null || !o.getClass().isArray())
@@ -218,62 +437,250 @@ public class UpdateClassifier extends UniformProcessor
       Instance new_instance = null;
       try
       {
-        new_instance = WekaUtils.createInstanceFromArray(m_instances, input_array, m_attributes);
+        new_instance = m_encoder.createInstance(m_header, input_array);
       }
       catch (IllegalArgumentException e)
       {
         throw new ProcessorException(e);
       }
-      if (m_rollWidth > 0 && m_instanceSize == m_rollWidth)
+      if (m_window != null)
       {
-        m_instances.delete(0);
-        m_instances.add(new_instance);
+        if (m_window.add(new_instance) != null)
+        {
+          m_evictedSinceBuild++;
+        }
+        m_instanceSize = m_window.size();
       }
       else
       {
         m_instances.add(new_instance);
         m_instanceSize++;  
       }
+      if (incremental && m_built)
+      {
+        try
+        {
+          ((UpdateableClassifier) m_classifier).updateClassifier(new_instance);
+          m_modelChanged = true;
+        }
+        catch (Exception e)
+        {
+          throw new ProcessorException(e);
+        }
+      }
     }
     if (m_eventsSinceUpdate >= m_updateInterval)
     {
       m_eventsSinceUpdate = 0;
     }
-    if (m_eventsSinceUpdate == 0)
+    if (incremental)
+    {
+      // The classifier is built the first time the update interval is
+      // reached, and is then only rebuilt to forget evicted instances
+      if ((!m_built && m_eventsSinceUpdate == 0) 
+          || (m_built && m_rollWidth > 0 && m_evictedSinceBuild >= m_rollWidth))
+      {
+        buildClassifier();
+      }
+    }
+    else if (m_service != null)
+    {
+      if (m_eventsSinceUpdate == 0 || m_trainingRequested)
+      {
+        startTraining();
+      }
+    }
+    else if (m_eventsSinceUpdate == 0)
     {
       // We update the classifier only when the number of input events
       // is a multiple of m_updateInterval; otherwise, we re-output the
       // same classifier
-      try
+      buildClassifier();
+    }
+    if (m_service != null && !incremental && m_published != null)
+    {
+      // A published classifier is never modified afterwards, and does not
+      // need to be copied
+      outputs[0] = m_published;
+    }
+    else if (m_makeCopy)
+    {
+      // A copy is made only when the classifier has changed since the last
+      // copy; otherwise, the same copy is output again
+      if (m_snapshot == null || m_modelChanged)
       {
-        m_classifier.buildClassifier(m_instances);
+        try
+        {
+          m_snapshot = Classifier.makeCopy(m_classifier);
+        }
+        catch (Exception e)
+        {
+          throw new ProcessorException(e);
+        }
+        m_modelChanged = false;
       }
-      catch (Exception e)
+      outputs[0] = m_snapshot;
+    }
+    else
+    {
+      outputs[0] = m_classifier;
+    }
+    return true;
+  }
+  
+  /**
+   * Creates the empty set of instances given to the classifier. When the
+   * number of instances is bounded, the instances are rather kept in an
+   * {@link InstanceWindow}, and copied into a new set presized to the
+   * window each time the classifier is built.
+   */
+  protected void createInstances()
+  {
+    if (m_rollWidth > 0)
+    {
+      m_header = WekaUtils.createInstances(m_dataSetName, 1, m_attributes);
+      m_instances = m_header;
+      m_window = new InstanceWindow(m_rollWidth);
+    }
+    else
+    {
+      m_instances = WekaUtils.createInstances(m_dataSetName, s_capacity, m_attributes);
+      m_header = m_instances;
+      m_window = null;
+    }
+  }
+
+  /**
+   * Builds the classifier from the instances currently in the window
+   */
+  protected void buildClassifier()
+  {
+    if (m_window != null)
+    {
+      m_instances = m_window.toInstances(m_header);
+    }
+    long start = System.currentTimeMillis();
+    try
+    {
+      m_classifier.buildClassifier(m_instances);
+    }
+    catch (Exception e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_lastTrainingTime = System.currentTimeMillis() - start;
+    m_modelInstanceCount = m_instanceCount;
+    m_modelChanged = true;
+    m_built = true;
+    m_evictedSinceBuild = 0;
+  }
+
+  /**
+   * Starts building a copy of the classifier in the background, on a
+   * snapshot of the current instances. If a training is already running,
+   * the new one is deferred until it completes.
+   */
+  protected void startTraining()
+  {
+    if (m_training != null)
+    {
+      if (!m_training.isDone())
       {
-        throw new ProcessorException(e);
+        m_trainingRequested = true;
+        return;
       }
+      // Propagates any exception thrown by the previous training
+      awaitTraining();
     }
-    if (m_makeCopy)
+    m_trainingRequested = false;
+    Instances snapshot;
+    if (m_window != null)
     {
+      snapshot = m_window.toInstances(m_header);
+    }
+    else
+    {
+      snapshot = new Instances(m_instances);
+    }
+    Classifier c;
+    try
+    {
+      c = Classifier.makeCopy(m_classifier);
+    }
+    catch (Exception e)
+    {
+      throw new ProcessorException(e);
+    }
+    m_training = m_service.submit(new Training(c, snapshot, m_instanceCount, m_generation));
+  }
+
+  /**
+   * Builds a classifier in the background and publishes it when done
+   */
+  protected class Training implements Runnable
+  {
+    /**
+     * The classifier to build
+     */
+    /*@ non_null @*/ protected Classifier m_toBuild;
+
+    /**
+     * The instances to build the classifier from
+     */
+    /*@ non_null @*/ protected Instances m_snapshot;
+
+    /**
+     * The number of input events when the snapshot was taken
+     */
+    protected long m_snapshotCount;
+
+    /**
+     * The generation of the processor when the training was started
+     */
+    protected int m_startGeneration;
+
+    public Training(/*@ non_null @*/ Classifier c, /*@ non_null @*/ Instances snapshot, long snapshot_count, int generation)
+    {
+      super();
+      m_toBuild = c;
+      m_snapshot = snapshot;
+      m_snapshotCount = snapshot_count;
+      m_startGeneration = generation;
+    }
+
+    @Override
+    public void run()
+    {
+      long start = System.currentTimeMillis();
       try
       {
-        outputs[0] = Classifier.makeCopy(m_classifier);
+        m_toBuild.buildClassifier(m_snapshot);
       }
       catch (Exception e)
       {
         throw new ProcessorException(e);
       }
+      synchronized (m_publishLock)
+      {
+        if (m_startGeneration != m_generation)
+        {
+          // The processor has been reset in the meantime
+          return;
+        }
+        m_lastTrainingTime = System.currentTimeMillis() - start;
+        m_modelInstanceCount = m_snapshotCount;
+        m_published = m_toBuild;
+      }
     }
-    else
-    {
-      outputs[0] = m_classifier;
-    }
-    return true;
   }
-  
+
   /**
    * Sets whether the processor should output its own internal classifier,
-   * or a <em>clone</em> of this classifier.
+   * or a <em>clone</em> of this classifier. A clone is only made when
+   * the classifier has changed since the previous output; otherwise, the
+   * processor outputs the same clone again. A clone output by the processor
+   * is never modified afterwards. Classifiers built in the background are
+   * never modified either, and are output without being cloned.
    * 
    * @param b Set to <tt>true</tt> to create a copy of the internal
    * classifier, <tt>false</tt> otherwise (default). Setting this parameter
@@ -296,6 +703,21 @@ public class UpdateClassifier extends UniformProcessor
     return m_instanceCount;
   }
 
+  /**
+   * Gets the number of instances currently retained to train the
+   * classifier
+   * @return The number of instances
+   */
+  @Override
+  public int getStateSize()
+  {
+    if (m_window != null)
+    {
+      return m_window.size();
+    }
+    return m_instances.numInstances();
+  }
+
   @Override
   public UpdateClassifier duplicate(boolean with_state)
   {
@@ -309,16 +731,37 @@ public class UpdateClassifier extends UniformProcessor
       throw new UnsupportedOperationException("Cannot make a copy of classifier " + m_classifier);
     }
     UpdateClassifier uc = new UpdateClassifier(new_c, m_updateInterval, m_rollWidth, m_dataSetName, m_attributes);
+    uc.m_incremental = m_incremental;
+    uc.m_service = m_service;
     if (with_state)
     {
+      // A published classifier is never modified, and can be shared
+      uc.m_published = m_published;
+      uc.m_snapshot = m_snapshot;
+      uc.m_modelChanged = m_modelChanged;
+      uc.m_modelInstanceCount = m_modelInstanceCount;
       uc.m_instances = new Instances(m_instances);
+      if (m_window != null)
+      {
+        uc.m_window = m_window.duplicate();
+      }
+      else
+      {
+        uc.m_header = uc.m_instances;
+      }
+      uc.m_instanceSize = m_instanceSize;
+      uc.m_instanceCount = m_instanceCount;
       uc.m_eventsSinceUpdate = m_eventsSinceUpdate;
+      uc.m_built = m_built;
+      uc.m_evictedSinceBuild = m_evictedSinceBuild;
     }
     return uc;
   }
 
   /**
-   * Gets the dataset created by this processor
+   * Gets the dataset created by this processor. When the number of instances
+   * is bounded, this dataset contains the instances used the last time the
+   * classifier was built.
    * @return The dataset
    */
   /*@ pure non_null @*/ public Instances getDataset()
@@ -353,7 +796,123 @@ public class UpdateClassifier extends UniformProcessor
     super.reset();
     m_instanceCount = 0;
     m_eventsSinceUpdate = 0;
-    m_instances = WekaUtils.createInstances(m_dataSetName, s_capacity, m_attributes);
+    createInstances();
     m_instanceSize = 0;
+    m_built = false;
+    m_evictedSinceBuild = 0;
+    synchronized (m_publishLock)
+    {
+      m_generation++;
+      m_published = null;
+      m_modelInstanceCount = 0;
+    }
+    m_snapshot = null;
+    m_modelChanged = true;
+    m_training = null;
+    m_trainingRequested = false;
+  }
+
+  /**
+   * Writes the state of this processor. A training running in the
+   * background is completed first, so that the classifier written
+   * corresponds to the instances received so far.
+   * @param out The output to write to
+   * @throws IOException If the state cannot be written
+   */
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    awaitTraining();
+    out.writeLong(m_instanceCount);
+    out.writeLong(m_modelInstanceCount);
+    out.writeInt(m_eventsSinceUpdate);
+    out.writeInt(m_evictedSinceBuild);
+    out.writeBoolean(m_built);
+    out.writeBoolean(m_trainingRequested);
+    if (m_window != null)
+    {
+      out.writeInt(m_window.size());
+      for (int i = 0; i < m_window.size(); i++)
+      {
+        writeInstance(out, m_window.get(i));
+      }
+    }
+    else
+    {
+      out.writeInt(m_instances.numInstances());
+      for (int i = 0; i < m_instances.numInstances(); i++)
+      {
+        writeInstance(out, m_instances.instance(i));
+      }
+    }
+    // The classifier is only written if it has been trained
+    out.writeObject(m_built ? m_classifier : null);
+    out.writeObject(m_published);
+  }
+
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    reset();
+    m_instanceCount = in.readLong();
+    m_modelInstanceCount = in.readLong();
+    m_eventsSinceUpdate = in.readInt();
+    m_evictedSinceBuild = in.readInt();
+    m_built = in.readBoolean();
+    m_trainingRequested = in.readBoolean();
+    int num_instances = in.readInt();
+    for (int i = 0; i < num_instances; i++)
+    {
+      Instance ins = readInstance(in);
+      if (m_window != null)
+      {
+        m_window.add(ins);
+      }
+      else
+      {
+        m_instances.add(ins);
+      }
+    }
+    m_instanceSize = num_instances;
+    Classifier c = (Classifier) Checkpoint.readObject(in);
+    if (c != null)
+    {
+      m_classifier = c;
+    }
+    m_published = (Classifier) Checkpoint.readObject(in);
+  }
+
+  /**
+   * Writes the weight and the values of an instance
+   * @param out The output to write to
+   * @param ins The instance
+   * @throws IOException If the instance cannot be written
+   */
+  protected void writeInstance(/*@ non_null @*/ ObjectOutput out, /*@ non_null @*/ Instance ins) throws IOException
+  {
+    out.writeDouble(ins.weight());
+    for (int i = 0; i < m_attributes.length; i++)
+    {
+      out.writeDouble(ins.value(i));
+    }
+  }
+
+  /**
+   * Reads an instance written by {@link #writeInstance(ObjectOutput, Instance)}
+   * @param in The input to read from
+   * @return The instance, associated to the dataset of this processor
+   * @throws IOException If the instance cannot be read
+   */
+  /*@ non_null @*/ protected Instance readInstance(/*@ non_null @*/ ObjectInput in) throws IOException
+  {
+    double weight = in.readDouble();
+    double[] values = new double[m_attributes.length];
+    for (int i = 0; i < values.length; i++)
+    {
+      values[i] = in.readDouble();
+    }
+    Instance ins = new Instance(weight, values);
+    ins.setDataset(m_header);
+    return ins;
   }
-}
\ No newline at end of file
+}
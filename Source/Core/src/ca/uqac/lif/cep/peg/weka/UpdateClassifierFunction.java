@@ -19,8 +19,12 @@ package ca.uqac.lif.cep.peg.weka;
 
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.GroupProcessor;
-import ca.uqac.lif.cep.ProcessorException;
 import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.concurrent.ExecutorService;
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
 import weka.core.Instances;
@@ -30,14 +34,20 @@ import weka.core.Instances;
  * a BeepBeep {@link Function}.
  * @see {@link UpdateClassifier}
  */
-public class UpdateClassifierFunction extends GroupProcessor
+public class UpdateClassifierFunction extends GroupProcessor implements Checkpointable
 {
   /**
-   * The underlying classifier processor. It is saved here only so that
-   * its instantiation parameters can be retrieved on a call to
-   * {@link #duplicate(boolean)}.
+   * The underlying classifier processor. It is saved here so that it can be
+   * duplicated on a call to {@link #duplicate(boolean)}, and so that its
+   * state can be saved.
    */
   protected UpdateClassifier m_classifier;
+
+  /**
+   * The function wrapping the classifiers output by
+   * {@link #m_classifier}
+   */
+  protected WekaUtils.CastClassifierToFunction m_cast;
   
   /**
    * Creates a new update classifier processor.
@@ -62,11 +72,21 @@ public class UpdateClassifierFunction extends GroupProcessor
    */
   public UpdateClassifierFunction(/*@ non_null @*/ Classifier c, int update_interval,
       int roll_width, /*@ non_null @*/ String name, Attribute ... attributes)
+  {
+    this(new UpdateClassifier(c, update_interval, roll_width, name, attributes));
+  }
+
+  /**
+   * Creates a new update classifier processor around an existing
+   * classifier processor.
+   * @param uc The classifier processor
+   */
+  protected UpdateClassifierFunction(/*@ non_null @*/ UpdateClassifier uc)
   {
     super(1, 1);
-    m_classifier = new UpdateClassifier(c, update_interval, roll_width, name, attributes);
-    ApplyFunction to_fct = new ApplyFunction(new WekaUtils.CastClassifierToFunction(
-        m_classifier.getDataset(), attributes));
+    m_classifier = uc;
+    m_cast = new WekaUtils.CastClassifierToFunction(m_classifier.getDataset(), m_classifier.getAttributes());
+    ApplyFunction to_fct = new ApplyFunction(m_cast);
     Connector.connect(m_classifier, to_fct);
     addProcessors(m_classifier, to_fct);
     associateInput(0, m_classifier, 0);
@@ -96,24 +116,22 @@ public class UpdateClassifierFunction extends GroupProcessor
   @Override
   public UpdateClassifierFunction duplicate(boolean with_state)
   {
-    if (with_state)
-    {
-      throw new UnsupportedOperationException("This processor does not support stateful duplication");
-    }
-    Classifier new_c = null;
-    try
-    {
-      new_c = Classifier.makeCopy(m_classifier.getClassifier());
-    }
-    catch (Exception e)
-    {
-      throw new ProcessorException(e);
-    }
-    UpdateClassifierFunction ucf = new UpdateClassifierFunction(new_c, m_classifier.m_updateInterval,
-        m_classifier.m_rollWidth, m_classifier.m_dataSetName, m_classifier.m_attributes);
-    ucf.m_classifier.m_makeCopy = m_classifier.m_makeCopy;
+    UpdateClassifierFunction ucf = new UpdateClassifierFunction(m_classifier.duplicate(with_state));
+    ucf.makeCopy(m_classifier.m_makeCopy);
     return ucf;
   }
+
+  @Override
+  public void checkpoint(ObjectOutput out) throws IOException
+  {
+    m_classifier.checkpoint(out);
+  }
+
+  @Override
+  public void restore(ObjectInput in) throws IOException
+  {
+    m_classifier.restore(in);
+  }
   
   /**
    * Gets the dataset created by this processor
@@ -140,12 +158,53 @@ public class UpdateClassifierFunction extends GroupProcessor
    * @param b Set to <tt>true</tt> to create a copy of the internal
    * classifier, <tt>false</tt> otherwise (default). Setting this parameter
    * to <tt>true</tt> obviously has consequences on the throughput of the
-   * processor.
+   * processor. Since the copies are never modified, the processor then
+   * outputs the same function object for as long as the classifier does not
+   * change.
    * @return This processor
    */
   public UpdateClassifierFunction makeCopy(boolean b)
   {
     m_classifier.makeCopy(b);
+    m_cast.setReuse(b);
     return this;
   }
+
+  /**
+   * Sets whether the classifier is trained incrementally, if it implements
+   * Weka's {@link weka.classifiers.UpdateableClassifier UpdateableClassifier}
+   * interface.
+   * @param b Set to <tt>true</tt> (default) to train the classifier
+   * incrementally, <tt>false</tt> otherwise
+   * @return This processor
+   * @see UpdateClassifier#setIncremental(boolean)
+   */
+  public UpdateClassifierFunction setIncremental(boolean b)
+  {
+    m_classifier.setIncremental(b);
+    return this;
+  }
+
+  /**
+   * Sets the executor service on which the classifier is rebuilt
+   * @param service The executor service, or <tt>null</tt> to rebuild the
+   * classifier in the calling thread
+   * @return This processor
+   * @see UpdateClassifier#setThreadManager(ExecutorService)
+   */
+  public UpdateClassifierFunction setThreadManager(ExecutorService service)
+  {
+    m_classifier.setThreadManager(service);
+    return this;
+  }
+
+  /**
+   * Gets the number of input events received since the snapshot of the
+   * instances used to build the current classifier was taken
+   * @return The number of events
+   */
+  /*@ pure @*/ public long getModelStaleness()
+  {
+    return m_classifier.getModelStaleness();
+  }
 }
@@ -121,29 +121,88 @@ public class WekaUtils
   /**
    * Wraps its argument (a Weka {@link Classifier} object) 
    * into a BeepBeep {@link ClassifierFunction}.
+   * <p>
+   * If the classifiers received are known to never be modified, the
+   * function can be told to return the same {@link ClassifierFunction} when
+   * it receives the same classifier twice in a row. Downstream processors
+   * can then detect that the classifier has not changed by comparing the
+   * functions they receive.
    */
   public static class CastClassifierToFunction extends UnaryFunction<Classifier,ClassifierFunction>
   {
     /*@ non_null @*/ protected Instances m_dataSet;
 
     /*@ non_null @*/ protected Attribute[] m_attributes;
+
+    /**
+     * The encoder shared by all the functions created
+     */
+    /*@ non_null @*/ protected AttributeEncoder m_encoder;
+
+    /**
+     * Whether to return the same function for the same classifier
+     */
+    protected boolean m_reuse = false;
+
+    /**
+     * The last classifier received
+     */
+    /*@ null @*/ protected Classifier m_lastClassifier = null;
+
+    /**
+     * The function returned for the last classifier received
+     */
+    /*@ null @*/ protected ClassifierFunction m_lastFunction = null;
     
     public CastClassifierToFunction(/*@ non_null @*/ Instances dataset, Attribute ... attributes)
     {
       super(Classifier.class, ClassifierFunction.class);
       m_dataSet = dataset;
       m_attributes = attributes;
+      m_encoder = new AttributeEncoder(attributes);
+    }
+
+    /**
+     * Sets whether the function returns the same {@link ClassifierFunction}
+     * when it receives the same classifier twice in a row. This should only
+     * be enabled if the classifiers received are never modified.
+     * @param b Set to <tt>true</tt> to reuse functions, <tt>false</tt>
+     * otherwise (default)
+     * @return This function
+     */
+    public CastClassifierToFunction setReuse(boolean b)
+    {
+      m_reuse = b;
+      m_lastClassifier = null;
+      m_lastFunction = null;
+      return this;
     }
 
     @Override
     public ClassifierFunction getValue(Classifier x)
     {
-     return new ClassifierFunction(x, m_dataSet, m_attributes);
+      if (!m_reuse)
+      {
+        return new ClassifierFunction(x, m_dataSet, m_encoder, m_attributes);
+      }
+      if (x != m_lastClassifier || m_lastFunction == null)
+      {
+        m_lastClassifier = x;
+        m_lastFunction = new ClassifierFunction(x, m_dataSet, m_encoder, m_attributes);
+      }
+      return m_lastFunction;
     }
   }
   
   /**
    * A Weka {@link Classifier} object wrapped into a BeepBeep {@link Function}.
+   * <p>
+   * To avoid creating a new Weka {@link Instance} for each value to classify,
+   * the function fills an instance prepared in advance, whose attribute
+   * values are written directly into an array. Each thread evaluating the
+   * function uses its own prepared instance. Multiple values can also be
+   * classified in a single call with
+   * {@link #classifyAll(Object[], int, double[])}.
    */
   public static class ClassifierFunction extends UnaryFunction<Object,String>
   {
@@ -152,6 +211,16 @@ public class WekaUtils
     /*@ non_null @*/ protected Attribute[] m_attributes;
     
     /*@ non_null @*/ protected Classifier m_classifier;
+
+    /**
+     * The encoder used to write values into the prepared instance
+     */
+    /*@ non_null @*/ protected AttributeEncoder m_encoder;
+
+    /**
+     * The instance prepared for each thread using this function
+     */
+    /*@ non_null @*/ protected transient ThreadLocal<PreparedInstance> m_prepared;
     
     /**
      * Creates a new classifier function
@@ -160,21 +229,41 @@ public class WekaUtils
      * @param attributes
      */
     public ClassifierFunction(/*@ non_null @*/ Classifier classifier, /*@ non_null @*/ Instances dataset, Attribute ... attributes)
+    {
+      this(classifier, dataset, new AttributeEncoder(attributes), attributes);
+    }
+
+    /**
+     * Creates a new classifier function
+     * @param classifier The classifier used to classify the instances
+     * @param dataset
+     * @param encoder The encoder used to convert values into instances;
+     * it must have been created from the same attributes
+     * @param attributes
+     */
+    public ClassifierFunction(/*@ non_null @*/ Classifier classifier, /*@ non_null @*/ Instances dataset, /*@ non_null @*/ AttributeEncoder encoder, Attribute ... attributes)
     {
       super(Object.class, String.class);
       m_classifier = classifier;
       m_dataSet = dataset;
       m_attributes = attributes;
+      m_encoder = encoder;
+      m_prepared = new ThreadLocal<PreparedInstance>()
+      {
+        @Override
+        protected PreparedInstance initialValue()
+        {
+          return new PreparedInstance(m_dataSet, m_attributes.length);
+        }
+      };
     }
 
     @Override
     public String getValue(Object x)
     {
-      Instance ins = WekaUtils.createInstanceFromArray(m_dataSet, createArray(null, x), m_attributes);
       try
       {
-        double d = m_classifier.classifyInstance(ins);
-        return getClassValue(d, m_attributes);
+        return getClassValue(classify(x), m_attributes);
       }
       catch (NullPointerException e)
       {
@@ -183,12 +272,193 @@ public class WekaUtils
         // we return the empty string.
         return "";
       }
+    }
+
+    /**
+     * Classifies a value
+     * @param x The value. This can be an array or a collection containing
+     * the values of the attributes (except the class attribute), or a single
+     * value if there is only one such attribute.
+     * @return The index of the class value predicted by the classifier
+     * @throws NullPointerException If the classifier has not been built
+     */
+    public double classify(Object x)
+    {
+      PreparedInstance pi = m_prepared.get();
+      pi.fill(x, m_encoder);
+      try
+      {
+        return m_classifier.classifyInstance(pi.m_instance);
+      }
+      catch (NullPointerException e)
+      {
+        // Signals a classifier that has not been built; let the caller
+        // decide what to do
+        throw e;
+      }
       catch (Exception e)
       {
         // Other exceptions are propagated normally
         throw new FunctionException(e);
       }
     }
+
+    /**
+     * Classifies multiple values in a single call
+     * @param rows The values to classify. Each is interpreted as in
+     * {@link #classify(Object)}.
+     * @param length The number of values to classify, starting at the
+     * beginning of <tt>rows</tt>
+     * @param out An array in which the index of the class value predicted
+     * for each value will be written. If the classifier has not been built,
+     * {@link Instance#missingValue()} is written for each value.
+     */
+    public void classifyAll(/*@ non_null @*/ Object[] rows, int length, /*@ non_null @*/ double[] out)
+    {
+      PreparedInstance pi = m_prepared.get();
+      for (int i = 0; i < length; i++)
+      {
+        pi.fill(rows[i], m_encoder);
+        try
+        {
+          out[i] = m_classifier.classifyInstance(pi.m_instance);
+        }
+        catch (NullPointerException e)
+        {
+          // Classifier not built yet; as in getValue, only the
+          // classification itself is guarded, so that a bad row still
+          // fails when it is filled
+          out[i] = Instance.missingValue();
+        }
+        catch (Exception e)
+        {
+          throw new FunctionException(e);
+        }
+      }
+    }
+
+    /**
+     * Classifies multiple values in a single call, and returns the name of
+     * the predicted classes
+     * @param rows The values to classify. Each is interpreted as in
+     * {@link #classify(Object)}.
+     * @param length The number of values to classify, starting at the
+     * beginning of <tt>rows</tt>
+     * @param out An array in which the name of the class predicted for
+     * each value will be written. If the classifier has not been built,
+     * an empty string is written for each value, as in
+     * {@link #getValue(Object)}.
+     */
+    public void classifyAll(/*@ non_null @*/ Object[] rows, int length, /*@ non_null @*/ String[] out)
+    {
+      PreparedInstance pi = m_prepared.get();
+      for (int i = 0; i < length; i++)
+      {
+        pi.fill(rows[i], m_encoder);
+        double d;
+        try
+        {
+          d = m_classifier.classifyInstance(pi.m_instance);
+        }
+        catch (NullPointerException e)
+        {
+          // Classifier not built yet
+          out[i] = "";
+          continue;
+        }
+        catch (Exception e)
+        {
+          throw new FunctionException(e);
+        }
+        out[i] = getClassValue(d, m_attributes);
+      }
+    }
+  }
+
+  /**
+   * A Weka {@link Instance} whose attribute values are stored in an array
+   * that can be overwritten. Weka's <tt>setValue</tt> methods copy the array
+   * of values of an instance before each modification; writing directly into
+   * the array avoids this copy, and makes it possible to reuse the instance
+   * to classify many values.
+   */
+  protected static class PreparedInstance
+  {
+    /**
+     * The values of the attributes of the instance
+     */
+    /*@ non_null @*/ protected final double[] m_values;
+
+    /**
+     * The instance backed by {@link #m_values}
+     */
+    /*@ non_null @*/ protected final Instance m_instance;
+
+    /**
+     * Creates a new prepared instance
+     * @param dataset The dataset of the instance
+     * @param num_attributes The number of attributes
+     */
+    public PreparedInstance(/*@ non_null @*/ Instances dataset, int num_attributes)
+    {
+      super();
+      m_values = new double[num_attributes];
+      // This constructor does not copy the array
+      m_instance = new Instance(1, m_values);
+      m_instance.setDataset(dataset);
+    }
+
+    /**
+     * Writes the values of the attributes into the instance. Attributes
+     * for which no value is given are set as missing.
+     * @param x An array or a collection containing the values of the
+     * attributes, or a single value
+     * @param encoder The encoder for the attributes of the instance
+     */
+    public void fill(Object x, /*@ non_null @*/ AttributeEncoder encoder)
+    {
+      encoder.encodeValues(x, m_values);
+    }
+  }
+
+  /**
+   * Converts a value into the number Weka uses to represent it in an
+   * {@link Instance}, following the same rules as
+   * {@link #createInstanceFromArray(Instances, Object[], Attribute...)}
+   * @param att The attribute the value is given to
+   * @param o The value. <tt>null</tt> is interpreted as a missing value.
+   * @return The number representing the value
+   */
+  public static double encodeValue(/*@ non_null @*/ Attribute att, Object o)
+  {
+    if (o == null)
+    {
+      return Instance.missingValue();
+    }
+    if (o instanceof Number)
+    {
+      return ((Number) o).doubleValue();
+    }
+    String value = o.toString();
+    if (att.isNominal())
+    {
+      int index = att.indexOfValue(value);
+      if (index < 0)
+      {
+        throw new IllegalArgumentException("Value not defined for given nominal attribute!");
+      }
+      return index;
+    }
+    if (att.isString())
+    {
+      int index = att.indexOfValue(value);
+      if (index < 0)
+      {
+        index = att.addStringValue(value);
+      }
+      return index;
+    }
+    throw new IllegalArgumentException("Attribute neither nominal nor string!");
   }
 
   /**
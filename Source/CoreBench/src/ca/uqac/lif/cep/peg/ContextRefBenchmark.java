@@ -0,0 +1,97 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.tmf.SinkLast;
+import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the {@link ContextRef} processor. The context
+ * of each window is the key of its last event, and the reference trend
+ * for each key is looked up in a map with one entry per key. Each benchmark
+ * operation pushes a single event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextRefBenchmark
+{
+  /**
+   * The width of the trend and context windows
+   */
+  @Param({"10", "100", "1000"})
+  public int width;
+
+  /**
+   * The number of distinct contexts in the input stream
+   */
+  @Param({"1", "100", "10000"})
+  public int keys;
+
+  protected Object[][] m_events;
+
+  protected Pushable m_pushable;
+
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = SyntheticStreams.keyedEvents(keys);
+    m_index = 0;
+    Map<Object,Number> references = new HashMap<Object,Number>();
+    for (int i = 0; i < keys; i++)
+    {
+      references.put(i, 0);
+    }
+    ChoiceFunction<Object,Number> choice = new ChoiceFunction<Object,Number>(
+        Object.class, Number.class, references, 0);
+    ContextRef<Object,Number> cr = new ContextRef<Object,Number>(
+        SyntheticStreams.averageOf(1), width, new ApplyFunction(new NthElement(0)), width,
+        choice, Numbers.subtraction, 5, Numbers.isGreaterOrEqual);
+    Connector.connect(cr, new SinkLast());
+    m_pushable = cr.getPushableInput();
+  }
+
+  @Benchmark
+  public void push()
+  {
+    m_pushable.push(m_events[m_index++ & SyntheticStreams.MASK]);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.GroupProcessor;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.peg.ml.StatMoment;
+import ca.uqac.lif.cep.util.NthElement;
+import java.util.Random;
+
+/**
+ * Generates the synthetic event streams fed to the benchmarks. All streams
+ * are produced from a fixed seed, so that two runs of the same benchmark
+ * process exactly the same events.
+ */
+public class SyntheticStreams
+{
+  /**
+   * The number of events in each generated stream. This is a power of two,
+   * so that benchmarks can cycle through the stream with a bit mask.
+   */
+  public static final int STREAM_LENGTH = 1 << 16;
+
+  /**
+   * The bit mask used to cycle through a stream of length
+   * {@link #STREAM_LENGTH}.
+   */
+  public static final int MASK = STREAM_LENGTH - 1;
+
+  /**
+   * The seed used by the random generator
+   */
+  protected static final long SEED = 1234;
+
+  /**
+   * The two class labels used by the classification streams
+   */
+  public static final String[] LABELS = new String[] {"LOW", "HIGH"};
+
+  private SyntheticStreams()
+  {
+    // Utility class
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Creates a stream of numbers following a random walk.
+   * @return The stream
+   */
+  public static Number[] numbers()
+  {
+    Random r = new Random(SEED);
+    Number[] events = new Number[STREAM_LENGTH];
+    double x = 0;
+    for (int i = 0; i < STREAM_LENGTH; i++)
+    {
+      x += r.nextGaussian();
+      events[i] = x;
+    }
+    return events;
+  }
+
+  /**
+   * Creates a stream of keyed events. Each event is an array of the form
+   * [<i>k</i>, <i>v</i>, <i>c</i>], where <i>k</i> is an integer key taken
+   * uniformly in [0, <tt>num_keys</tt>[, <i>v</i> is a number and <i>c</i> is
+   * one of the {@link #LABELS} correlated with <i>v</i>.
+   * @param num_keys The number of distinct keys in the stream
+   * @return The stream
+   */
+  public static Object[][] keyedEvents(int num_keys)
+  {
+    Random r = new Random(SEED);
+    Object[][] events = new Object[STREAM_LENGTH][];
+    for (int i = 0; i < STREAM_LENGTH; i++)
+    {
+      double v = r.nextGaussian();
+      String c = LABELS[v > 0 ? 1 : 0];
+      if (r.nextInt(10) == 0)
+      {
+        // A bit of noise, so that the classifiers have something to learn
+        c = LABELS[r.nextInt(2)];
+      }
+      events[i] = new Object[] {r.nextInt(num_keys), v, c};
+    }
+    return events;
+  }
+
+  /**
+   * Creates a stream of classifier instances. Each event is an array of the
+   * form [<i>v</i>, <i>c</i>], where <i>v</i> is a number and <i>c</i> is
+   * one of the {@link #LABELS} correlated with <i>v</i>.
+   * @return The stream
+   */
+  public static Object[][] instances()
+  {
+    Object[][] keyed = keyedEvents(1);
+    Object[][] events = new Object[STREAM_LENGTH][];
+    for (int i = 0; i < STREAM_LENGTH; i++)
+    {
+      events[i] = new Object[] {keyed[i][1], keyed[i][2]};
+    }
+    return events;
+  }
+
+  /**
+   * Creates a processor computing the running average of the <i>n</i>-th
+   * element of each array it receives. This is used as the trend (or
+   * feature) processor in benchmarks that operate on keyed events.
+   * @param index The position of the element in each array
+   * @return The processor
+   */
+  public static GroupProcessor averageOf(int index)
+  {
+    GroupProcessor g = new GroupProcessor(1, 1);
+    ApplyFunction get = new ApplyFunction(new NthElement(index));
+    StatMoment avg = new StatMoment(1);
+    Connector.connect(get, avg);
+    g.addProcessors(get, avg);
+    g.associateInput(0, get, 0);
+    g.associateOutput(0, avg, 0);
+    return g;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.peg.ml.StatMoment;
+import ca.uqac.lif.cep.tmf.SinkLast;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the {@link TrendDistance} processor, using the
+ * running average as the trend computed on each window. Each benchmark
+ * operation pushes a single event. The <tt>incremental</tt> parameter
+ * selects between recomputing the trend on each window and updating it
+ * through an {@link IncrementalWindow}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrendDistanceBenchmark
+{
+  /**
+   * The width of the window. Parameter fields are named without the usual
+   * prefix, since JMH exposes their names on the command line.
+   */
+  @Param({"10", "100", "1000"})
+  public int width;
+
+  @Param({"false", "true"})
+  public boolean incremental;
+
+  protected Number[] m_events;
+
+  protected Pushable m_pushable;
+
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = SyntheticStreams.numbers();
+    m_index = 0;
+    TrendDistance<Number,Number,Number> td;
+    if (incremental)
+    {
+      td = new TrendDistance<Number,Number,Number>(0, width,
+          new InvertibleTrend.Moment(1), Numbers.subtraction, 5, Numbers.isGreaterOrEqual);
+    }
+    else
+    {
+      td = new TrendDistance<Number,Number,Number>(0, width,
+          new StatMoment(1), Numbers.subtraction, 5, Numbers.isGreaterOrEqual);
+    }
+    Connector.connect(td, new SinkLast());
+    m_pushable = td.getPushableInput();
+  }
+
+  @Benchmark
+  public void push()
+  {
+    m_pushable.push(m_events[m_index++ & SyntheticStreams.MASK]);
+  }
+}
@@ -0,0 +1,102 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.forecast;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.ApplyFunction;
+import ca.uqac.lif.cep.peg.SyntheticStreams;
+import ca.uqac.lif.cep.peg.weka.UpdateClassifierFunction;
+import ca.uqac.lif.cep.peg.weka.WekaUtils;
+import ca.uqac.lif.cep.tmf.SinkLast;
+import ca.uqac.lif.cep.util.NthElement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+
+/**
+ * Measures the throughput of the {@link SelfLearningPrediction} processor,
+ * with the same slices, features, classes and classifier as in
+ * {@link PredictiveLearningBenchmark}. Each benchmark operation pushes a
+ * single event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SelfLearningPredictionBenchmark
+{
+  /**
+   * The width of the feature window, which is also the number of instances
+   * the classifier is trained on
+   */
+  @Param({"10", "100", "1000"})
+  public int width;
+
+  /**
+   * The number of distinct slices in the input stream
+   */
+  @Param({"1", "100", "10000"})
+  public int keys;
+
+  /**
+   * The number of events between two updates of the classifier
+   */
+  @Param({"100"})
+  public int interval;
+
+  protected Object[][] m_events;
+
+  protected Pushable m_pushable;
+
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = SyntheticStreams.keyedEvents(keys);
+    m_index = 0;
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("a"),
+        WekaUtils.createAttribute("class", SyntheticStreams.LABELS)};
+    UpdateClassifierFunction uc = new UpdateClassifierFunction(new J48(), interval, width, "bench", attributes);
+    SelfLearningPrediction slp = new SelfLearningPrediction(new NthElement(0),
+        SyntheticStreams.averageOf(1), width, 1, new ApplyFunction(new NthElement(2)), 1, uc);
+    Connector.connect(slp, new SinkLast());
+    m_pushable = slp.getPushableInput();
+  }
+
+  @Benchmark
+  public void push()
+  {
+    m_pushable.push(m_events[m_index++ & SyntheticStreams.MASK]);
+  }
+}
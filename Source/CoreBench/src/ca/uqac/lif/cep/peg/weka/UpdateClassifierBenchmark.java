@@ -0,0 +1,88 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.weka;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.peg.SyntheticStreams;
+import ca.uqac.lif.cep.tmf.SinkLast;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+
+/**
+ * Measures the throughput of the {@link UpdateClassifier} processor, fed
+ * with a stream of two-attribute instances. The classifier is a J48
+ * decision tree. Each benchmark operation pushes a single instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UpdateClassifierBenchmark
+{
+  /**
+   * The number of instances the classifier is trained on
+   */
+  @Param({"10", "100", "1000"})
+  public int width;
+
+  /**
+   * The number of events between two updates of the classifier
+   */
+  @Param({"1", "100"})
+  public int interval;
+
+  protected Object[][] m_events;
+
+  protected Pushable m_pushable;
+
+  protected int m_index;
+
+  @Setup
+  public void setup()
+  {
+    m_events = SyntheticStreams.instances();
+    m_index = 0;
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("a"),
+        WekaUtils.createAttribute("class", SyntheticStreams.LABELS)};
+    UpdateClassifier uc = new UpdateClassifier(new J48(), interval, width, "bench", attributes);
+    Connector.connect(uc, new SinkLast());
+    m_pushable = uc.getPushableInput();
+  }
+
+  @Benchmark
+  public void push()
+  {
+    m_pushable.push(m_events[m_index++ & SyntheticStreams.MASK]);
+  }
+}
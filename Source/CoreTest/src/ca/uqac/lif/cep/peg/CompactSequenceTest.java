@@ -0,0 +1,169 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Set;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.peg.ml.ProcessorVectorFunction;
+import ca.uqac.lif.cep.peg.util.AverageLength;
+import ca.uqac.lif.cep.peg.util.AverageValues;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the descendants of {@link CompactSequence}.
+ */
+public class CompactSequenceTest
+{
+	@Test
+	public void testDouble()
+	{
+		DoubleSequence seq = DoubleSequence.withCapacity(2);
+		for (int i = 0; i < 100; i++)
+		{
+			seq.add(i);
+		}
+		assertEquals(100, seq.size());
+		assertEquals(3d, seq.get(3), 0);
+		assertEquals(99d, seq.getLast().doubleValue(), 0);
+		assertEquals(0d, seq.getFirst().doubleValue(), 0);
+		assertEquals(50d, seq.getDouble(50), 0);
+		assertEquals(10, seq.indexOf(10d));
+		assertTrue(seq.contains(10d));
+		// Same events as a linked sequence
+		Sequence<Number> l_seq = new Sequence<Number>();
+		double sum = 0;
+		for (Number n : seq)
+		{
+			l_seq.add(n);
+			sum += n.doubleValue();
+		}
+		assertEquals(4950, sum, 0);
+		assertEquals(l_seq, seq);
+		assertEquals(l_seq.hashCode(), seq.hashCode());
+		DoubleSequence copy = seq.clone();
+		copy.set(0, 5);
+		assertEquals(0d, seq.getDouble(0), 0);
+		assertEquals(5d, copy.getDouble(0), 0);
+		assertEquals(100, copy.toDoubleArray().length);
+		seq.clear();
+		assertTrue(seq.isEmpty());
+	}
+
+	@Test
+	public void testStream() throws Exception
+	{
+		Method stream;
+		try
+		{
+			stream = Collection.class.getMethod("stream");
+		}
+		catch (NoSuchMethodException e)
+		{
+			// Streams do not exist before Java 8
+			return;
+		}
+		Method count = Class.forName("java.util.stream.Stream").getMethod("count");
+		DoubleSequence seq = new DoubleSequence(1, 2, 3);
+		// The stream of the sequence itself is inherited from LinkedList and
+		// is empty (see CompactSequence); a copy must be made first
+		Sequence<Number> copy = seq.toSequence();
+		assertEquals(seq, copy);
+		assertEquals(3L, count.invoke(stream.invoke(copy)));
+		LongSequence l_seq = new LongSequence(1L, 2L);
+		assertEquals(2L, count.invoke(stream.invoke(l_seq.toSequence())));
+	}
+
+	@Test
+	public void testLong()
+	{
+		LongSequence seq = new LongSequence(1L, 2L, 3L);
+		seq.addLong(4);
+		assertEquals(4, seq.size());
+		assertEquals(Long.valueOf(4), seq.get(3));
+		assertEquals(4d, ((NumericSequence) seq).getDouble(3), 0);
+		Iterator<Number> it = seq.descendingIterator();
+		assertEquals(4L, it.next());
+		assertEquals(3L, it.next());
+		ListIterator<Number> l_it = seq.listIterator(4);
+		assertEquals(4L, l_it.previous());
+		l_it.set(40);
+		assertEquals(40L, seq.getLong(3));
+	}
+
+	@Test
+	public void testArray()
+	{
+		ArraySequence<String> seq = new ArraySequence<String>();
+		seq.add("a");
+		seq.add("b");
+		seq.add(2, "c");
+		assertEquals(3, seq.size());
+		assertEquals("[a, b, c]", seq.toString());
+		assertArrayEquals(new String[] {"a", "b", "c"}, seq.toArray(new String[0]));
+		assertEquals("a", seq.peek());
+		assertEquals(seq, new ArraySequence<String>(seq));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRemove()
+	{
+		ArraySequence<String> seq = new ArraySequence<String>();
+		seq.add("a");
+		seq.removeFirst();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testInsert()
+	{
+		DoubleSequence seq = new DoubleSequence(1d, 2d);
+		seq.add(0, 3);
+	}
+
+	@Test
+	public void testMining()
+	{
+		Set<Sequence<Number>> sequences = new HashSet<Sequence<Number>>();
+		sequences.add(new DoubleSequence(1d, 2d, 3d));
+		sequences.add(new LongSequence(4L, 5L, 6L, 7L));
+		Sequence<Number> l_seq = new Sequence<Number>();
+		l_seq.add(8);
+		sequences.add(l_seq);
+		assertEquals(4.5f, AverageValues.instance.mine(sequences).floatValue(), 0.0001);
+		Set<Sequence<Object>> o_sequences = new HashSet<Sequence<Object>>();
+		ArraySequence<Object> a_seq = new ArraySequence<Object>();
+		a_seq.add("foo");
+		o_sequences.add(a_seq);
+		o_sequences.add(new ArraySequence<Object>(2));
+		assertEquals(0.5f, AverageLength.instance.mine(o_sequences).floatValue(), 0.0001);
+		ProcessorVectorFunction<Number> pvf = new ProcessorVectorFunction<Number>(new Cumulate(new CumulativeFunction<Number>(Numbers.addition)));
+		DoublePoint dp = pvf.computeVector(new DoubleSequence(1d, 2d, 3d));
+		assertEquals(6d, dp.getPoint()[0], 0.0001);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.tmf.Passthrough;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link ContextRef} processor.
+ */
+public class ContextRefTest
+{
+  @Test
+  public void test1()
+  {
+    ContextRef<Number,Number> cr = createContextRef();
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(cr, qs);
+    Pushable p = cr.getPushableInput();
+    p.push(1);
+    assertTrue(q.isEmpty());
+    p.push(1);
+    // Reference 10 for context 1, trend 1 + 1
+    assertTrue((Boolean) q.remove());
+    p.push(0);
+    // Reference 0 for context 0, trend 1 + 0
+    assertFalse((Boolean) q.remove());
+  }
+
+  @Test
+  public void testDuplicate()
+  {
+    ContextRef<Number,Number> cr = createContextRef();
+    Pushable p = cr.getPushableInput();
+    p.push(1);
+    p.push(1);
+    // A copy without state starts with empty windows
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    ContextRef<?,?> copy = cr.duplicate(false);
+    Connector.connect(copy, qs);
+    Pushable p_copy = copy.getPushableInput();
+    p_copy.push(1);
+    assertTrue(q.isEmpty());
+    p_copy.push(1);
+    assertTrue((Boolean) q.remove());
+    p_copy.push(0);
+    assertFalse((Boolean) q.remove());
+    // A copy with state has the same windows as the original
+    qs = new QueueSink();
+    q = qs.getQueue();
+    copy = cr.duplicate(true);
+    Connector.connect(copy, qs);
+    p_copy = copy.getPushableInput();
+    p_copy.push(1);
+    assertEquals(1, q.size());
+    assertTrue((Boolean) q.remove());
+    p_copy.push(0);
+    assertFalse((Boolean) q.remove());
+  }
+
+  /**
+   * Creates a processor comparing the sum of the last two events to a
+   * reference chosen by the last event
+   * @return The processor
+   */
+  protected static ContextRef<Number,Number> createContextRef()
+  {
+    Map<Number,Number> references = new HashMap<Number,Number>();
+    references.put(0, 0);
+    references.put(1, 10);
+    ChoiceFunction<Number,Number> choice = new ChoiceFunction<Number,Number>(
+        Number.class, Number.class, references, 0);
+    return new ContextRef<Number,Number>(
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 2, new Passthrough(), 2,
+        choice, Numbers.subtraction, 5, Numbers.isGreaterOrEqual);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.HashMap;
+import java.util.Queue;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link IncrementalWindow} and the {@link InvertibleTrend}s.
+ */
+public class IncrementalWindowTest
+{
+  @Test
+  public void testSum()
+  {
+    IncrementalWindow iw = new IncrementalWindow(new InvertibleTrend.Sum(), 3);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(iw, qs);
+    Pushable p = iw.getPushableInput();
+    p.push(1);
+    p.push(2);
+    assertTrue(q.isEmpty());
+    p.push(3);
+    assertEquals(6, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(4);
+    assertEquals(9, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(10);
+    assertEquals(17, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(0);
+    assertEquals(14, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(0);
+    assertEquals(10, ((Number) q.remove()).doubleValue(), 0.0001);
+  }
+
+  @Test
+  public void testMoment()
+  {
+    IncrementalWindow iw = new IncrementalWindow(new InvertibleTrend.Moment(2), 2);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(iw, qs);
+    Pushable p = iw.getPushableInput();
+    p.push(1);
+    assertTrue(q.isEmpty());
+    p.push(3);
+    assertEquals(5, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(-2);
+    assertEquals(6.5, ((Number) q.remove()).doubleValue(), 0.0001);
+    p.push(0);
+    assertEquals(2, ((Number) q.remove()).doubleValue(), 0.0001);
+  }
+
+  @Test
+  public void testRecompute()
+  {
+    // The trend must be the same before and after it is recomputed
+    IncrementalWindow iw = new IncrementalWindow(new InvertibleTrend.Sum(), 4);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(iw, qs);
+    Pushable p = iw.getPushableInput();
+    for (int i = 0; i < 20; i++)
+    {
+      p.push(i);
+      if (i >= 3)
+      {
+        assertEquals(4 * i - 6, ((Number) q.remove()).doubleValue(), 0.0001);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testHistogram()
+  {
+    IncrementalWindow iw = new IncrementalWindow(new InvertibleTrend.Histogram(), 3);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(iw, qs);
+    Pushable p = iw.getPushableInput();
+    p.push("a");
+    p.push("b");
+    p.push("a");
+    HashMap<Object,Integer> map = (HashMap<Object,Integer>) q.remove();
+    assertEquals(2, map.size());
+    assertEquals(2, (int) map.get("a"));
+    assertEquals(1, (int) map.get("b"));
+    p.push("c");
+    map = (HashMap<Object,Integer>) q.remove();
+    assertEquals(3, map.size());
+    assertEquals(1, (int) map.get("a"));
+    p.push("c");
+    map = (HashMap<Object,Integer>) q.remove();
+    assertEquals(2, map.size());
+    assertFalse(map.containsKey("b"));
+    assertEquals(2, (int) map.get("c"));
+  }
+
+  @Test
+  public void testDuplicate()
+  {
+    IncrementalWindow iw = new IncrementalWindow(new InvertibleTrend.Sum(), 2);
+    Pushable p = iw.getPushableInput();
+    p.push(1);
+    p.push(2);
+    IncrementalWindow iw2 = iw.duplicate(true);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(iw2, qs);
+    iw2.getPushableInput().push(5);
+    assertEquals(7, ((Number) q.remove()).doubleValue(), 0.0001);
+  }
+
+  @Test
+  public void testTrendDistance()
+  {
+    TrendDistance<HashMap<Object,Object>,HashMap<Object,Object>,Number> td 
+      = new TrendDistance<HashMap<Object,Object>,HashMap<Object,Object>,Number>(
+        MapDistance.createMap("a", 2, "b", 1), // Reference trend
+        3, // Window width
+        new InvertibleTrend.Histogram(), // beta
+        MapDistance.instance, // distance metric
+        2, // distance threshold
+        Numbers.isGreaterThan // comparison function
+        );
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(td, qs);
+    Pushable p = td.getPushableInput();
+    p.push("a");
+    p.push("b");
+    p.push("a");
+    assertFalse((Boolean) q.remove());
+    p.push("c");
+    assertFalse((Boolean) q.remove());
+    p.push("c");
+    assertTrue((Boolean) q.remove());
+  }
+}
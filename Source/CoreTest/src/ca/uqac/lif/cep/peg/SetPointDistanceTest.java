@@ -19,7 +19,10 @@ package ca.uqac.lif.cep.peg;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import org.apache.commons.math3.ml.clustering.DoublePoint;
 import org.apache.commons.math3.ml.distance.EuclideanDistance;
@@ -102,6 +105,82 @@ public class SetPointDistanceTest
     assertEquals(11d, d, 0.01d);
   }
   
+  @Test
+  public void testOptimal()
+  {
+    SetPointDistance spd = new SetPointDistance(new PointDistance(new EuclideanDistance()));
+    Set<DoublePoint> c1 = getSet(getPoint(0), getPoint(2));
+    Set<DoublePoint> c2 = getSet(getPoint(1.9), getPoint(4));
+    assertEquals(4.1d, getDistance(spd, c1, c2), 0.01d);
+    spd.setAssignment(SetPointDistance.Assignment.OPTIMAL);
+    assertEquals(3.9d, getDistance(spd, c1, c2), 0.01d);
+    // Same as test5a
+    c1 = getSet(getPoint(1, 1), getPoint(2, 8), getPoint(3, 2), getPoint(6, 5));
+    c2 = getSet(getPoint(1, 3), getPoint(3, 4), getPoint(4, 7), getPoint(9, 6));
+    assertEquals(9.4d, getDistance(spd, c1, c2), 0.01d);
+    assertEquals(0d, getDistance(spd, getSet(), getSet()), 0d);
+  }
+
+  @Test
+  public void testOptimalRandom()
+  {
+    // Compare with the minimum over all permutations
+    Random r = new Random(0);
+    SetPointDistance spd = new SetPointDistance(new PointDistance(new EuclideanDistance()));
+    spd.setAssignment(SetPointDistance.Assignment.OPTIMAL);
+    for (int n = 1; n <= 6; n++)
+    {
+      List<DoublePoint> l1 = new ArrayList<DoublePoint>(), l2 = new ArrayList<DoublePoint>();
+      for (int i = 0; i < n; i++)
+      {
+        l1.add(getPoint(r.nextDouble(), r.nextDouble()));
+        l2.add(getPoint(r.nextDouble(), r.nextDouble()));
+      }
+      Object[] val = new Object[1];
+      spd.evaluate(new Object[] {l1, l2}, val);
+      assertEquals(getMinimum(l1, l2, 0, new boolean[n]), (Double) val[0], 0.0001d);
+    }
+  }
+
+  @Test
+  public void testGreedyLarge()
+  {
+    // Many equal distances: both sets are the same grid of points
+    SetPointDistance spd = new SetPointDistance(new PointDistance(new EuclideanDistance()));
+    Set<DoublePoint> c1 = new HashSet<DoublePoint>(), c2 = new HashSet<DoublePoint>();
+    for (int i = 0; i < 10; i++)
+    {
+      for (int j = 0; j < 10; j++)
+      {
+        c1.add(getPoint(i, j));
+        c2.add(getPoint(j, i));
+      }
+    }
+    assertEquals(0d, getDistance(spd, c1, c2), 0d);
+    spd.setAssignment(SetPointDistance.Assignment.OPTIMAL);
+    assertEquals(0d, getDistance(spd, c1, c2), 0d);
+  }
+
+  protected static double getMinimum(List<DoublePoint> l1, List<DoublePoint> l2, int i, boolean[] used)
+  {
+    if (i == l1.size())
+    {
+      return 0;
+    }
+    double min = Double.MAX_VALUE;
+    for (int j = 0; j < l2.size(); j++)
+    {
+      if (!used[j])
+      {
+        used[j] = true;
+        double d = new EuclideanDistance().compute(l1.get(i).getPoint(), l2.get(j).getPoint()) + getMinimum(l1, l2, i + 1, used);
+        used[j] = false;
+        min = Math.min(min, d);
+      }
+    }
+    return min;
+  }
+
   public static double getDistance(SetPointDistance spd, Set<DoublePoint> c1, Set<DoublePoint> c2)
   {
     Object[] val = new Object[1];
@@ -23,6 +23,8 @@ import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.RaiseArity;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.CheckpointTest;
 import ca.uqac.lif.cep.peg.weka.UpdateClassifier;
 import ca.uqac.lif.cep.peg.weka.WekaUtils;
 import ca.uqac.lif.cep.tmf.QueueSink;
@@ -130,4 +132,41 @@ public class PredictiveLearningTest
     p.push(new Object[] {"foo", "0", "Y"});
     assertEquals(1, q.size());
   }
+  
+  @Test
+  public void testCheckpoint() throws Exception
+  {
+    int t = 1, m = 1, n = 1;
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"),
+        WekaUtils.createAttribute("B", "Y", "Z")
+    };
+    UpdateClassifier uc1 = new UpdateClassifier(new Id3(), "test", attributes);
+    UpdateClassifier uc2 = new UpdateClassifier(new Id3(), "test", attributes);
+    PredictiveLearning ct1 = new PredictiveLearning(new ApplyFunction(new NthElement(0)), m, t, new ApplyFunction(new NthElement(1)), n, uc1);
+    PredictiveLearning ct2 = new PredictiveLearning(new ApplyFunction(new NthElement(0)), m, t, new ApplyFunction(new NthElement(1)), n, uc2);
+    ct1.setCheckpointable(true);
+    ct2.setCheckpointable(true);
+    SinkLast sink1 = new SinkLast(), sink2 = new SinkLast();
+    Connector.connect(ct1, sink1);
+    Connector.connect(ct2, sink2);
+    Pushable p1 = ct1.getPushableInput();
+    p1.push(new Object[] {"foo", "Z"});
+    p1.push(new Object[] {"bar", "Y"});
+    p1.push(new Object[] {"foo", "Z"});
+    CheckpointTest.copy(new Checkpointable[] {ct1}, new Checkpointable[] {ct2});
+    assertEquals(uc1.getInstanceCount(), uc2.getInstanceCount());
+    // The next event completes a training instance from events seen before
+    // the checkpoint
+    ct2.getPushableInput().push(new Object[] {"bar", "Y"});
+    p1.push(new Object[] {"bar", "Y"});
+    assertEquals(uc1.getInstanceCount(), uc2.getInstanceCount());
+    Classifier cl1 = (Classifier) sink1.getLast()[0];
+    Classifier cl2 = (Classifier) sink2.getLast()[0];
+    for (String a : new String[] {"foo", "bar"})
+    {
+      Instance inst = WekaUtils.createInstanceFromArray(uc2.getDataset(), new Object[] {a, null}, attributes);
+      assertEquals(cl1.classifyInstance(inst), cl2.classifyInstance(inst), 0);
+    }
+  }
 }
@@ -26,6 +26,7 @@ import ca.uqac.lif.cep.functions.ApplyFunction;
 import ca.uqac.lif.cep.functions.Constant;
 import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.RaiseArity;
+import ca.uqac.lif.cep.functions.UnaryFunction;
 import ca.uqac.lif.cep.peg.weka.UpdateClassifier;
 import ca.uqac.lif.cep.peg.weka.UpdateClassifierFunction;
 import ca.uqac.lif.cep.peg.weka.WekaUtils;
@@ -33,6 +34,8 @@ import ca.uqac.lif.cep.tmf.QueueSink;
 import ca.uqac.lif.cep.tmf.SinkLast;
 import ca.uqac.lif.cep.util.Bags;
 import ca.uqac.lif.cep.util.NthElement;
+import ca.uqac.lif.cep.util.Numbers;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
 import org.junit.Test;
@@ -117,4 +120,70 @@ public class SelfLearningPredictionTest
     map = (Map<Object,Object>) q.remove();
     assertEquals("Z", map.get(0));
   }
+
+  @Test
+  public void testApplyToChangedValues()
+  {
+    SelfLearningPrediction.ApplyToChangedValues av = new SelfLearningPrediction.ApplyToChangedValues();
+    QueueSink sink = new QueueSink();
+    Connector.connect(av, sink);
+    Queue<Object> q = sink.getQueue();
+    Pushable p_f = av.getPushableInput(0);
+    Pushable p_m = av.getPushableInput(1);
+    CountingFunction f1 = new CountingFunction(Numbers.isEven);
+    Map<Object,Object> map = new HashMap<Object,Object>();
+    map.put("a", 2);
+    map.put("b", 3);
+    p_f.push(f1);
+    p_m.push(map);
+    assertEquals(2, q.size());
+    assertEquals(2, f1.m_calls);
+    q.clear();
+    // Same function, only "b" changes, but not its prediction
+    map = new HashMap<Object,Object>(map);
+    map.put("b", 5);
+    p_f.push(f1);
+    p_m.push(map);
+    assertTrue(q.isEmpty());
+    assertEquals(3, f1.m_calls);
+    // Same function, "a" changes and so does its prediction
+    map = new HashMap<Object,Object>(map);
+    map.put("a", 7);
+    p_f.push(f1);
+    p_m.push(map);
+    Object[] delta = (Object[]) q.remove();
+    assertEquals("a", delta[0]);
+    assertEquals(false, delta[1]);
+    assertTrue(q.isEmpty());
+    assertEquals(4, f1.m_calls);
+    // New function: all values are evaluated again
+    CountingFunction f2 = new CountingFunction(Numbers.isOdd);
+    p_f.push(f2);
+    p_m.push(map);
+    assertEquals(2, q.size());
+    assertEquals(2, f2.m_calls);
+  }
+
+  /**
+   * Unary function that counts the number of times it is evaluated.
+   */
+  protected static class CountingFunction extends UnaryFunction<Object,Object>
+  {
+    protected UnaryFunction<Number,Boolean> m_function;
+
+    protected int m_calls = 0;
+
+    public CountingFunction(UnaryFunction<Number,Boolean> f)
+    {
+      super(Object.class, Object.class);
+      m_function = f;
+    }
+
+    @Override
+    public Object getValue(Object x)
+    {
+      m_calls++;
+      return m_function.getValue((Number) x);
+    }
+  }
 }
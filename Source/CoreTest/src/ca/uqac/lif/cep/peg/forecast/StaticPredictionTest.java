@@ -19,20 +19,36 @@ package ca.uqac.lif.cep.peg.forecast;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.Test;
 
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pushable;
 import ca.uqac.lif.cep.functions.Constant;
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.IdentityFunction;
 import ca.uqac.lif.cep.functions.RaiseArity;
+import ca.uqac.lif.cep.functions.StreamVariable;
+import ca.uqac.lif.cep.functions.UnaryFunction;
+import ca.uqac.lif.cep.peg.InvertibleTrend;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.CheckpointTest;
 import ca.uqac.lif.cep.peg.weka.RoteClassifier;
 import ca.uqac.lif.cep.peg.weka.WekaUtils;
 import ca.uqac.lif.cep.tmf.Passthrough;
 import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.tmf.SinkLast;
 import ca.uqac.lif.cep.util.NthElement;
 import ca.uqac.lif.cep.util.Numbers;
 import weka.core.Attribute;
@@ -111,4 +127,319 @@ public class StaticPredictionTest
     assertEquals("foo", map.get("0"));
     assertEquals("baz", map.get("1"));
   }  
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testShardedSequential()
+  {
+    ShardedStaticPrediction sp = new ShardedStaticPrediction(Numbers.isEven, new Passthrough(), 1, new IdentityFunction(1), 4);
+    QueueSink sink = new QueueSink();
+    Connector.connect(sp, sink);
+    Queue<Object> q = sink.getQueue();
+    Pushable p = sp.getPushableInput();
+    p.push(6);
+    Object[] delta = (Object[]) q.remove();
+    assertEquals(true, delta[0]);
+    assertEquals(6, delta[1]);
+    p.push(3);
+    delta = (Object[]) q.remove();
+    assertEquals(false, delta[0]);
+    assertEquals(3, delta[1]);
+    assertTrue(q.isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testShardedParallel()
+  {
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try
+    {
+      // Same result as StaticPrediction, with 10 slices over 3 shards
+      StaticPrediction sp = new StaticPrediction(new NthElement(0), new FunctionTree(Numbers.addition, 
+          new FunctionTree(new NthElement(1), StreamVariable.X), new FunctionTree(new NthElement(1), StreamVariable.Y)), new IdentityFunction(1));
+      ShardedStaticPrediction ssp = new ShardedStaticPrediction(new NthElement(0), new FunctionTree(Numbers.addition, 
+          new FunctionTree(new NthElement(1), StreamVariable.X), new FunctionTree(new NthElement(1), StreamVariable.Y)), new IdentityFunction(1), 3);
+      ssp.setThreadManager(service);
+      ssp.setMaxPending(16);
+      SinkLast sink = new SinkLast();
+      Connector.connect(sp, sink);
+      QueueSink qs = new QueueSink();
+      Connector.connect(ssp, qs);
+      Pushable p1 = sp.getPushableInput();
+      Pushable p2 = ssp.getPushableInput();
+      for (int i = 0; i < 1000; i++)
+      {
+        Object[] e = new Object[] {i % 10, i};
+        p1.push(e);
+        p2.push(e);
+      }
+      p2.notifyEndOfTrace();
+      Map<Object,Object> expected = (Map<Object,Object>) sink.getLast()[0];
+      Map<Object,Object> actual = new HashMap<Object,Object>();
+      Map<Object,Integer> last_seen = new HashMap<Object,Integer>();
+      for (Object o : qs.getQueue())
+      {
+        Object[] delta = (Object[]) o;
+        // Deltas of a same slice are output in order
+        Integer previous = last_seen.get(delta[0]);
+        int value = ((Number) delta[1]).intValue();
+        assertTrue(previous == null || previous < value);
+        last_seen.put(delta[0], value);
+        actual.put(delta[0], delta[1]);
+      }
+      assertEquals(expected.size(), actual.size());
+      for (Map.Entry<Object,Object> e : expected.entrySet())
+      {
+        assertEquals(((Number) e.getValue()).intValue(), ((Number) actual.get(e.getKey())).intValue());
+      }
+    }
+    finally
+    {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void testShardedDuplicate()
+  {
+    ExecutorService service = Executors.newFixedThreadPool(3);
+    try
+    {
+      ShardedStaticPrediction ssp1 = new ShardedStaticPrediction(Numbers.isEven, 
+          new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 4, new IdentityFunction(1), 3);
+      ssp1.setThreadManager(service);
+      ssp1.setMaxPending(50);
+      QueueSink qs1 = new QueueSink();
+      Connector.connect(ssp1, qs1);
+      Pushable p1 = ssp1.getPushableInput();
+      for (int i = 0; i < 200; i++)
+      {
+        p1.push(i);
+      }
+      // Deltas still pending in ssp1 are output by the copy as well
+      int output_so_far = qs1.getQueue().size();
+      ShardedStaticPrediction ssp2 = ssp1.duplicate(true);
+      QueueSink qs2 = new QueueSink();
+      Connector.connect(ssp2, qs2);
+      Pushable p2 = ssp2.getPushableInput();
+      for (int i = 200; i < 300; i++)
+      {
+        p1.push(i);
+        p2.push(i);
+      }
+      p1.notifyEndOfTrace();
+      p2.notifyEndOfTrace();
+      List<Object> expected = new ArrayList<Object>(qs1.getQueue());
+      expected = expected.subList(output_so_far, expected.size());
+      List<Object> actual = new ArrayList<Object>(qs2.getQueue());
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++)
+      {
+        assertArrayEquals((Object[]) expected.get(i), (Object[]) actual.get(i));
+      }
+      // A copy without state starts from empty windows
+      ShardedStaticPrediction ssp3 = ssp1.duplicate(false);
+      ssp3.setThreadManager(null);
+      QueueSink qs3 = new QueueSink();
+      Connector.connect(ssp3, qs3);
+      Pushable p3 = ssp3.getPushableInput();
+      for (int i = 0; i < 4; i++)
+      {
+        p3.push(2 * i);
+      }
+      Object[] delta = (Object[]) qs3.getQueue().remove();
+      assertEquals(true, delta[0]);
+      assertEquals(12, ((Number) delta[1]).intValue());
+      assertTrue(qs3.getQueue().isEmpty());
+    }
+    finally
+    {
+      service.shutdown();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testShardedRejected()
+  {
+    ExecutorService service = Executors.newSingleThreadExecutor();
+    service.shutdown();
+    ShardedStaticPrediction ssp = new ShardedStaticPrediction(Numbers.isEven, new Passthrough(), 1, new IdentityFunction(1), 2);
+    ssp.setThreadManager(service);
+    QueueSink qs = new QueueSink();
+    Connector.connect(ssp, qs);
+    Pushable p = ssp.getPushableInput();
+    try
+    {
+      p.push(6);
+      fail("The event should have been rejected");
+    }
+    catch (RejectedExecutionException e)
+    {
+      // Expected
+    }
+    // The shard is not left waiting for a task that will never run
+    ssp.reset();
+    ssp.setThreadManager(null);
+    p.push(6);
+    Object[] delta = (Object[]) qs.getQueue().remove();
+    assertEquals(true, delta[0]);
+    assertEquals(6, delta[1]);
+  }
+
+  @Test
+  public void testDeltas()
+  {
+    StaticPrediction sp = new StaticPrediction(Numbers.isEven, new Passthrough(), 1, new FunctionTree(Numbers.isGreaterThan, StreamVariable.X, new Constant(5)), true);
+    QueueSink sink = new QueueSink();
+    Connector.connect(sp, sink);
+    Queue<Object> q = sink.getQueue();
+    Pushable p = sp.getPushableInput();
+    p.push(6);
+    Object[] delta = (Object[]) q.remove();
+    assertEquals(true, delta[0]);
+    assertEquals(true, delta[1]);
+    p.push(3);
+    delta = (Object[]) q.remove();
+    assertEquals(false, delta[0]);
+    assertEquals(false, delta[1]);
+    // Prediction for the even slice does not change
+    p.push(8);
+    assertTrue(q.isEmpty());
+    p.push(4);
+    delta = (Object[]) q.remove();
+    assertEquals(true, delta[0]);
+    assertEquals(false, delta[1]);
+  }
+
+  @Test
+  public void testCacheInPlaceFeature()
+  {
+    // The histogram trend updates the same map on every event
+    InvertibleTrend.Histogram h = new InvertibleTrend.Histogram();
+    UnaryFunction<Object,Object> count_b = new UnaryFunction<Object,Object>(Object.class, Object.class)
+    {
+      @Override
+      public Object getValue(Object x)
+      {
+        Object n = ((Map<?,?>) x).get("b");
+        return n == null ? 0 : n;
+      }
+    };
+    PredictionCache cache = new PredictionCache();
+    h.add("a");
+    Object[] delta = cache.update(0, h.getValue(), count_b);
+    assertEquals(0, delta[1]);
+    h.add("a");
+    assertNull(cache.update(0, h.getValue(), count_b));
+    h.add("b");
+    delta = cache.update(0, h.getValue(), count_b);
+    assertNotNull(delta);
+    assertEquals(1, delta[1]);
+    assertNull(cache.update(0, h.getValue(), count_b));
+  }
+
+  @Test
+  public void testCheckpoint() throws IOException
+  {
+    // The feature is the sum of the last 3 events of each slice
+    StaticPrediction sp1 = new StaticPrediction(Numbers.isEven, 
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 3, new IdentityFunction(1));
+    StaticPrediction sp2 = new StaticPrediction(Numbers.isEven, 
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 3, new IdentityFunction(1));
+    sp1.setCheckpointable(true);
+    sp2.setCheckpointable(true);
+    for (int i = 0; i < 20; i++)
+    {
+      CheckpointTest.push(sp1, i);
+    }
+    CheckpointTest.copy(new Checkpointable[] {sp1}, new Checkpointable[] {sp2});
+    for (int i = 20; i < 30; i++)
+    {
+      Object o1 = CheckpointTest.push(sp1, i);
+      assertEquals(o1, CheckpointTest.push(sp2, i));
+      assertEquals(2, ((Map<?,?>) o1).size());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCheckpointDisabled() throws IOException
+  {
+    // Checkpoints are disabled by default
+    StaticPrediction sp1 = new StaticPrediction(Numbers.isEven, new Passthrough(), 1, new IdentityFunction(1));
+    StaticPrediction sp2 = new StaticPrediction(Numbers.isEven, new Passthrough(), 1, new IdentityFunction(1));
+    CheckpointTest.push(sp1, 0);
+    CheckpointTest.copy(new Checkpointable[] {sp1}, new Checkpointable[] {sp2});
+  }
+
+  @Test
+  public void testCheckpointDeltas() throws IOException
+  {
+    StaticPrediction sp1 = new StaticPrediction(Numbers.isEven, 
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 3, new IdentityFunction(1), true);
+    StaticPrediction sp2 = new StaticPrediction(Numbers.isEven, 
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 3, new IdentityFunction(1), true);
+    sp1.setCheckpointable(true);
+    sp2.setCheckpointable(true);
+    for (int i = 0; i < 20; i++)
+    {
+      CheckpointTest.push(sp1, i);
+    }
+    CheckpointTest.copy(new Checkpointable[] {sp1}, new Checkpointable[] {sp2});
+    for (int i = 20; i < 30; i++)
+    {
+      Object[] d1 = (Object[]) CheckpointTest.push(sp1, i);
+      Object[] d2 = (Object[]) CheckpointTest.push(sp2, i);
+      assertArrayEquals(d1, d2);
+    }
+  }
+
+  @Test
+  public void testCheckpointSharded() throws IOException
+  {
+    ExecutorService service = Executors.newFixedThreadPool(3);
+    try
+    {
+      ShardedStaticPrediction ssp1 = new ShardedStaticPrediction(Numbers.isEven, 
+          new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 4, new IdentityFunction(1), 3);
+      ssp1.setThreadManager(service);
+      ssp1.setCheckpointable(true);
+      // Not the same number of shards
+      ShardedStaticPrediction ssp2 = new ShardedStaticPrediction(Numbers.isEven, 
+          new Cumulate(new CumulativeFunction<Number>(Numbers.addition)), 4, new IdentityFunction(1), 2);
+      ssp2.setCheckpointable(true);
+      QueueSink qs1 = new QueueSink();
+      Connector.connect(ssp1, qs1);
+      QueueSink qs2 = new QueueSink();
+      Connector.connect(ssp2, qs2);
+      Pushable p1 = ssp1.getPushableInput();
+      Pushable p2 = ssp2.getPushableInput();
+      for (int i = 0; i < 500; i++)
+      {
+        p1.push(i);
+      }
+      // Deltas still pending in ssp1 are part of its state
+      int output_so_far = qs1.getQueue().size();
+      CheckpointTest.copy(new Checkpointable[] {ssp1}, new Checkpointable[] {ssp2});
+      for (int i = 500; i < 600; i++)
+      {
+        p1.push(i);
+        p2.push(i);
+      }
+      p1.notifyEndOfTrace();
+      p2.notifyEndOfTrace();
+      List<Object> expected = new ArrayList<Object>(qs1.getQueue());
+      expected = expected.subList(output_so_far, expected.size());
+      List<Object> actual = new ArrayList<Object>(qs2.getQueue());
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++)
+      {
+        assertArrayEquals((Object[]) expected.get(i), (Object[]) actual.get(i));
+      }
+    }
+    finally
+    {
+      service.shutdown();
+    }
+  }
 }
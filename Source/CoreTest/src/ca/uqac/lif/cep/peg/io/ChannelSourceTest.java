@@ -0,0 +1,227 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.ProcessorException;
+import ca.uqac.lif.cep.peg.DoubleSequence;
+import ca.uqac.lif.cep.peg.LongSequence;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for {@link CsvSource} and {@link BinarySource}.
+ */
+public class ChannelSourceTest
+{
+  @Test
+  public void testParseDouble()
+  {
+    String[] values = {"0", "-0", "1", "-42", "+3.5", "0.1", ".25", "7.",
+        "1e3", "1.5E-7", "-2.5e+10", "123456789012345", "0.000001",
+        "3.141592653589793", "1e-300", "1.7976931348623157E308",
+        "12345678901234567890", "0.1234567890123456789", "NaN", "-Infinity",
+        "1e23", "9007199254740993"};
+    for (String s : values)
+    {
+      assertEquals(s, Double.parseDouble(s), parse(s), 0);
+      assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(parse(s)));
+    }
+    assertEquals(12d, parse(" \"12\" "), 0);
+    assertTrue(Double.isNaN(parse("")));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseDoubleInvalid()
+  {
+    parse("12abc");
+  }
+
+  @Test
+  public void testCsv()
+  {
+    String csv = "time,value\n0,1.5\r\n1,-2\n\n2,\n3,4e2";
+    CsvSource source = new CsvSource(channel(csv, 3), 1).setSkipLines(1);
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+    Queue<Object> queue = sink.getQueue();
+    assertEquals(4, queue.size());
+    assertEquals(1.5, ((Number) queue.remove()).doubleValue(), 0);
+    assertEquals(-2, ((Number) queue.remove()).doubleValue(), 0);
+    assertTrue(Double.isNaN(((Number) queue.remove()).doubleValue()));
+    assertEquals(400, ((Number) queue.remove()).doubleValue(), 0);
+  }
+
+  @Test
+  public void testCsvBatches()
+  {
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < 1000; i++)
+    {
+      csv.append(i).append(";").append(i / 10d).append("\n");
+    }
+    CsvSource source = new CsvSource(channel(csv.toString(), 7), 1).setSeparator(';').setBatchSize(300);
+    assertEquals(DoubleSequence.class, source.getOutputType(0));
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+    Queue<Object> queue = sink.getQueue();
+    assertEquals(4, queue.size());
+    int i = 0;
+    for (Object o : queue)
+    {
+      DoubleSequence batch = (DoubleSequence) o;
+      assertEquals(i < 900 ? 300 : 100, batch.size());
+      for (int j = 0; j < batch.size(); j++, i++)
+      {
+        assertEquals(i / 10d, batch.getDouble(j), 0);
+      }
+    }
+    assertEquals(1000, i);
+  }
+
+  @Test
+  public void testCsvLongLine()
+  {
+    // A line longer than the buffer makes it grow
+    StringBuilder csv = new StringBuilder();
+    csv.append("1\n");
+    for (int i = 0; i < 3 * ChannelSource.s_defaultCapacity; i++)
+    {
+      csv.append(' ');
+    }
+    csv.append("2\n3\n");
+    CsvSource source = new CsvSource(channel(csv.toString(), 1 << 16)).setBatchSize(10);
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+    assertEquals(new DoubleSequence(1, 2, 3), sink.getQueue().remove());
+  }
+
+  @Test(expected = ProcessorException.class)
+  public void testCsvInvalid()
+  {
+    CsvSource source = new CsvSource(channel("1\nfoo\n", 100));
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+  }
+
+  @Test
+  public void testBinary()
+  {
+    ByteBuffer b = ByteBuffer.allocate(8 * 100);
+    for (int i = 0; i < 100; i++)
+    {
+      b.putDouble(i * 0.5);
+    }
+    BinarySource source = new BinarySource(channel(b.array(), 13), TraceFile.TYPE_DOUBLE);
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+    Queue<Object> queue = sink.getQueue();
+    assertEquals(100, queue.size());
+    for (int i = 0; i < 100; i++)
+    {
+      assertEquals(i * 0.5, ((Number) queue.remove()).doubleValue(), 0);
+    }
+  }
+
+  @Test
+  public void testBinaryLongBatches()
+  {
+    ByteBuffer b = ByteBuffer.allocate(8 * 10).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < 10; i++)
+    {
+      b.putLong(i - 5);
+    }
+    BinarySource source = new BinarySource(channel(b.array(), 20), TraceFile.TYPE_LONG)
+        .setOrder(ByteOrder.LITTLE_ENDIAN).setBatchSize(6);
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+    Queue<Object> queue = sink.getQueue();
+    assertEquals(new LongSequence(-5, -4, -3, -2, -1, 0), queue.remove());
+    assertEquals(new LongSequence(1, 2, 3, 4), queue.remove());
+  }
+
+  @Test(expected = ProcessorException.class)
+  public void testBinaryTruncated()
+  {
+    BinarySource source = new BinarySource(channel(new byte[12], 100), TraceFile.TYPE_LONG);
+    QueueSink sink = new QueueSink();
+    Connector.connect(source, sink);
+    source.pushAll();
+  }
+
+  protected static double parse(String s)
+  {
+    ByteBuffer b = ByteBuffer.wrap(("[" + s + "]").getBytes());
+    return CsvSource.parseDouble(b, 1, b.capacity() - 1);
+  }
+
+  protected static ReadableByteChannel channel(String s, int chunk)
+  {
+    return channel(s.getBytes(), chunk);
+  }
+
+  /**
+   * Creates a channel that returns at most a given number of bytes on
+   * each read, so that events are split across reads
+   */
+  protected static ReadableByteChannel channel(byte[] bytes, final int chunk)
+  {
+    final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(bytes));
+    return new ReadableByteChannel()
+    {
+      @Override
+      public boolean isOpen()
+      {
+        return channel.isOpen();
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+        channel.close();
+      }
+
+      @Override
+      public int read(ByteBuffer dst) throws IOException
+      {
+        int limit = dst.limit();
+        dst.limit(Math.min(limit, dst.position() + chunk));
+        int n = channel.read(dst);
+        dst.limit(limit);
+        return n;
+      }
+    };
+  }
+}
@@ -0,0 +1,180 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Queue;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Processor;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.ml.FusedRunningMoments;
+import ca.uqac.lif.cep.peg.ml.StatMoment;
+import ca.uqac.lif.cep.peg.ml.WelfordVariance;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for {@link Checkpoint}.
+ */
+public class CheckpointTest
+{
+  @Test
+  public void testNumerical() throws IOException
+  {
+    StatMoment sm1 = new StatMoment(2), sm2 = new StatMoment(2);
+    WelfordVariance wv1 = new WelfordVariance(true), wv2 = new WelfordVariance(true);
+    FusedRunningMoments frm1 = new FusedRunningMoments(3), frm2 = new FusedRunningMoments(3);
+    for (int i = 0; i < 10; i++)
+    {
+      push(sm1, i);
+      push(wv1, i);
+      push(frm1, i);
+    }
+    copy(new Checkpointable[] {sm1, wv1, frm1}, new Checkpointable[] {sm2, wv2, frm2});
+    for (int i = 10; i < 15; i++)
+    {
+      assertEquals(push(sm1, i), push(sm2, i));
+      assertEquals(push(wv1, i), push(wv2, i));
+      assertArrayEquals(((DoublePoint) push(frm1, i)).getPoint(), ((DoublePoint) push(frm2, i)).getPoint(), 0);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongType() throws IOException
+  {
+    copy(new Checkpointable[] {new StatMoment(1)}, new Checkpointable[] {new WelfordVariance()});
+  }
+
+  @Test(expected = IOException.class)
+  public void testWrongCount() throws IOException
+  {
+    copy(new Checkpointable[] {new StatMoment(1)}, new Checkpointable[] {new StatMoment(1), new StatMoment(1)});
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotACheckpoint() throws IOException
+  {
+    Checkpoint.restore(new ByteArrayInputStream(new byte[64]), new StatMoment(1));
+  }
+
+  @Test
+  public void testFile() throws IOException
+  {
+    File dir = File.createTempFile("checkpoint", "");
+    dir.delete();
+    dir.mkdir();
+    File file = new File(dir, "state.chk");
+    try
+    {
+      StatMoment sm1 = new StatMoment(1), sm2 = new StatMoment(1);
+      push(sm1, 4);
+      Checkpoint.save(file, sm1);
+      push(sm1, 6);
+      Checkpoint.save(file, sm1);
+      // A failed save leaves the last checkpoint intact
+      Checkpointable failing = new Checkpointable()
+      {
+        @Override
+        public void checkpoint(ObjectOutput out) throws IOException
+        {
+          out.writeInt(0);
+          throw new IOException("Disk full");
+        }
+
+        @Override
+        public void restore(ObjectInput in) throws IOException
+        {
+          // Nothing to do
+        }
+      };
+      try
+      {
+        Checkpoint.save(file, failing);
+        fail("The save should have failed");
+      }
+      catch (IOException e)
+      {
+        // Expected
+      }
+      assertEquals(1, dir.list().length);
+      Checkpoint.restore(file, sm2);
+      assertEquals(push(sm1, 8), push(sm2, 8));
+      // File names shorter than a temporary file prefix
+      File short_file = new File(dir, "cp");
+      Checkpoint.save(short_file, sm1);
+      StatMoment sm3 = new StatMoment(1);
+      Checkpoint.restore(short_file, sm3);
+      assertEquals(push(sm1, 10), push(sm3, 10));
+      assertEquals(2, dir.list().length);
+    }
+    finally
+    {
+      for (File f : dir.listFiles())
+      {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Saves the state of objects and restores it into other objects
+   * @param from The objects to save
+   * @param to The objects to restore into
+   * @throws IOException If the state cannot be copied
+   */
+  public static void copy(Checkpointable[] from, Checkpointable[] to) throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    Checkpoint.save(baos, from);
+    Checkpoint.restore(new ByteArrayInputStream(baos.toByteArray()), to);
+  }
+
+  /**
+   * Pushes an event to a processor and gets the event it outputs
+   * @param p The processor
+   * @param o The event
+   * @return The last event output by the processor, or {@code null}
+   */
+  public static Object push(Processor p, Object o)
+  {
+    QueueSink sink = new QueueSink();
+    Pushable out = p.getPushableOutput(0);
+    Connector.connect(p, sink);
+    p.getPushableInput(0).push(o);
+    p.setPushableOutput(0, out);
+    Queue<Object> q = sink.getQueue();
+    Object last = null;
+    while (!q.isEmpty())
+    {
+      last = q.remove();
+    }
+    return last;
+  }
+}
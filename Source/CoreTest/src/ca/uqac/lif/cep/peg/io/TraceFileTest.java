@@ -0,0 +1,160 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.functions.FunctionException;
+import ca.uqac.lif.cep.peg.CompactSequence;
+import ca.uqac.lif.cep.peg.DoubleSequence;
+import ca.uqac.lif.cep.peg.LongSequence;
+import ca.uqac.lif.cep.peg.Sequence;
+import ca.uqac.lif.cep.peg.io.TraceFile.MappedSequence;
+import ca.uqac.lif.cep.peg.ml.ProcessorMiningFunction;
+import ca.uqac.lif.cep.peg.util.AverageLength;
+import ca.uqac.lif.cep.peg.util.AverageValues;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for {@link TraceFile} and {@link TraceFileWriter}.
+ */
+public class TraceFileTest
+{
+  @Test
+  public void testDouble() throws IOException
+  {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    TraceFileWriter writer = new TraceFileWriter(file, TraceFile.TYPE_DOUBLE);
+    writer.write(new DoubleSequence(1, 2, 3));
+    writer.write(new DoubleSequence());
+    Sequence<Number> seq = new Sequence<Number>();
+    seq.add(4.5);
+    seq.add(-1);
+    writer.write(seq);
+    writer.close();
+    TraceFile trace = new TraceFile(file);
+    assertEquals(TraceFile.TYPE_DOUBLE, trace.getType());
+    assertEquals(3, trace.getNumSequences());
+    assertEquals(5, trace.getNumEvents());
+    MappedSequence m_seq = trace.getSequence(0);
+    assertEquals(3, m_seq.size());
+    assertEquals(2d, m_seq.getDouble(1), 0);
+    assertEquals(3d, m_seq.get(2));
+    assertEquals(new DoubleSequence(1, 2, 3), m_seq);
+    assertTrue(trace.getSequence(1).isEmpty());
+    m_seq = trace.getSequence(2);
+    assertEquals(4.5, m_seq.getFirst().doubleValue(), 0);
+    assertEquals(-1, m_seq.getLong(1));
+    CompactSequence<Number> copy = m_seq.clone();
+    assertTrue(copy instanceof DoubleSequence);
+    assertEquals(m_seq, copy);
+    trace.close();
+    // Views remain readable after the file is closed
+    assertEquals(-1d, m_seq.getDouble(1), 0);
+  }
+
+  @Test
+  public void testLong() throws IOException
+  {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    TraceFileWriter writer = new TraceFileWriter(file, TraceFile.TYPE_LONG);
+    writer.write(new LongSequence(1, Long.MAX_VALUE));
+    writer.close();
+    TraceFile trace = new TraceFile(file);
+    assertEquals(TraceFile.TYPE_LONG, trace.getType());
+    MappedSequence m_seq = trace.getSequence(0);
+    assertEquals(Long.MAX_VALUE, m_seq.getLong(1));
+    assertEquals(Long.valueOf(1), m_seq.get(0));
+    assertTrue(m_seq.clone() instanceof LongSequence);
+    trace.close();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testReadOnly() throws IOException
+  {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    TraceFileWriter writer = new TraceFileWriter(file, TraceFile.TYPE_DOUBLE);
+    writer.write(new DoubleSequence(1d));
+    writer.close();
+    TraceFile trace = new TraceFile(file);
+    try
+    {
+      assertEquals(1, trace.getSequence(0).size());
+      trace.getSequence(0).add(2);
+    }
+    finally
+    {
+      trace.close();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotATraceFile() throws IOException
+  {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    FileOutputStream fos = new FileOutputStream(file);
+    fos.write("foo,bar,baz\n".getBytes());
+    fos.close();
+    new TraceFile(file);
+  }
+
+  @Test
+  public void testMining() throws IOException, FunctionException
+  {
+    File file = File.createTempFile("trace", ".bin");
+    file.deleteOnExit();
+    TraceFileWriter writer = new TraceFileWriter(file, TraceFile.TYPE_DOUBLE);
+    for (int i = 1; i <= 10; i++)
+    {
+      DoubleSequence seq = new DoubleSequence();
+      for (int j = 1; j <= i; j++)
+      {
+        seq.addDouble(j);
+      }
+      writer.write(seq);
+    }
+    writer.close();
+    TraceFile trace = new TraceFile(file);
+    Set<Sequence<Number>> sequences = trace.getSequences();
+    assertEquals(10, sequences.size());
+    assertEquals(5.5f, AverageLength.instance.getValue(sequences).floatValue(), 0.0001);
+    // Average of 1..i over all i, weighted by length: (sum of i(i+1)/2) / 55
+    assertEquals(220f / 55f, AverageValues.instance.mine(sequences).floatValue(), 0.0001);
+    ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)),
+        new Cumulate(new CumulativeFunction<Number>(Numbers.addition)));
+    // Sum of the sums of each sequence
+    Object[] out = new Object[1];
+    pmf.evaluate(new Object[] {sequences}, out);
+    assertEquals(220f, ((Number) out[0]).floatValue(), 0.0001);
+    trace.close();
+  }
+}
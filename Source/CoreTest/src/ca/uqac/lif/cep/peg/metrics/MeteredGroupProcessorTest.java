@@ -0,0 +1,166 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2018 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.peg.IncrementalWindow;
+import ca.uqac.lif.cep.peg.InvertibleTrend;
+import ca.uqac.lif.cep.peg.TrendDistance;
+import ca.uqac.lif.cep.peg.ml.MeanAndVariance;
+import ca.uqac.lif.cep.tmf.QueueSink;
+import ca.uqac.lif.cep.util.Numbers;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Queue;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MeteredGroupProcessor} and its metrics.
+ */
+public class MeteredGroupProcessorTest
+{
+  @After
+  public void disable()
+  {
+    GroupMetrics.setEnabled(false);
+  }
+
+  @Test
+  public void testDisabled()
+  {
+    GroupMetrics.setEnabled(false);
+    TrendDistance<Number,Number,Number> td = createTrendDistance();
+    assertNull(td.getMetrics());
+    assertFalse(td.getPushableInput() instanceof MeteredPushable);
+  }
+
+  @Test
+  public void testTrendDistance() throws Exception
+  {
+    GroupMetrics.setEnabled(true);
+    TrendDistance<Number,Number,Number> td = createTrendDistance();
+    GroupMetrics metrics = td.getMetrics();
+    assertNotNull(metrics);
+    QueueSink qs = new QueueSink();
+    Queue<Object> q = qs.getQueue();
+    Connector.connect(td, qs);
+    Pushable p = td.getPushableInput();
+    for (int i = 0; i < 5; i++)
+    {
+      p.push(i);
+    }
+    // The window only outputs from the third event on
+    assertEquals(3, q.size());
+    List<StageMetrics> stages = metrics.getStages();
+    assertEquals(3, stages.size());
+    StageMetrics window = stages.get(0);
+    assertTrue(window.getProcessor() instanceof IncrementalWindow);
+    assertEquals(5, window.getEventsIn());
+    assertEquals(3, window.getEventsOut());
+    assertEquals(3, window.getStateSize());
+    for (int i = 1; i < 3; i++)
+    {
+      assertEquals(3, stages.get(i).getEventsIn());
+      assertEquals(3, stages.get(i).getEventsOut());
+      assertEquals(-1, stages.get(i).getStateSize());
+    }
+    for (StageMetrics sm : stages)
+    {
+      assertTrue(sm.getComputeNanos() >= 0);
+    }
+    // The stages are visible over JMX, once registered
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(GroupMetrics.DOMAIN + ":type=Stage,group=" + metrics.getName() + ",stage=" + window.getStage());
+    assertFalse(server.isRegistered(name));
+    metrics.register();
+    assertEquals(5L, server.getAttribute(name, "EventsIn"));
+    server.invoke(name, "reset", new Object[0], new String[0]);
+    assertEquals(0L, server.getAttribute(name, "EventsIn"));
+    metrics.unregister();
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  public void testFork()
+  {
+    GroupMetrics.setEnabled(true);
+    MeanAndVariance mav = new MeanAndVariance();
+    GroupMetrics metrics = mav.getMetrics();
+    QueueSink qs = new QueueSink();
+    Connector.connect(mav, qs);
+    Pushable p = mav.getPushableInput();
+    for (int i = 0; i < 4; i++)
+    {
+      p.push(i);
+    }
+    List<StageMetrics> stages = metrics.getStages();
+    // The fork sends each event to both of its outputs
+    assertEquals(4, stages.get(0).getEventsIn());
+    assertEquals(8, stages.get(0).getEventsOut());
+    // Events leaving the group are counted as well
+    StageMetrics join = stages.get(stages.size() - 1);
+    assertEquals(qs.getQueue().size(), join.getEventsOut());
+  }
+
+  @Test
+  public void testStripedCounter() throws Exception
+  {
+    final StripedCounter counter = new StripedCounter(2, 4);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          for (int j = 0; j < 10000; j++)
+          {
+            counter.add(0, 1);
+            counter.add(1, 2);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads)
+    {
+      t.join();
+    }
+    assertEquals(80000, counter.sum(0));
+    assertEquals(160000, counter.sum(1));
+    counter.reset();
+    assertEquals(0, counter.sum(0));
+  }
+
+  protected static TrendDistance<Number,Number,Number> createTrendDistance()
+  {
+    return new TrendDistance<Number,Number,Number>(0, 3, new InvertibleTrend.Sum(),
+        Numbers.subtraction, 0, Numbers.isGreaterOrEqual);
+  }
+}
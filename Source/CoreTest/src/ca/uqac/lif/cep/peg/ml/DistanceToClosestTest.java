@@ -0,0 +1,119 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.distance.CanberraDistance;
+import org.apache.commons.math3.ml.distance.DistanceMeasure;
+import org.apache.commons.math3.ml.distance.EuclideanDistance;
+import org.apache.commons.math3.ml.distance.ManhattanDistance;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DistanceToClosest} and {@link PointIndex}.
+ */
+public class DistanceToClosestTest
+{
+	@Test
+	public void testSmall()
+	{
+		DistanceToClosest dtc = new DistanceToClosest(new EuclideanDistance());
+		Set<Object> centers = new HashSet<Object>();
+		centers.add(new DoublePoint(new double[] {0, 0}));
+		centers.add(Arrays.asList(3, 4));
+		// Cannot be cast into a point: ignored
+		centers.add("foo");
+		assertEquals(5, getDistance(dtc, centers, 6, 8), 0.0001);
+		assertEquals(1, getDistance(dtc, centers, 3, 5), 0.0001);
+		// A new set replaces the cached index
+		Set<Object> others = new HashSet<Object>();
+		others.add(new DoublePoint(new double[] {6, 8}));
+		assertEquals(0, getDistance(dtc, others, 6, 8), 0.0001);
+		assertEquals(Double.MAX_VALUE, getDistance(dtc, new HashSet<Object>(), 6, 8), 0);
+	}
+
+	@Test
+	public void testEuclidean()
+	{
+		compare(new EuclideanDistance(), 3);
+	}
+
+	@Test
+	public void testManhattan()
+	{
+		compare(new ManhattanDistance(), 2);
+	}
+
+	@Test
+	public void testCanberra()
+	{
+		// Not indexed in a tree: points are scanned
+		compare(new CanberraDistance(), 2);
+	}
+
+	/**
+	 * Compares the distances computed by the function with a linear scan
+	 * @param measure The distance measure
+	 * @param dim The number of dimensions of the points
+	 */
+	protected static void compare(DistanceMeasure measure, int dim)
+	{
+		Random r = new Random(0);
+		Set<DoublePoint> centers = new HashSet<DoublePoint>();
+		for (int i = 0; i < 500; i++)
+		{
+			centers.add(randomPoint(r, dim));
+		}
+		DistanceToClosest dtc = new DistanceToClosest(measure);
+		for (int i = 0; i < 1000; i++)
+		{
+			DoublePoint q = randomPoint(r, dim);
+			double expected = Double.MAX_VALUE;
+			for (DoublePoint c : centers)
+			{
+				expected = Math.min(expected, measure.compute(c.getPoint(), q.getPoint()));
+			}
+			assertEquals(expected, getDistance(dtc, centers, q.getPoint()), 0);
+		}
+	}
+
+	protected static DoublePoint randomPoint(Random r, int dim)
+	{
+		double[] coords = new double[dim];
+		for (int k = 0; k < dim; k++)
+		{
+			// Few distinct values, to have many equal coordinates
+			coords[k] = r.nextInt(50);
+		}
+		return new DoublePoint(coords);
+	}
+
+	protected static double getDistance(DistanceToClosest dtc, Set<?> centers, double ... coords)
+	{
+		Object[] out = new Object[1];
+		dtc.evaluate(new Object[] {centers, new DoublePoint(coords)}, out);
+		return ((Number) out[0]).doubleValue();
+	}
+}
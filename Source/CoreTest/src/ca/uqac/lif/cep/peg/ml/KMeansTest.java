@@ -20,7 +20,10 @@ package ca.uqac.lif.cep.peg.ml;
 import static org.junit.Assert.*;
 
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.math3.ml.clustering.DoublePoint;
 import org.junit.Test;
@@ -57,6 +60,60 @@ public class KMeansTest
 		assertEquals(2, centers.size());
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testWarmStart() throws FunctionException
+	{
+		Set<Sequence<DoublePoint>> sequences = new HashSet<Sequence<DoublePoint>>();
+		Random r = new Random(0);
+		for (int i = 0; i < 3000; i++)
+		{
+			double c = (i % 3) * 10;
+			Sequence<DoublePoint> seq = new Sequence<DoublePoint>();
+			seq.add(new DoublePoint(new double[] {c + r.nextGaussian(), r.nextGaussian()}));
+			sequences.add(seq);
+		}
+		WarmStartKMeans km = new WarmStartKMeans(3);
+		Object[] out = new Object[1];
+		km.evaluate(new Object[] {sequences}, out);
+		Set<DoublePoint> centers = (Set<DoublePoint>) out[0];
+		assertEquals(3, centers.size());
+		// Same clustering with the points slightly changed
+		Sequence<DoublePoint> seq = new Sequence<DoublePoint>();
+		seq.add(new DoublePoint(new double[] {20.5, 0}));
+		sequences.add(seq);
+		km.evaluate(new Object[] {sequences}, out);
+		assertTrue(km.getLastIterations() <= 2);
+		Set<DoublePoint> warm_centers = (Set<DoublePoint>) out[0];
+		for (DoublePoint c : warm_centers)
+		{
+			double x = c.getPoint()[0];
+			double expected = Math.round(x / 10) * 10;
+			assertEquals(expected, x, 0.2);
+		}
+		// Parallel assignment gives the same result
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		WarmStartKMeans p_km = km.duplicate(true).setThreadManager(service).setNumBlocks(2);
+		km.evaluate(new Object[] {sequences}, out);
+		Object[] p_out = new Object[1];
+		p_km.evaluate(new Object[] {sequences}, p_out);
+		service.shutdown();
+		// Sums are added in a different order: compare with a tolerance
+		for (DoublePoint c : (Set<DoublePoint>) out[0])
+		{
+			boolean found = false;
+			for (DoublePoint p_c : (Set<DoublePoint>) p_out[0])
+			{
+				found |= Math.abs(c.getPoint()[0] - p_c.getPoint()[0]) < 1e-9
+						&& Math.abs(c.getPoint()[1] - p_c.getPoint()[1]) < 1e-9;
+			}
+			assertTrue(found);
+		}
+		km.reset();
+		km.evaluate(new Object[] {sequences}, out);
+		assertEquals(3, ((Set<DoublePoint>) out[0]).size());
+	}
+
 	/**
 	 * Generates a set of "fake" sequences of numbers, that are artificially
 	 * grouped around two mean values: close to 1, and close to 100.
@@ -65,4 +65,27 @@ public class MeanAndVarianceTest
 		assertEquals(2.5f, n_vals[0], 0);
 		assertEquals(2.75f, n_vals[1], 0);
 	}
+
+	@Test
+	public void testSinglePass() throws ConnectorException
+	{
+		MeanAndVariance sm = new MeanAndVariance(true);
+		Pushable p = sm.getPushableInput();
+		QueueSink sink = new QueueSink();
+		Connector.connect(sm, 0, sink, 0);
+		Queue<Object> queue = sink.getQueue();
+		double[] n_vals;
+		p.push(0);
+		p.push(2);
+		p.push(4);
+		queue.remove();
+		queue.remove();
+		n_vals = ((DoublePoint) queue.remove()).getPoint();
+		assertEquals(2f, n_vals[0], 0);
+		assertEquals(2.67f, n_vals[1], 0.01f);
+		p.push(4);
+		n_vals = ((DoublePoint) queue.remove()).getPoint();
+		assertEquals(2.5f, n_vals[0], 0);
+		assertEquals(2.75f, n_vals[1], 0.0001f);
+	}
 }
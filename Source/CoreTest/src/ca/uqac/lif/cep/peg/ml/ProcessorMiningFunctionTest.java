@@ -0,0 +1,238 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.functions.Cumulate;
+import ca.uqac.lif.cep.functions.CumulativeFunction;
+import ca.uqac.lif.cep.peg.Sequence;
+import ca.uqac.lif.cep.util.Numbers;
+
+/**
+ * Unit tests for the {@link ProcessorMiningFunction}.
+ */
+public class ProcessorMiningFunctionTest
+{
+	@Test
+	public void testPooling()
+	{
+		CountingSum trace_proc = new CountingSum(false);
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(trace_proc, getSum());
+		assertEquals(55, mine(pmf, 10), 0.001);
+		// A single copy of the trace processor for the calling thread
+		assertEquals(1, trace_proc.m_duplicates);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertEquals(1, trace_proc.m_duplicates);
+	}
+
+	@Test
+	public void testNoPooling()
+	{
+		CountingSum trace_proc = new CountingSum(false);
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(trace_proc, getSum());
+		pmf.setPooling(false);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertEquals(10, trace_proc.m_duplicates);
+	}
+
+	@Test
+	public void testNotResettable()
+	{
+		CountingSum trace_proc = new CountingSum(true);
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(trace_proc, getSum());
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertEquals(10, trace_proc.m_duplicates);
+	}
+
+	@Test
+	public void testPoolingParallel()
+	{
+		CountingSum trace_proc = new CountingSum(false);
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(trace_proc, getSum());
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		pmf.setThreadManager(service);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		service.shutdown();
+		// At most one copy per worker thread
+		assertTrue(trace_proc.m_duplicates <= 2);
+	}
+
+	@Test
+	public void testClearedBetweenCalls()
+	{
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertEquals(6, mine(pmf, 3), 0.001);
+	}
+
+	@Test
+	public void testStreaming()
+	{
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		pmf.setStreaming(true);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertEquals(6, mine(pmf, 3), 0.001);
+		// Equal results are all passed to the combine processor
+		Set<Sequence<Number>> sequences = new HashSet<Sequence<Number>>();
+		for (int i = 1; i <= 3; i++)
+		{
+			Sequence<Number> seq = new Sequence<Number>();
+			seq.add(i);
+			seq.add(4 - i);
+			sequences.add(seq);
+		}
+		Object[] out = new Object[1];
+		pmf.evaluate(new Object[] {sequences}, out);
+		assertEquals(12, ((Number) out[0]).intValue());
+	}
+
+	@Test
+	public void testStreamingParallel()
+	{
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		pmf.setThreadManager(service);
+		pmf.setStreaming(true);
+		pmf.setMaxInFlight(3);
+		assertEquals(5050, mine(pmf, 100), 0.001);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		service.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void testStreamingNoInFlight()
+	{
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		pmf.setThreadManager(service);
+		pmf.setStreaming(true);
+		// Treated as one trace in flight, instead of waiting forever
+		pmf.setMaxInFlight(0);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		service.shutdown();
+	}
+
+	@Test
+	public void testPoolReleased() throws InterruptedException
+	{
+		ExecutorService service = Executors.newSingleThreadExecutor();
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		pmf.setThreadManager(service);
+		assertEquals(55, mine(pmf, 10), 0.001);
+		// The thread of the service is still alive, but does not keep the
+		// function reachable through the processor it pooled
+		WeakReference<ProcessorMiningFunction<Number,Number>> ref = new WeakReference<ProcessorMiningFunction<Number,Number>>(pmf);
+		pmf = null;
+		for (int i = 0; i < 50 && ref.get() != null; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(ref.get());
+		service.shutdown();
+	}
+
+	@Test
+	public void testPoolDropped()
+	{
+		ProcessorMiningFunction<Number,Number> pmf = new ProcessorMiningFunction<Number,Number>(getSum(), getSum());
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertNotNull(pmf.m_pool.get());
+		pmf.setPooling(false);
+		assertNull(pmf.m_pool.get());
+		assertEquals(55, mine(pmf, 10), 0.001);
+		assertNull(pmf.m_pool.get());
+	}
+
+	/**
+	 * Runs a mining function on sequences 0, 1; 0, 2; ..., 0, n
+	 * @param pmf The mining function
+	 * @param n The number of sequences
+	 * @return The value returned by the function
+	 */
+	protected static double mine(ProcessorMiningFunction<Number,Number> pmf, int n)
+	{
+		Set<Sequence<Number>> sequences = new HashSet<Sequence<Number>>();
+		for (int i = 1; i <= n; i++)
+		{
+			Sequence<Number> seq = new Sequence<Number>();
+			seq.add(0);
+			seq.add(i);
+			sequences.add(seq);
+		}
+		Object[] out = new Object[1];
+		pmf.evaluate(new Object[] {sequences}, out);
+		return ((Number) out[0]).doubleValue();
+	}
+
+	protected static Cumulate getSum()
+	{
+		return new Cumulate(new CumulativeFunction<Number>(Numbers.addition));
+	}
+
+	/**
+	 * Computes the sum of a trace, and counts the number of times it is
+	 * duplicated
+	 */
+	protected static class CountingSum extends Cumulate
+	{
+		protected int m_duplicates = 0;
+
+		protected final boolean m_failReset;
+
+		protected CountingSum m_original;
+
+		public CountingSum(boolean fail_reset)
+		{
+			super(new CumulativeFunction<Number>(Numbers.addition));
+			m_failReset = fail_reset;
+			m_original = this;
+		}
+
+		@Override
+		public void reset()
+		{
+			if (m_failReset)
+			{
+				throw new UnsupportedOperationException();
+			}
+			super.reset();
+		}
+
+		@Override
+		public CountingSum duplicate(boolean with_state)
+		{
+			synchronized (m_original)
+			{
+				m_original.m_duplicates++;
+			}
+			CountingSum cs = new CountingSum(m_failReset);
+			cs.m_original = m_original;
+			return cs;
+		}
+	}
+}
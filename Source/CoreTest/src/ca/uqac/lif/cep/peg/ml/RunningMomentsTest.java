@@ -18,6 +18,7 @@
 package ca.uqac.lif.cep.peg.ml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.Queue;
 
@@ -65,4 +66,38 @@ public class RunningMomentsTest
 		assertEquals(2.5f, n_vals[0], 0);
 		assertEquals(9f, n_vals[1], 0);
 	}
+
+	@Test
+	public void testFused() throws ConnectorException
+	{
+		RunningMoments rm = new RunningMoments(3);
+		FusedRunningMoments frm = new FusedRunningMoments(3).setReuseOutput(true);
+		QueueSink sink1 = new QueueSink();
+		QueueSink sink2 = new QueueSink();
+		Connector.connect(rm, sink1);
+		Connector.connect(frm, sink2);
+		Pushable p1 = rm.getPushableInput();
+		Pushable p2 = frm.getPushableInput();
+		Object last = null;
+		for (int i = 0; i < 50; i++)
+		{
+			double x = ((i * 37) % 11) - 4.5;
+			p1.push(x);
+			p2.push(x);
+			double[] expected = ((DoublePoint) sink1.getQueue().remove()).getPoint();
+			Object o = sink2.getQueue().remove();
+			double[] actual = ((DoublePoint) o).getPoint();
+			assertEquals(3, actual.length);
+			for (int j = 0; j < 3; j++)
+			{
+				assertEquals(expected[j], actual[j], 0.000001);
+			}
+			if (last != null)
+			{
+				// The same point is output every time
+				assertSame(last, o);
+			}
+			last = o;
+		}
+	}
 }
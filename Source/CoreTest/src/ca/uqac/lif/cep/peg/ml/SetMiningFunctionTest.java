@@ -0,0 +1,115 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.junit.Test;
+
+import ca.uqac.lif.cep.peg.Sequence;
+import ca.uqac.lif.cep.peg.ml.SetMiningFunction.SequenceView;
+import ca.uqac.lif.cep.peg.util.AverageLength;
+import ca.uqac.lif.cep.peg.util.AverageValues;
+
+/**
+ * Unit tests for the parallel mining of {@link SetMiningFunction}s.
+ */
+public class SetMiningFunctionTest
+{
+	@Test
+	public void testSplit()
+	{
+		Set<Sequence<Number>> sequences = generateSequences(10);
+		List<SequenceView<Number>> chunks = new ArrayList<SequenceView<Number>>();
+		new SequenceView<Number>(sequences).splitInto(3, chunks);
+		assertEquals(4, chunks.size());
+		Set<Sequence<Number>> seen = new HashSet<Sequence<Number>>();
+		for (SequenceView<Number> chunk : chunks)
+		{
+			assertTrue(chunk.size() <= 3);
+			for (Sequence<Number> seq : chunk)
+			{
+				seen.add(seq);
+			}
+		}
+		assertEquals(sequences, seen);
+	}
+
+	@Test
+	public void testAverages()
+	{
+		Set<Sequence<Number>> sequences = generateSequences(1000);
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		AverageLength al = AverageLength.parallel(service);
+		al.setChunkSize(16);
+		AverageValues av = AverageValues.parallel(service);
+		av.setChunkSize(16);
+		Object[] out = new Object[1], p_out = new Object[1];
+		AverageLength.instance.evaluate(new Object[] {sequences}, out);
+		al.evaluate(new Object[] {sequences}, p_out);
+		assertEquals(((Number) out[0]).floatValue(), ((Number) p_out[0]).floatValue(), 0.0001);
+		AverageValues.instance.evaluate(new Object[] {sequences}, out);
+		av.evaluate(new Object[] {sequences}, p_out);
+		assertEquals(((Number) out[0]).floatValue(), ((Number) p_out[0]).floatValue(), 0.0001);
+		service.shutdown();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testClustering()
+	{
+		Set<Sequence<DoublePoint>> sequences = new HashSet<Sequence<DoublePoint>>();
+		for (int i = 0; i < 1000; i++)
+		{
+			Sequence<DoublePoint> seq = new Sequence<DoublePoint>();
+			seq.add(new DoublePoint(new double[] {(i % 2) * 100 + (i % 10), i}));
+			sequences.add(seq);
+		}
+		sequences.add(new Sequence<DoublePoint>());
+		ExecutorService service = Executors.newFixedThreadPool(2);
+		KMeans km = new KMeans(2);
+		km.setThreadManager(service).setChunkSize(10);
+		Object[] out = new Object[1];
+		km.evaluate(new Object[] {sequences}, out);
+		assertEquals(2, ((Set<DoublePoint>) out[0]).size());
+		service.shutdown();
+	}
+
+	protected static Set<Sequence<Number>> generateSequences(int n)
+	{
+		Set<Sequence<Number>> sequences = new HashSet<Sequence<Number>>();
+		for (int i = 0; i < n; i++)
+		{
+			Sequence<Number> seq = new Sequence<Number>();
+			for (int j = 0; j <= i % 10; j++)
+			{
+				seq.add(i * 10 + j);
+			}
+			sequences.add(seq);
+		}
+		return sequences;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.SinkLast;
+
+/**
+ * Unit tests for the {@link StreamingKMeans} processor.
+ */
+public class StreamingKMeansTest
+{
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFirstPoints()
+	{
+		StreamingKMeans skm = new StreamingKMeans(2);
+		SinkLast sink = new SinkLast();
+		Connector.connect(skm, sink);
+		Pushable p = skm.getPushableInput();
+		p.push(3);
+		Set<DoublePoint> centers = (Set<DoublePoint>) sink.getLast()[0];
+		assertEquals(1, centers.size());
+		assertTrue(centers.contains(new DoublePoint(new double[] {3})));
+		// Same point: does not create a second centroid
+		p.push(3);
+		assertEquals(1, ((Set<DoublePoint>) sink.getLast()[0]).size());
+		// Cannot be cast into a point: ignored
+		p.push("foo");
+		assertEquals(1, ((Set<DoublePoint>) sink.getLast()[0]).size());
+		p.push(Arrays.asList(5));
+		centers = (Set<DoublePoint>) sink.getLast()[0];
+		assertEquals(2, centers.size());
+		p.push(6);
+		centers = (Set<DoublePoint>) sink.getLast()[0];
+		assertTrue(centers.contains(new DoublePoint(new double[] {3})));
+		assertTrue(centers.contains(new DoublePoint(new double[] {5.5})));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTwoClusters()
+	{
+		StreamingKMeans skm = new StreamingKMeans(2);
+		SinkLast sink = new SinkLast();
+		Connector.connect(skm, sink);
+		Pushable p = skm.getPushableInput();
+		Random r = new Random(0);
+		for (int i = 0; i < 2000; i++)
+		{
+			double c = i % 2 == 0 ? 0 : 10;
+			p.push(new DoublePoint(new double[] {c + r.nextGaussian(), c + r.nextGaussian()}));
+		}
+		Set<DoublePoint> centers = (Set<DoublePoint>) sink.getLast()[0];
+		assertClose(centers, 0.2, new double[] {0, 0}, new double[] {10, 10});
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testDecayAndReseed()
+	{
+		// The clusters move after 1000 points
+		StreamingKMeans skm = new StreamingKMeans(2).setDecay(0.99).setReseedInterval(100);
+		SinkLast sink = new SinkLast();
+		Connector.connect(skm, sink);
+		Pushable p = skm.getPushableInput();
+		Random r = new Random(0);
+		for (int i = 0; i < 2000; i++)
+		{
+			double c = (i % 2 == 0 ? 0 : 10) + (i < 1000 ? 0 : 50);
+			p.push(new DoublePoint(new double[] {c + r.nextGaussian(), c + r.nextGaussian()}));
+		}
+		Set<DoublePoint> centers = (Set<DoublePoint>) sink.getLast()[0];
+		assertClose(centers, 1, new double[] {50, 50}, new double[] {60, 60});
+		StreamingKMeans copy = skm.duplicate(true);
+		assertEquals(centers, copy.getCenters());
+		skm.reset();
+		assertTrue(skm.getCenters().isEmpty());
+	}
+
+	protected static void assertClose(Set<DoublePoint> centers, double tolerance, double[] ... expected)
+	{
+		assertEquals(expected.length, centers.size());
+		for (double[] e : expected)
+		{
+			boolean found = false;
+			for (DoublePoint c : centers)
+			{
+				double[] x = c.getPoint();
+				if (Math.abs(x[0] - e[0]) < tolerance && Math.abs(x[1] - e[1]) < tolerance)
+				{
+					found = true;
+				}
+			}
+			assertTrue(found);
+		}
+	}
+}
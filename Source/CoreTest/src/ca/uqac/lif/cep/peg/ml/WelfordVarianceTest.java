@@ -0,0 +1,100 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.ml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Queue;
+
+import org.junit.Test;
+
+import ca.uqac.lif.cep.Connector;
+import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.tmf.QueueSink;
+
+/**
+ * Unit tests for the {@link WelfordVariance} processor.
+ */
+public class WelfordVarianceTest
+{
+	@Test
+	public void test1()
+	{
+		WelfordVariance sm = new WelfordVariance();
+		Pushable p = sm.getPushableInput();
+		QueueSink sink = new QueueSink();
+		Connector.connect(sm, 0, sink, 0);
+		Queue<Object> queue = sink.getQueue();
+		Number n;
+		p.push(0);
+		n = (Number) queue.remove();
+		assertEquals(0f, n.floatValue(), 0);
+		p.push(2);
+		n = (Number) queue.remove();
+		assertEquals(1f, n.floatValue(), 0);
+		p.push(4);
+		n = (Number) queue.remove();
+		assertEquals(2.67f, n.floatValue(), 0.01f);
+		p.push(4);
+		n = (Number) queue.remove();
+		assertEquals(2.75f, n.floatValue(), 0);
+	}
+
+	@Test
+	public void testLargeValues()
+	{
+		// E[X^2] - E[X]^2 loses all precision on such values
+		WelfordVariance.State s = new WelfordVariance.State();
+		double offset = 1e9;
+		s.add(offset + 4);
+		s.add(offset + 7);
+		s.add(offset + 13);
+		s.add(offset + 16);
+		assertEquals(offset + 10, s.getMean(), 0.0001);
+		assertEquals(22.5, s.getVariance(), 0.0001);
+		assertEquals(30, s.getSampleVariance(), 0.0001);
+	}
+
+	@Test
+	public void testMerge()
+	{
+		WelfordVariance.State all = new WelfordVariance.State();
+		WelfordVariance.State s1 = new WelfordVariance.State();
+		WelfordVariance.State s2 = new WelfordVariance.State();
+		for (int i = 0; i < 100; i++)
+		{
+			double x = (i * 7) % 13 + 0.5;
+			all.add(x);
+			if (i < 30)
+			{
+				s1.add(x);
+			}
+			else
+			{
+				s2.add(x);
+			}
+		}
+		s1.merge(s2);
+		assertEquals(all.getCount(), s1.getCount());
+		assertEquals(all.getMean(), s1.getMean(), 0.000001);
+		assertEquals(all.getVariance(), s1.getVariance(), 0.000001);
+		WelfordVariance.State empty = new WelfordVariance.State();
+		empty.merge(s1);
+		assertEquals(all.getVariance(), empty.getVariance(), 0.000001);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+    A BeepBeep palette for mining event traces
+    Copyright (C) 2017-2019 Sylvain Hallé and friends
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.cep.peg.weka;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+/**
+ * Unit tests for the {@link RoteClassifier}.
+ */
+public class RoteClassifierTest
+{
+  @Test
+  public void testLookup()
+  {
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("A"),
+        new Attribute("B"),
+        WekaUtils.createAttribute("C", "foo", "bar", "baz")
+    };
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    RoteClassifier rc = new RoteClassifier(attributes);
+    for (int i = 0; i < 100000; i++)
+    {
+      rc.addAssociation(WekaUtils.createInstanceFromArray(dataset, new Object[] {i, -i, null}, attributes), i % 3);
+    }
+    assertEquals(100000, rc.getNumAssociations());
+    // Instances are matched by value, not by reference
+    assertEquals(2, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {5, -5, "foo"}, attributes)), 0);
+    assertEquals(1, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {99997, -99997, null}, attributes)), 0);
+    // 0 and -0 are the same value
+    assertEquals(0, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {0, 0, null}, attributes)), 0);
+    // Unknown values
+    assertEquals(0, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {5, 5, null}, attributes)), 0);
+    // Replacing an association
+    rc.addAssociation(WekaUtils.createInstanceFromArray(dataset, new Object[] {5, -5, null}, attributes), 1);
+    assertEquals(100000, rc.getNumAssociations());
+    assertEquals(1, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {5, -5, null}, attributes)), 0);
+  }
+
+  @Test
+  public void testMissing()
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "0", "1"),
+        WekaUtils.createAttribute("B", "foo", "bar")
+    };
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    RoteClassifier rc = new RoteClassifier(attributes);
+    rc.addAssociation(WekaUtils.createInstanceFromArray(dataset, new Object[] {null, null}, attributes), 1);
+    assertEquals(0, rc.getNumAssociations());
+    assertEquals(0, rc.classifyInstance(WekaUtils.createInstanceFromArray(dataset, new Object[] {null, null}, attributes)), 0);
+  }
+}
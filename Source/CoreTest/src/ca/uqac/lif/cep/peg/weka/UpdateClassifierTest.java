@@ -19,17 +19,26 @@ package ca.uqac.lif.cep.peg.weka;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.junit.Test;
 
 import ca.uqac.lif.cep.Connector;
 import ca.uqac.lif.cep.Pushable;
+import ca.uqac.lif.cep.peg.Checkpointable;
+import ca.uqac.lif.cep.peg.io.CheckpointTest;
 import ca.uqac.lif.cep.peg.weka.UpdateClassifier;
 import ca.uqac.lif.cep.tmf.SinkLast;
 import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
 import weka.classifiers.trees.Id3;
 import weka.classifiers.trees.J48;
 import weka.core.Attribute;
+import weka.core.FastVector;
 import weka.core.Instance;
+import weka.core.Instances;
 
 /**
  * Unit tests for the {@link UpdateClassifier} processor.
@@ -84,4 +93,284 @@ public class UpdateClassifierTest
     d = cl_out.classifyInstance(inst);
     assertEquals("Z", WekaUtils.getClassValue(d, attributes)); // A=bar should be associated to class Z
   }
+
+  @Test
+  public void testRollWidth() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    Classifier cl = new Id3();
+    UpdateClassifier uc = new UpdateClassifier(cl, 1, 2, "test", attributes);
+    SinkLast sink = new SinkLast();
+    Connector.connect(uc, sink);
+    Pushable p = uc.getPushableInput();
+    p.push(new Object[] {"foo", "Y"});
+    p.push(new Object[] {"bar", "Z"});
+    Instance inst = WekaUtils.createInstanceFromArray(uc.getDataset(), new Object[] {"foo", null}, attributes);
+    assertEquals("Y", WekaUtils.getClassValue(cl.classifyInstance(inst), attributes));
+    p.push(new Object[] {"foo", "Z"});
+    p.push(new Object[] {"bar", "Y"});
+    assertEquals(2, uc.getDataset().numInstances());
+    assertEquals("Z", WekaUtils.getClassValue(cl.classifyInstance(inst), attributes));
+    // Instances are given to the classifier from oldest to newest
+    assertEquals("foo", uc.getDataset().instance(0).stringValue(0));
+    assertEquals("bar", uc.getDataset().instance(1).stringValue(0));
+  }
+
+  @Test
+  public void testBackground() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    Classifier cl = new Id3();
+    ExecutorService service = Executors.newSingleThreadExecutor();
+    try
+    {
+      UpdateClassifier uc = new UpdateClassifier(cl, "test", attributes).setThreadManager(service);
+      SinkLast sink = new SinkLast();
+      Connector.connect(uc, sink);
+      Pushable p = uc.getPushableInput();
+      p.push(new Object[] {"foo", "Y"});
+      p.push(new Object[] {"bar", "Z"});
+      uc.awaitTraining();
+      p.push(new Object[] {"foo", "Y"});
+      uc.awaitTraining();
+      assertEquals(0, uc.getModelStaleness());
+      p.push(new Object[] {"bar", "Z"});
+      Classifier cl_out = (Classifier) sink.getLast()[0];
+      // The template classifier is never output
+      assertNotSame(cl, cl_out);
+      Instance inst = WekaUtils.createInstanceFromArray(uc.getDataset(), new Object[] {"foo", null}, attributes);
+      assertEquals("Y", WekaUtils.getClassValue(cl_out.classifyInstance(inst), attributes));
+      inst = WekaUtils.createInstanceFromArray(uc.getDataset(), new Object[] {"bar", null}, attributes);
+      assertEquals("Z", WekaUtils.getClassValue(cl_out.classifyInstance(inst), attributes));
+      uc.awaitTraining();
+      assertTrue(uc.getModelStaleness() <= 1);
+    }
+    finally
+    {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void testMakeCopy() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    Classifier cl = new Id3();
+    UpdateClassifier uc = new UpdateClassifier(cl, 3, 0, "test", attributes).makeCopy(true);
+    SinkLast sink = new SinkLast();
+    Connector.connect(uc, sink);
+    Pushable p = uc.getPushableInput();
+    p.push(new Object[] {"foo", "Y"});
+    Object out1 = sink.getLast()[0];
+    p.push(new Object[] {"bar", "Z"});
+    Object out2 = sink.getLast()[0];
+    // The classifier has not changed: same copy
+    assertSame(out1, out2);
+    assertNotSame(cl, out1);
+    p.push(new Object[] {"foo", "Y"});
+    Object out3 = sink.getLast()[0];
+    // The classifier has been rebuilt: new copy
+    assertNotSame(out2, out3);
+    p.push(new Object[] {"bar", "Z"});
+    assertSame(out3, sink.getLast()[0]);
+    Instance inst = WekaUtils.createInstanceFromArray(uc.getDataset(), new Object[] {"bar", null}, attributes);
+    assertEquals("Z", WekaUtils.getClassValue(((Classifier) out3).classifyInstance(inst), attributes));
+  }
+
+  @Test
+  public void testIncremental() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    CountingNaiveBayes cl = new CountingNaiveBayes();
+    UpdateClassifier uc = new UpdateClassifier(cl, 1, 4, "test", attributes);
+    assertTrue(uc.isIncremental());
+    SinkLast sink = new SinkLast();
+    Connector.connect(uc, sink);
+    Pushable p = uc.getPushableInput();
+    p.push(new Object[] {"foo", "Y"});
+    // The first instance builds the classifier
+    assertEquals(1, cl.m_builds);
+    assertEquals(0, cl.m_updates);
+    p.push(new Object[] {"bar", "Z"});
+    p.push(new Object[] {"foo", "Y"});
+    p.push(new Object[] {"bar", "Z"});
+    assertEquals(1, cl.m_builds);
+    assertEquals(3, cl.m_updates);
+    Instance inst = WekaUtils.createInstanceFromArray(uc.getDataset(), new Object[] {"foo", null}, attributes);
+    assertEquals("Y", WekaUtils.getClassValue(cl.classifyInstance(inst), attributes));
+    // The window is full; the classifier is rebuilt after 4 evictions
+    for (int i = 0; i < 4; i++)
+    {
+      p.push(new Object[] {"foo", "Z"});
+    }
+    assertEquals(2, cl.m_builds);
+    assertEquals(7, cl.m_updates);
+    assertEquals("Z", WekaUtils.getClassValue(cl.classifyInstance(inst), attributes));
+  }
+
+  @Test
+  public void testNotIncremental() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    CountingNaiveBayes cl = new CountingNaiveBayes();
+    UpdateClassifier uc = new UpdateClassifier(cl, "test", attributes).setIncremental(false);
+    assertFalse(uc.isIncremental());
+    Pushable p = uc.getPushableInput();
+    p.push(new Object[] {"foo", "Y"});
+    p.push(new Object[] {"bar", "Z"});
+    assertEquals(2, cl.m_builds);
+    assertEquals(0, cl.m_updates);
+  }
+
+  @Test
+  public void testCheckpoint() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    UpdateClassifier uc1 = new UpdateClassifier(new CountingNaiveBayes(), 1, 4, "test", attributes);
+    UpdateClassifier uc2 = new UpdateClassifier(new CountingNaiveBayes(), 1, 4, "test", attributes);
+    Pushable p1 = uc1.getPushableInput();
+    for (int i = 0; i < 6; i++)
+    {
+      p1.push(new Object[] {i % 2 == 0 ? "foo" : "bar", i % 2 == 0 ? "Y" : "Z"});
+    }
+    CheckpointTest.copy(new Checkpointable[] {uc1}, new Checkpointable[] {uc2});
+    assertEquals(6, uc2.getInstanceCount());
+    // The restored classifier is not trained again
+    CountingNaiveBayes cl2 = (CountingNaiveBayes) uc2.getClassifier();
+    assertEquals(1, cl2.m_builds);
+    Instance inst = WekaUtils.createInstanceFromArray(uc2.getDataset(), new Object[] {"foo", null}, attributes);
+    assertEquals("Y", WekaUtils.getClassValue(cl2.classifyInstance(inst), attributes));
+    // The window is restored: both processors rebuild their classifier at
+    // the same time
+    Pushable p2 = uc2.getPushableInput();
+    for (int i = 0; i < 2; i++)
+    {
+      p1.push(new Object[] {"foo", "Z"});
+      p2.push(new Object[] {"foo", "Z"});
+    }
+    assertEquals(2, cl2.m_builds);
+    assertEquals(2, ((CountingNaiveBayes) uc1.getClassifier()).m_builds);
+    assertEquals(WekaUtils.getClassValue(uc1.getClassifier().classifyInstance(inst), attributes),
+        WekaUtils.getClassValue(cl2.classifyInstance(inst), attributes));
+  }
+
+  @Test
+  public void testCheckpointUnbounded() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("a"), 
+        WekaUtils.createAttribute("class", "A", "B")};
+    UpdateClassifier uc1 = new UpdateClassifier(new J48(), 3, 0, "test", attributes);
+    UpdateClassifier uc2 = new UpdateClassifier(new J48(), 3, 0, "test", attributes);
+    Pushable p1 = uc1.getPushableInput();
+    for (int i = 0; i < 10; i++)
+    {
+      p1.push(new Object[] {i, i < 5 ? "A" : "B"});
+    }
+    CheckpointTest.copy(new Checkpointable[] {uc1}, new Checkpointable[] {uc2});
+    assertEquals(10, uc2.getDataset().numInstances());
+    SinkLast s1 = new SinkLast(), s2 = new SinkLast();
+    Connector.connect(uc1, s1);
+    Connector.connect(uc2, s2);
+    Pushable p2 = uc2.getPushableInput();
+    for (int i = 10; i < 12; i++)
+    {
+      p1.push(new Object[] {i, "B"});
+      p2.push(new Object[] {i, "B"});
+    }
+    Instance inst = WekaUtils.createInstanceFromArray(uc2.getDataset(), new Object[] {8, null}, attributes);
+    assertEquals(((Classifier) s1.getLast()[0]).classifyInstance(inst), ((Classifier) s2.getLast()[0]).classifyInstance(inst), 0);
+    assertEquals(12, uc2.getDataset().numInstances());
+  }
+
+  @Test
+  public void testDuplicateFunctionWithState() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "foo", "bar"), 
+        WekaUtils.createAttribute("class", "Y", "Z")};
+    UpdateClassifierFunction ucf = new UpdateClassifierFunction(new Id3(), "test", attributes);
+    Pushable p = ucf.getPushableInput();
+    p.push(new Object[] {"foo", "Y"});
+    p.push(new Object[] {"bar", "Z"});
+    UpdateClassifierFunction dup = ucf.duplicate(true);
+    assertEquals(2, dup.getInstanceCount());
+    assertEquals(2, dup.getDataset().numInstances());
+    assertEquals(0, ucf.duplicate(false).getInstanceCount());
+  }
+
+  @Test
+  public void testWindowCapacity() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("a"), 
+        new Attribute("b")};
+    Instances header = WekaUtils.createInstances("test", 1, attributes);
+    InstanceWindow window = new InstanceWindow(5);
+    for (int i = 0; i < 7; i++)
+    {
+      Instance inst = new Instance(1, new double[] {i, 0});
+      inst.setDataset(header);
+      window.add(inst);
+    }
+    Instances data = window.toInstances(header);
+    assertEquals(5, data.numInstances());
+    assertEquals(2, data.instance(0).value(0), 0);
+    assertEquals(6, data.instance(4).value(0), 0);
+    assertEquals(0, header.numInstances());
+    // The set is filled without growing its store
+    Field f = Instances.class.getDeclaredField("m_Instances");
+    f.setAccessible(true);
+    assertEquals(5, ((FastVector) f.get(data)).capacity());
+  }
+
+  /**
+   * Updateable classifier that counts the number of times it is built
+   * and updated.
+   */
+  protected static class CountingNaiveBayes extends NaiveBayesUpdateable
+  {
+    private static final long serialVersionUID = 1L;
+
+    protected int m_builds = 0;
+
+    protected int m_updates = 0;
+
+    /**
+     * Naive Bayes builds itself by updating on each instance; these
+     * calls are not counted
+     */
+    protected boolean m_building = false;
+
+    @Override
+    public void buildClassifier(Instances instances) throws Exception
+    {
+      m_builds++;
+      m_building = true;
+      super.buildClassifier(instances);
+      m_building = false;
+    }
+
+    @Override
+    public void updateClassifier(Instance instance) throws Exception
+    {
+      if (!m_building)
+      {
+        m_updates++;
+      }
+      super.updateClassifier(instance);
+    }
+  }
 }
@@ -19,6 +19,8 @@ package ca.uqac.lif.cep.peg.weka;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 
 import ca.uqac.lif.cep.functions.ApplyFunctionArgument;
@@ -26,7 +28,9 @@ import ca.uqac.lif.cep.functions.FunctionTree;
 import ca.uqac.lif.cep.functions.StreamVariable;
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.Id3;
+import weka.classifiers.trees.J48;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -78,4 +82,110 @@ public class WekaUtilsTest
     ev_c.evaluate(new Object[] {cl, new Object[] {"1", "1", null}}, out_array);
     assertEquals("false", out_array[0]);
   }
+
+  @Test
+  public void testClassifyAll() throws Exception
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "0", "1"),
+        WekaUtils.createAttribute("B", "0", "1"),
+        WekaUtils.createAttribute("C", "true", "false")
+    };
+    Classifier cl = new Id3();
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    WekaUtils.ClassifierFunction cf = new WekaUtils.ClassifierFunction(cl, dataset, attributes);
+    Object[] rows = new Object[] {new Object[] {"0", "0"}, Arrays.asList("1", "1"), new Object[] {"0", "1", null}};
+    String[] classes = new String[3];
+    double[] indices = new double[3];
+    dataset.add(WekaUtils.createInstanceFromArray(dataset, new Object[] {"0", "0", "true"}, attributes));
+    dataset.add(WekaUtils.createInstanceFromArray(dataset, new Object[] {"1", "0", "false"}, attributes));
+    cl.buildClassifier(dataset);
+    cf.classifyAll(rows, 3, classes);
+    assertEquals("true", classes[0]);
+    assertEquals("false", classes[1]);
+    assertEquals("true", classes[2]);
+    cf.classifyAll(rows, 2, indices);
+    assertEquals(0, indices[0], 0);
+    assertEquals(1, indices[1], 0);
+    // The prepared instance is reused from one call to the next
+    assertEquals("false", cf.getValue(new Object[] {"1", "0"}));
+    assertEquals("true", cf.getValue(new Object[] {"0", "0"}));
+  }
+
+  @Test
+  public void testClassifyAllNotBuilt()
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "0", "1"),
+        WekaUtils.createAttribute("C", "true", "false")
+    };
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    WekaUtils.ClassifierFunction cf = new WekaUtils.ClassifierFunction(new J48(), dataset, attributes);
+    Object[] rows = new Object[] {"0", "1"};
+    String[] classes = new String[] {"x", "x"};
+    double[] indices = new double[2];
+    cf.classifyAll(rows, 2, classes);
+    assertEquals("", classes[0]);
+    assertEquals("", classes[1]);
+    cf.classifyAll(rows, 2, indices);
+    assertTrue(Instance.isMissingValue(indices[0]));
+    assertTrue(Instance.isMissingValue(indices[1]));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testClassifyAllBadRow()
+  {
+    Attribute[] attributes = new Attribute[] {
+        WekaUtils.createAttribute("A", "0", "1"),
+        WekaUtils.createAttribute("C", "true", "false")
+    };
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    WekaUtils.ClassifierFunction cf = new WekaUtils.ClassifierFunction(new J48(), dataset, attributes);
+    // A bad row is reported, and not mistaken for a classifier not built
+    cf.classifyAll(new Object[] {"0", "2"}, 2, new String[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodeValueUndefined()
+  {
+    WekaUtils.encodeValue(WekaUtils.createAttribute("A", "0", "1"), "2");
+  }
+
+  @Test
+  public void testAttributeEncoder()
+  {
+    Attribute[] attributes = new Attribute[] {
+        new Attribute("A"),
+        WekaUtils.createAttribute("B", "LOW", "HIGH"),
+        WekaUtils.createAttribute("C", "true", "false")
+    };
+    Instances dataset = WekaUtils.createInstances("test", 10, attributes);
+    AttributeEncoder enc = new AttributeEncoder(attributes);
+    Object[] row = new Object[] {3, new String("HIGH"), "false"};
+    double[] values = new double[3];
+    enc.encode(row, values);
+    assertArrayEquals(WekaUtils.createInstanceFromArray(dataset, row, attributes).toDoubleArray(), values, 0);
+    assertArrayEquals(new double[] {3, 1, 1}, enc.createInstance(dataset, row).toDoubleArray(), 0);
+    // Enum constants are matched by their name
+    enc.encode(new Object[] {null, Level.LOW, true}, values);
+    assertTrue(Double.isNaN(values[0]));
+    assertEquals(0, values[1], 0);
+    assertEquals(0, values[2], 0);
+    // Missing elements at the end of the row are missing values
+    enc.encodeValues(Arrays.asList(2.5), values);
+    assertEquals(2.5, values[0], 0);
+    assertTrue(Double.isNaN(values[1]));
+    assertTrue(Double.isNaN(values[2]));
+    assertEquals(2, enc.getDictionary(1).size());
+    assertNull(enc.getDictionary(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAttributeEncoderUndefined()
+  {
+    AttributeEncoder enc = new AttributeEncoder(WekaUtils.createAttribute("A", "0", "1"));
+    enc.encode(0, "2");
+  }
+
+  protected static enum Level {LOW, HIGH}
 }